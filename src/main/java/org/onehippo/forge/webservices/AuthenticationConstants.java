@@ -19,6 +19,15 @@ package org.onehippo.forge.webservices;
 public class AuthenticationConstants {
     public static final String HIPPO_CREDENTIALS = "HIPPO.CREDENTIALS";
     public static final String HIPPO_SESSION = "HIPPO.SESSION";
+    public static final String HIPPO_READ_SESSION_POOL = "HIPPO.READ.SESSION.POOL";
+    public static final String HIPPO_WRITE_SESSION_POOL = "HIPPO.WRITE.SESSION.POOL";
+    public static final String HIPPO_CREDENTIAL_CACHE = "HIPPO.CREDENTIAL.CACHE";
+    public static final String HIPPO_IMPERSONATOR = "HIPPO.IMPERSONATOR";
+    public static final String HIPPO_TOKEN_STORE = "HIPPO.TOKEN.STORE";
+    public static final String HIPPO_LOGIN_THROTTLE = "HIPPO.LOGIN.THROTTLE";
+    public static final String HIPPO_READ_BUDGET = "HIPPO.READ.BUDGET";
+    public static final String HIPPO_MAX_UPLOAD_SIZE = "HIPPO.MAX.UPLOAD.SIZE";
+    public static final String HIPPO_RESPONSE_CACHE = "HIPPO.RESPONSE.CACHE";
 
     private AuthenticationConstants() {
     }
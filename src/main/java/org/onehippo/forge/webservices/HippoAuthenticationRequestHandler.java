@@ -16,10 +16,19 @@
 
 package org.onehippo.forge.webservices;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.jcr.LoginException;
 import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.ext.Provider;
 
 import org.apache.cxf.configuration.security.AuthorizationPolicy;
@@ -27,36 +36,128 @@ import org.apache.cxf.jaxrs.ext.RequestHandler;
 import org.apache.cxf.jaxrs.ext.ResponseHandler;
 import org.apache.cxf.jaxrs.model.ClassResourceInfo;
 import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.transport.http.AbstractHTTPDestination;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.exception.TooManyRequestsException;
 import org.onehippo.forge.webservices.jaxrs.exception.UnauthorizedException;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrReadBudget;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrUploadStream;
+import org.onehippo.forge.webservices.security.CredentialCache;
+import org.onehippo.forge.webservices.security.LoginThrottle;
+import org.onehippo.forge.webservices.security.TokenStore;
+import org.onehippo.forge.webservices.session.Impersonator;
+import org.onehippo.forge.webservices.session.LazySession;
+import org.onehippo.forge.webservices.session.SessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Authenticates each request against the repository with the basic authentication credentials of the request. The
+ * JCR session of the request is stored as a {@link LazySession} attribute on the request, and is only acquired when a
+ * resource asks for it, see {@link JcrSessionUtil#getSessionFromRequest}. The lifecycle of the session is bound to the
+ * CXF exchange of the request, since a single handler instance serves all concurrent requests.
+ * <p>
+ * Credentials that have been verified by the repository are kept in a {@link CredentialCache}. Requests with cached
+ * credentials are served from a {@link SessionPool} of live sessions for the user, so they neither log in to the
+ * repository nor have their password hashed again. Requests with a safe method use a separate read-only pool, so
+ * reads can not exhaust the sessions available for writes. The pools can be configured through the provider
+ * properties <code>maxIdleSessionsPerUser</code>, <code>maxIdleSessions</code>, <code>maxSessionIdleTime</code> and
+ * <code>maxSessionAge</code> (in milliseconds), or per pool through <code>maxIdleReadSessionsPerUser</code>,
+ * <code>maxIdleReadSessions</code>, <code>maxIdleWriteSessionsPerUser</code> and <code>maxIdleWriteSessions</code>.
+ * Pooled sessions are invalidated when the security configuration changes, see {@link NodeResponseCache}. The cache
+ * is configured through <code>credentialCacheMaxSize</code> and <code>credentialCacheTimeToLive</code> (in
+ * milliseconds).
+ * <p>
+ * When the provider properties <code>impersonationUsername</code> and <code>impersonationPassword</code> of a
+ * privileged user are set, a user with cached credentials for whom no pooled session is available gets a session
+ * impersonated from a long-lived session of that privileged user, see {@link Impersonator}. The same user listens for
+ * changes on behalf of the {@link NodeResponseCache}, which is configured through <code>responseCacheMaxSize</code>
+ * and <code>responseCacheMaxEntrySize</code> (in bytes).
+ * <p>
+ * Failed logins are counted per user and per client address by a {@link LoginThrottle}. After
+ * <code>maxLoginFailures</code> failures, further logins are rejected with a 429 response for a backoff that starts
+ * at <code>loginBackoff</code> and doubles with every failure up to <code>maxLoginBackoff</code> (in milliseconds),
+ * without reaching the repository. Requests with cached credentials are not throttled.
+ * <p>
+ * Instead of basic authentication credentials, requests can carry a bearer token obtained from
+ * <code>/_auth/token</code>, see {@link TokenStore}. Tokens are valid for <code>tokenTimeToLive</code> milliseconds
+ * and are signed instead of stored when the provider property <code>tokenSecret</code> is set. Tokens are only
+ * accepted when impersonation is configured.
+ * <p>
+ * Each request gets a {@link JcrReadBudget} that limits the number of nodes and the amount of data it can read, set
+ * through the provider properties <code>maxNodesPerRequest</code> and <code>maxBytesPerRequest</code>. The size of
+ * binaries uploaded to the binaries API is limited by <code>maxUploadSize</code>.
+ */
 @Provider
 public class HippoAuthenticationRequestHandler implements RequestHandler,ResponseHandler {
 
     private static final Logger log = LoggerFactory.getLogger(HippoAuthenticationRequestHandler.class);
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final SessionPool readSessionPool = new SessionPool();
+    private final SessionPool writeSessionPool = new SessionPool();
+    private final CredentialCache credentialCache = new CredentialCache();
+    private final Impersonator impersonator = new Impersonator();
+    private final NodeResponseCache responseCache = new NodeResponseCache();
+    private final TokenStore tokenStore = new TokenStore();
+    private final LoginThrottle loginThrottle = new LoginThrottle();
+    private final AtomicInteger activeSessions = new AtomicInteger();
 
-    private Session session = null;
+    private volatile int maxNodesPerRequest = JcrReadBudget.DEFAULT_MAX_NODES;
+    private volatile long maxBytesPerRequest = JcrReadBudget.DEFAULT_MAX_BYTES;
+    private volatile long maxUploadSize = JcrUploadStream.DEFAULT_MAX_SIZE;
+
+    public HippoAuthenticationRequestHandler() {
+        readSessionPool.setReadOnly(true);
+        // sessions keep the permissions they logged in with
+        responseCache.setSecurityListener(new Runnable() {
+            @Override
+            public void run() {
+                readSessionPool.clear();
+                writeSessionPool.clear();
+            }
+        });
+    }
 
     public Response handleRequest(Message m, ClassResourceInfo resourceClass) {
+        final String token = getBearerToken(m);
+        if (token != null) {
+            return handleTokenRequest(m, token);
+        }
         AuthorizationPolicy policy = m.get(AuthorizationPolicy.class);
         if (policy != null) {
             String username = policy.getUserName();
             String password = policy.getPassword();
+            if (credentialCache.verify(username, password)) {
+                bindSession(m, new RequestSession(getSessionPool(m), username, password));
+                return null;
+            }
+            final String address = getRemoteAddress(m);
+            final long retryDelay = loginThrottle.getRetryDelay(username, address);
+            if (retryDelay > 0) {
+                throw new TooManyRequestsException(retryDelay);
+            }
             try {
-                session = JcrSessionUtil.createSession(username, password);
+                final long generation = credentialCache.getGeneration();
+                final SessionPool sessionPool = getSessionPool(m);
+                final long poolGeneration = sessionPool.getGeneration();
+                Session session = JcrSessionUtil.createSession(username, password);
                 if (isAuthenticated(session)) {
-                    HttpServletRequest request = (HttpServletRequest) m.get(AbstractHTTPDestination.HTTP_REQUEST);
-                    request.setAttribute(AuthenticationConstants.HIPPO_SESSION, session);
+                    loginThrottle.loginSucceeded(username);
+                    credentialCache.put(username, password, generation);
+                    activeSessions.incrementAndGet();
+                    bindSession(m, new RequestSession(sessionPool, username, password, session, poolGeneration));
                     return null;
                 } else {
+                    loginThrottle.loginFailed(username, address);
                     throw new UnauthorizedException();
                 }
             } catch (LoginException e) {
                 log.debug("Login failed: {}", e);
+                loginThrottle.loginFailed(username, address);
                 throw new UnauthorizedException(e.getMessage());
             }
         }
@@ -65,14 +166,361 @@ public class HippoAuthenticationRequestHandler implements RequestHandler,Respons
 
     @Override
     public Response handleResponse(final Message m, final OperationResourceInfo ori, final Response response) {
-        if(session!=null && session.isLive()) {
-            session.logout();
-            session = null;
+        final Exchange exchange = m.getExchange();
+        if (exchange != null) {
+            final RequestSession requestSession = (RequestSession) exchange.remove(AuthenticationConstants.HIPPO_SESSION);
+            if (requestSession != null) {
+                if (response != null && response.getEntity() instanceof StreamingOutput && !isHeadRequest(exchange)) {
+                    // streaming output is written after the response handlers have run and still needs the session
+                    final StreamingOutput output = (StreamingOutput) response.getEntity();
+                    return Response.fromResponse(response).entity(new SessionReleasingOutput(output, requestSession)).build();
+                }
+                releaseSession(requestSession);
+            }
         }
         return null;
     }
 
+    /**
+     * Returns the number of sessions that have been handed out to requests and not yet been released.
+     *
+     * @return the number of active sessions
+     */
+    public int getActiveSessionCount() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Returns the pool of sessions for requests with a safe method (GET, HEAD and OPTIONS), which do not modify the
+     * repository.
+     *
+     * @return the pool of read sessions
+     */
+    public SessionPool getReadSessionPool() {
+        return readSessionPool;
+    }
+
+    /**
+     * Returns the pool of sessions for requests that may modify the repository.
+     *
+     * @return the pool of write sessions
+     */
+    public SessionPool getWriteSessionPool() {
+        return writeSessionPool;
+    }
+
+    public CredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
+    public void setCredentialCacheMaxSize(final int credentialCacheMaxSize) {
+        credentialCache.setMaxSize(credentialCacheMaxSize);
+    }
+
+    public void setCredentialCacheTimeToLive(final long credentialCacheTimeToLive) {
+        credentialCache.setTimeToLive(credentialCacheTimeToLive);
+    }
+
+    public Impersonator getImpersonator() {
+        return impersonator;
+    }
+
+    public void setImpersonationUsername(final String impersonationUsername) {
+        impersonator.setUsername(impersonationUsername);
+        responseCache.setUsername(impersonationUsername);
+    }
+
+    public void setImpersonationPassword(final String impersonationPassword) {
+        impersonator.setPassword(impersonationPassword);
+        responseCache.setPassword(impersonationPassword);
+    }
+
+    public NodeResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public void setResponseCacheMaxSize(final int responseCacheMaxSize) {
+        responseCache.setMaxSize(responseCacheMaxSize);
+    }
+
+    public void setResponseCacheMaxEntrySize(final int responseCacheMaxEntrySize) {
+        responseCache.setMaxEntrySize(responseCacheMaxEntrySize);
+    }
+
+    public TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    public void setTokenMaxSize(final int tokenMaxSize) {
+        tokenStore.setMaxSize(tokenMaxSize);
+    }
+
+    public void setTokenTimeToLive(final long tokenTimeToLive) {
+        tokenStore.setTimeToLive(tokenTimeToLive);
+    }
+
+    public void setTokenSecret(final String tokenSecret) {
+        tokenStore.setSecret(tokenSecret);
+    }
+
+    public LoginThrottle getLoginThrottle() {
+        return loginThrottle;
+    }
+
+    public void setMaxLoginFailures(final int maxLoginFailures) {
+        loginThrottle.setMaxFailures(maxLoginFailures);
+    }
+
+    public void setLoginBackoff(final long loginBackoff) {
+        loginThrottle.setBackoff(loginBackoff);
+    }
+
+    public void setMaxLoginBackoff(final long maxLoginBackoff) {
+        loginThrottle.setMaxBackoff(maxLoginBackoff);
+    }
+
+    public void setLoginThrottleMaxSize(final int loginThrottleMaxSize) {
+        loginThrottle.setMaxSize(loginThrottleMaxSize);
+    }
+
+    public int getMaxNodesPerRequest() {
+        return maxNodesPerRequest;
+    }
+
+    /**
+     * Sets the maximum number of nodes a single request can read, or <code>0</code> for no limit.
+     *
+     * @param maxNodesPerRequest the maximum number of nodes
+     */
+    public void setMaxNodesPerRequest(final int maxNodesPerRequest) {
+        this.maxNodesPerRequest = maxNodesPerRequest;
+    }
+
+    public long getMaxBytesPerRequest() {
+        return maxBytesPerRequest;
+    }
+
+    /**
+     * Sets the estimated maximum amount of data in bytes a single request can read, or <code>0</code> for no limit.
+     *
+     * @param maxBytesPerRequest the maximum amount of data
+     */
+    public void setMaxBytesPerRequest(final long maxBytesPerRequest) {
+        this.maxBytesPerRequest = maxBytesPerRequest;
+    }
+
+    public long getMaxUploadSize() {
+        return maxUploadSize;
+    }
+
+    /**
+     * Sets the maximum size in bytes of a binary uploaded in a single request, or <code>0</code> for no limit.
+     *
+     * @param maxUploadSize the maximum size
+     */
+    public void setMaxUploadSize(final long maxUploadSize) {
+        this.maxUploadSize = maxUploadSize;
+    }
+
+    public void setMaxIdleSessionsPerUser(final int maxIdleSessionsPerUser) {
+        readSessionPool.setMaxIdlePerKey(maxIdleSessionsPerUser);
+        writeSessionPool.setMaxIdlePerKey(maxIdleSessionsPerUser);
+    }
+
+    public void setMaxIdleSessions(final int maxIdleSessions) {
+        readSessionPool.setMaxIdle(maxIdleSessions);
+        writeSessionPool.setMaxIdle(maxIdleSessions);
+    }
+
+    public void setMaxIdleReadSessionsPerUser(final int maxIdleReadSessionsPerUser) {
+        readSessionPool.setMaxIdlePerKey(maxIdleReadSessionsPerUser);
+    }
+
+    public void setMaxIdleReadSessions(final int maxIdleReadSessions) {
+        readSessionPool.setMaxIdle(maxIdleReadSessions);
+    }
+
+    public void setMaxIdleWriteSessionsPerUser(final int maxIdleWriteSessionsPerUser) {
+        writeSessionPool.setMaxIdlePerKey(maxIdleWriteSessionsPerUser);
+    }
+
+    public void setMaxIdleWriteSessions(final int maxIdleWriteSessions) {
+        writeSessionPool.setMaxIdle(maxIdleWriteSessions);
+    }
+
+    public void setMaxSessionIdleTime(final long maxSessionIdleTime) {
+        readSessionPool.setMaxIdleTime(maxSessionIdleTime);
+        writeSessionPool.setMaxIdleTime(maxSessionIdleTime);
+    }
+
+    public void setMaxSessionAge(final long maxSessionAge) {
+        readSessionPool.setMaxAge(maxSessionAge);
+        writeSessionPool.setMaxAge(maxSessionAge);
+    }
+
+    /**
+     * Authenticates a request with a bearer token that has been issued by the token store. The token only identifies
+     * the user, so the session is taken from the pool or impersonated, and tokens are rejected when impersonation is
+     * not configured.
+     */
+    private Response handleTokenRequest(final Message m, final String token) {
+        if (!impersonator.isEnabled()) {
+            throw new UnauthorizedException("Token authentication needs impersonation to be configured");
+        }
+        final TokenStore.Token accessToken = tokenStore.validate(token);
+        if (accessToken == null) {
+            throw new UnauthorizedException("Invalid or expired token");
+        }
+        bindSession(m, new RequestSession(getSessionPool(m), accessToken.getUsername(), null));
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String getBearerToken(final Message m) {
+        final Map<String, List<String>> headers = (Map<String, List<String>>) m.get(Message.PROTOCOL_HEADERS);
+        if (headers == null) {
+            return null;
+        }
+        final List<String> authorization = headers.get(HttpHeaders.AUTHORIZATION);
+        if (authorization == null || authorization.isEmpty()) {
+            return null;
+        }
+        final String value = authorization.get(0);
+        if (value != null && value.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            return value.substring(BEARER_PREFIX.length()).trim();
+        }
+        return null;
+    }
+
+    /**
+     * Binds the session to the current exchange, which only lives as long as the request it belongs to. The handler
+     * itself is shared by all requests, so it must not keep any request state of its own.
+     */
+    private void bindSession(final Message m, final RequestSession requestSession) {
+        final Exchange exchange = m.getExchange();
+        if (exchange == null) {
+            releaseSession(requestSession);
+            throw new IllegalStateException("No exchange available for binding the session to the request");
+        }
+        exchange.put(AuthenticationConstants.HIPPO_SESSION, requestSession);
+
+        final HttpServletRequest request = (HttpServletRequest) m.get(AbstractHTTPDestination.HTTP_REQUEST);
+        if (request != null) {
+            request.setAttribute(AuthenticationConstants.HIPPO_SESSION, requestSession);
+            request.setAttribute(AuthenticationConstants.HIPPO_READ_SESSION_POOL, readSessionPool);
+            request.setAttribute(AuthenticationConstants.HIPPO_WRITE_SESSION_POOL, writeSessionPool);
+            request.setAttribute(AuthenticationConstants.HIPPO_CREDENTIAL_CACHE, credentialCache);
+            request.setAttribute(AuthenticationConstants.HIPPO_IMPERSONATOR, impersonator);
+            request.setAttribute(AuthenticationConstants.HIPPO_TOKEN_STORE, tokenStore);
+            request.setAttribute(AuthenticationConstants.HIPPO_LOGIN_THROTTLE, loginThrottle);
+            request.setAttribute(AuthenticationConstants.HIPPO_READ_BUDGET,
+                    new JcrReadBudget(maxNodesPerRequest, maxBytesPerRequest));
+            request.setAttribute(AuthenticationConstants.HIPPO_MAX_UPLOAD_SIZE, maxUploadSize);
+            request.setAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE, responseCache);
+        }
+    }
+
+    private void releaseSession(final RequestSession requestSession) {
+        final Session session = requestSession.release();
+        if (session != null) {
+            activeSessions.decrementAndGet();
+            requestSession.sessionPool.release(requestSession.getUsername(), session, requestSession.poolGeneration);
+        }
+    }
+
+    private static boolean isHeadRequest(final Exchange exchange) {
+        final Message inMessage = exchange.getInMessage();
+        return inMessage != null && HttpMethod.HEAD.equals(inMessage.get(Message.HTTP_REQUEST_METHOD));
+    }
+
+    private static String getRemoteAddress(final Message m) {
+        final HttpServletRequest request = (HttpServletRequest) m.get(AbstractHTTPDestination.HTTP_REQUEST);
+        return request != null ? request.getRemoteAddr() : null;
+    }
+
+    /**
+     * Routes requests with a safe method to the read session pool, and all other requests to the write session pool.
+     */
+    private SessionPool getSessionPool(final Message m) {
+        final String method = (String) m.get(Message.HTTP_REQUEST_METHOD);
+        if (HttpMethod.GET.equals(method) || HttpMethod.HEAD.equals(method) || HttpMethod.OPTIONS.equals(method)) {
+            return readSessionPool;
+        }
+        return writeSessionPool;
+    }
+
     private boolean isAuthenticated(Session session) {
         return session != null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Acquires the session of an authenticated request from the pool, by impersonation or, as a last resort, by
+     * logging in with the credentials of the request.
+     */
+    private final class RequestSession extends LazySession {
+
+        private final SessionPool sessionPool;
+        private final String password;
+        private volatile long poolGeneration;
+
+        private RequestSession(final SessionPool sessionPool, final String username, final String password) {
+            super(username);
+            this.sessionPool = sessionPool;
+            this.password = password;
+        }
+
+        private RequestSession(final SessionPool sessionPool, final String username, final String password,
+                               final Session session, final long poolGeneration) {
+            super(username, session);
+            this.sessionPool = sessionPool;
+            this.password = password;
+            this.poolGeneration = poolGeneration;
+        }
+
+        @Override
+        protected Session acquire() throws LoginException {
+            final String username = getUsername();
+            poolGeneration = sessionPool.getGeneration();
+            Session session = sessionPool.borrow(username);
+            if (session == null) {
+                session = impersonator.impersonate(username);
+            }
+            if (session == null && password != null) {
+                try {
+                    session = JcrSessionUtil.createSession(username, password);
+                } catch (LoginException e) {
+                    credentialCache.invalidate(username);
+                    tokenStore.invalidate(username);
+                    throw e;
+                }
+            }
+            if (isAuthenticated(session)) {
+                activeSessions.incrementAndGet();
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Releases the session of a request once its streaming output has been written.
+     */
+    private final class SessionReleasingOutput implements StreamingOutput {
+
+        private final StreamingOutput output;
+        private final RequestSession requestSession;
+
+        private SessionReleasingOutput(final StreamingOutput output, final RequestSession requestSession) {
+            this.output = output;
+            this.requestSession = requestSession;
+        }
+
+        @Override
+        public void write(final OutputStream outputStream) throws IOException {
+            try {
+                output.write(outputStream);
+            } finally {
+                releaseSession(requestSession);
+            }
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.LoginException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of rendered node representations. Entries are keyed by the user and the request URI, which holds the path,
+ * depth, projection and paging of the representation, and the least recently used entry is evicted when the cache
+ * is full.
+ * <p>
+ * Entries are invalidated through a JCR observation listener, registered with a long-lived session of a privileged
+ * user that is able to read all content. A change evicts the entries of the changed node, of its ancestors that
+ * include it within their depth, and of its descendants when the node itself has been added, moved or removed. The
+ * cache is only enabled once the credentials of that user have been configured and the listener is registered. A
+ * change under <code>/hippo:configuration</code> can change what users are allowed to read, so it clears the whole
+ * cache and notifies the listener set through {@link #setSecurityListener(Runnable)}, which invalidates the sessions
+ * that still have the old permissions. Changes of user nodes are left out, since the repository updates them on
+ * every login; their permissions are handled when a user is changed through the API.
+ * <p>
+ * Observation events are delivered asynchronously, so a representation that was being rendered while the repository
+ * changed is not cached. To detect this, callers obtain the current generation before reading the node and pass it
+ * to {@link #cache(String, String, int, JcrValidator, StreamingOutput, long)}. Requests that change a node evict its
+ * entries themselves through {@link #invalidate(String)}, so their user does not read a stale representation while
+ * the events are on their way.
+ */
+public class NodeResponseCache implements EventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(NodeResponseCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final int DEFAULT_MAX_ENTRY_SIZE = 256 * 1024;
+
+    private static final String CONFIGURATION_PATH = "/hippo:configuration";
+    private static final String USERS_PATH = CONFIGURATION_PATH + "/hippo:users";
+    private static final long RETRY_INTERVAL = 60 * 1000L;
+    private static final int EVENT_TYPES = Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED
+            | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final TreeMap<String, Set<String>> keysByPath = new TreeMap<String, Set<String>>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile int maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+    private volatile String username;
+    private volatile String password;
+    private volatile Runnable securityListener;
+    private Session listenerSession;
+    private long nextStart;
+
+    /**
+     * @return <code>true</code> if the cache is enabled and the observation listener is registered
+     */
+    public boolean isEnabled() {
+        if (maxSize <= 0 || username == null || password == null) {
+            return false;
+        }
+        return start();
+    }
+
+    /**
+     * Gets a cached representation.
+     *
+     * @param key the key of the representation
+     * @return the cached entry, or <code>null</code> if the representation is not cached
+     */
+    public synchronized Entry get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Returns the current generation of the cache, which changes on every batch of observation events.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Wraps the output of a representation, so it is cached once it has been written completely. Representations
+     * larger than the maximum entry size are not cached.
+     *
+     * @param key        the key of the representation
+     * @param path       the path of the node
+     * @param depth      the depth of the representation
+     * @param validator  the {@link JcrValidator} of the representation, or <code>null</code>
+     * @param output     the output of the representation
+     * @param generation the generation of the cache obtained before the node was read
+     * @return the wrapped output
+     */
+    public StreamingOutput cache(final String key, final String path, final int depth, final JcrValidator validator,
+                                 final StreamingOutput output, final long generation) {
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream target) throws IOException {
+                final CopyingOutputStream copy = new CopyingOutputStream(target, maxEntrySize);
+                output.write(copy);
+                if (!copy.isOverflowed()) {
+                    put(new Entry(key, path, depth, validator, copy.toByteArray()), generation);
+                }
+            }
+        };
+    }
+
+    /**
+     * Evicts the cached representations affected by a batch of changes.
+     */
+    @Override
+    public void onEvent(final EventIterator events) {
+        generation.incrementAndGet();
+        final List<String> changedNodePaths = new ArrayList<String>();
+        final List<String> nodePaths = new ArrayList<String>();
+        while (events.hasNext()) {
+            final Event event = events.nextEvent();
+            try {
+                final String path = event.getPath();
+                if (isSecurityPath(path)) {
+                    log.debug("The security configuration has changed, clearing the response cache");
+                    final Runnable listener = securityListener;
+                    if (listener != null) {
+                        listener.run();
+                    }
+                    clear();
+                    return;
+                }
+                switch (event.getType()) {
+                    case Event.NODE_ADDED:
+                    case Event.NODE_REMOVED:
+                    case Event.NODE_MOVED:
+                        nodePaths.add(path);
+                        break;
+                    default:
+                        changedNodePaths.add(getParentPath(path));
+                }
+            } catch (RepositoryException e) {
+                log.warn("Unable to get the path of an event, clearing the response cache: {}", e.getMessage());
+                clear();
+                return;
+            }
+        }
+        synchronized (this) {
+            for (String changedNodePath : changedNodePaths) {
+                invalidateAncestors(changedNodePath, 0);
+            }
+            for (String nodePath : nodePaths) {
+                // an added or removed node also changes the children of its parent
+                invalidateAncestors(nodePath, 1);
+                invalidateSubtree(nodePath);
+            }
+        }
+    }
+
+    /**
+     * Evicts the cached representations of a node that has been changed, added or removed, of its ancestors that
+     * include it within their depth and of its descendants. Representations that are being rendered at the same time
+     * are not cached.
+     *
+     * @param nodePath the absolute path of the node
+     */
+    public void invalidate(final String nodePath) {
+        generation.incrementAndGet();
+        synchronized (this) {
+            invalidateAncestors(nodePath, 1);
+            invalidateSubtree(nodePath);
+        }
+    }
+
+    /**
+     * Removes all cached representations.
+     */
+    public synchronized void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+        keysByPath.clear();
+    }
+
+    /**
+     * Unregisters the observation listener and logs out its session.
+     */
+    public synchronized void close() {
+        if (listenerSession != null && listenerSession.isLive()) {
+            try {
+                listenerSession.getWorkspace().getObservationManager().removeEventListener(this);
+            } catch (RepositoryException e) {
+                log.debug("Unable to remove the observation listener: {}", e);
+            }
+            listenerSession.logout();
+        }
+        listenerSession = null;
+        nextStart = 0;
+        clear();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    public void setMaxEntrySize(final int maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    /**
+     * Sets the listener that is notified when the security configuration changes, before the cache is cleared.
+     *
+     * @param securityListener the listener, or <code>null</code>
+     */
+    public void setSecurityListener(final Runnable securityListener) {
+        this.securityListener = securityListener;
+    }
+
+    public void setUsername(final String username) {
+        this.username = username;
+        close();
+    }
+
+    public void setPassword(final String password) {
+        this.password = password;
+        close();
+    }
+
+    private synchronized boolean start() {
+        if (listenerSession != null && listenerSession.isLive()) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        if (now < nextStart) {
+            return false;
+        }
+        nextStart = now + RETRY_INTERVAL;
+        clear();
+        Session session = null;
+        try {
+            session = JcrSessionUtil.createSession(username, password);
+            if (session == null) {
+                return false;
+            }
+            final ObservationManager observationManager = session.getWorkspace().getObservationManager();
+            observationManager.addEventListener(this, EVENT_TYPES, "/", true, null, null, false);
+            listenerSession = session;
+            return true;
+        } catch (LoginException e) {
+            log.warn("Unable to log in as '{}', the response cache is disabled: {}", username, e.getMessage());
+        } catch (RepositoryException e) {
+            log.warn("Unable to register the observation listener, the response cache is disabled: {}", e);
+        }
+        if (session != null) {
+            session.logout();
+        }
+        return false;
+    }
+
+    private synchronized void put(final Entry entry, final long generation) {
+        if (generation != this.generation.get() || maxSize <= 0) {
+            // the repository has changed while the representation was being rendered
+            return;
+        }
+        remove(entry.key);
+        entries.put(entry.key, entry);
+        Set<String> keys = keysByPath.get(entry.path);
+        if (keys == null) {
+            keys = new HashSet<String>();
+            keysByPath.put(entry.path, keys);
+        }
+        keys.add(entry.key);
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxSize && eldest.hasNext()) {
+            final Entry evicted = eldest.next();
+            eldest.remove();
+            removeKey(evicted);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void invalidateAncestors(final String nodePath, final int offset) {
+        String path = nodePath;
+        int distance = 0;
+        while (path != null) {
+            final Set<String> keys = keysByPath.get(path);
+            if (keys != null) {
+                for (String key : new ArrayList<String>(keys)) {
+                    final Entry entry = entries.get(key);
+                    if (entry != null && distance <= entry.depth + offset) {
+                        remove(key);
+                        invalidations.incrementAndGet();
+                    }
+                }
+            }
+            path = "/".equals(path) ? null : getParentPath(path);
+            distance++;
+        }
+    }
+
+    private void invalidateSubtree(final String nodePath) {
+        final String prefix = "/".equals(nodePath) ? "/" : nodePath + "/";
+        // '0' is the character after '/', so this is the range of paths starting with the prefix
+        final SortedMap<String, Set<String>> subtree = keysByPath.subMap(prefix, prefix.substring(0, prefix.length() - 1) + "0");
+        final List<String> keys = new ArrayList<String>();
+        for (Set<String> pathKeys : subtree.values()) {
+            keys.addAll(pathKeys);
+        }
+        for (String key : keys) {
+            remove(key);
+            invalidations.incrementAndGet();
+        }
+    }
+
+    private void remove(final String key) {
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            removeKey(entry);
+        }
+    }
+
+    private void removeKey(final Entry entry) {
+        final Set<String> keys = keysByPath.get(entry.path);
+        if (keys != null) {
+            keys.remove(entry.key);
+            if (keys.isEmpty()) {
+                keysByPath.remove(entry.path);
+            }
+        }
+    }
+
+    private static boolean isSecurityPath(final String path) {
+        return (path.equals(CONFIGURATION_PATH) || path.startsWith(CONFIGURATION_PATH + "/"))
+                && !path.equals(USERS_PATH) && !path.startsWith(USERS_PATH + "/");
+    }
+
+    private static String getParentPath(final String path) {
+        final int separator = path.lastIndexOf('/');
+        return separator <= 0 ? "/" : path.substring(0, separator);
+    }
+
+    /**
+     * A cached representation.
+     */
+    public static final class Entry {
+
+        private final String key;
+        private final String path;
+        private final int depth;
+        private final JcrValidator validator;
+        private final byte[] body;
+
+        private Entry(final String key, final String path, final int depth, final JcrValidator validator,
+                      final byte[] body) {
+            this.key = key;
+            this.path = path;
+            this.depth = depth;
+            this.validator = validator;
+            this.body = body;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the validators of the representation, or <code>null</code> if there are none
+         */
+        public JcrValidator getValidator() {
+            return validator;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    private static final class CopyingOutputStream extends OutputStream {
+
+        private final OutputStream target;
+        private final int maxSize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private CopyingOutputStream(final OutputStream target, final int maxSize) {
+            this.target = target;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            target.write(b);
+            copy(1);
+            if (copy != null) {
+                copy.write(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+            target.write(buffer, offset, length);
+            copy(length);
+            if (copy != null) {
+                copy.write(buffer, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        private void copy(final int length) {
+            if (copy != null && copy.size() + length > maxSize) {
+                copy = null;
+            }
+        }
+
+        private boolean isOverflowed() {
+            return copy == null;
+        }
+
+        private byte[] toByteArray() {
+            return copy.toByteArray();
+        }
+    }
+}
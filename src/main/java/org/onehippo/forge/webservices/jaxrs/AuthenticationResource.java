@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs;
+
+import java.io.UnsupportedEncodingException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.jaxrs.exception.UnauthorizedException;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
+import org.onehippo.forge.webservices.security.TokenStore;
+import org.onehippo.forge.webservices.session.Impersonator;
+
+/**
+ * Resource for exchanging basic authentication credentials for a short-lived bearer token. Tokens do not keep the
+ * password, so they are only issued when the sessions of their requests can be impersonated, see {@link Impersonator}.
+ */
+@Api(value = "_auth", description = "Authentication API", position = 7)
+@Path(value = "_auth")
+@CrossOriginResourceSharing(allowAllOrigins = true)
+public class AuthenticationResource {
+
+    private static final String BASIC_PREFIX = "Basic ";
+
+    @Context
+    private HttpServletRequest request;
+
+    @ApiOperation(
+            value = "Issues a bearer token for the basic authentication credentials of the request",
+            notes = "The token can be passed in an 'Authorization: Bearer <token>' header instead of the credentials",
+            position = 1)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 503, message = ResponseConstants.STATUS_MESSAGE_TOKENS_UNAVAILABLE)
+    })
+    @POST
+    @Path("/token")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response createToken(@HeaderParam(HttpHeaders.AUTHORIZATION) String authorization) {
+        final TokenStore tokenStore = (TokenStore) request.getAttribute(AuthenticationConstants.HIPPO_TOKEN_STORE);
+        if (tokenStore == null) {
+            throw new IllegalStateException("No token store available");
+        }
+        final Impersonator impersonator = (Impersonator) request.getAttribute(AuthenticationConstants.HIPPO_IMPERSONATOR);
+        if (impersonator == null || !impersonator.isEnabled()) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .entity("Tokens can only be issued when impersonationUsername and impersonationPassword are set")
+                    .type(MediaType.TEXT_PLAIN_TYPE).build();
+        }
+        // the credentials have been verified by the authentication handler before the request got here
+        final String username = getBasicUsername(authorization);
+        if (username == null) {
+            throw new UnauthorizedException("A token can only be issued for basic authentication credentials");
+        }
+        Map<String, Object> token = new LinkedHashMap<String, Object>();
+        token.put("access_token", tokenStore.issue(username));
+        token.put("token_type", "Bearer");
+        token.put("expires_in", tokenStore.getTimeToLive() / 1000);
+
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoStore(true);
+        return Response.ok(token).cacheControl(cacheControl).build();
+    }
+
+    private static String getBasicUsername(final String authorization) {
+        if (authorization == null
+                || !authorization.regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+            return null;
+        }
+        try {
+            final String decoded = new String(Base64.decodeBase64(authorization.substring(BASIC_PREFIX.length()).trim()), "UTF-8");
+            final int separator = decoded.indexOf(':');
+            if (separator <= 0) {
+                return null;
+            }
+            return decoded.substring(0, separator);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
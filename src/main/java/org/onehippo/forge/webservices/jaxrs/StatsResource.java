@@ -17,6 +17,8 @@
 package org.onehippo.forge.webservices.jaxrs;
 
 import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.jcr.Session;
 import javax.servlet.http.HttpServletRequest;
@@ -41,7 +43,14 @@ import org.apache.jackrabbit.core.RepositoryImpl;
 import org.apache.jackrabbit.core.stats.QueryStatCore;
 import org.apache.jackrabbit.core.stats.RepositoryStatisticsImpl;
 import org.hippoecm.repository.impl.RepositoryDecorator;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.security.CredentialCache;
+import org.onehippo.forge.webservices.security.LoginThrottle;
+import org.onehippo.forge.webservices.security.TokenStore;
+import org.onehippo.forge.webservices.session.Impersonator;
+import org.onehippo.forge.webservices.session.SessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -132,6 +141,105 @@ public class StatsResource {
         return Response.ok(slowQueries).build();
     }
 
+    @ApiOperation(
+            value = "Displays the statistics of the session pool",
+            notes = "Shows the hits and misses of the pooled sessions and cached credentials used for authenticating requests",
+            position = 5)
+    @GET
+    @Path("/sessions")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getSessionPoolStatistics() {
+        Map<String, Object> info = new LinkedHashMap<String, Object>();
+        final SessionPool readSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_READ_SESSION_POOL);
+        final SessionPool writeSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_WRITE_SESSION_POOL);
+        if (readSessionPool != null && writeSessionPool != null) {
+            info.put("hits", readSessionPool.getHits() + writeSessionPool.getHits());
+            info.put("misses", readSessionPool.getMisses() + writeSessionPool.getMisses());
+            info.put("evictions", readSessionPool.getEvictions() + writeSessionPool.getEvictions());
+            info.put("idle", readSessionPool.getIdleCount() + writeSessionPool.getIdleCount());
+            info.put("read", getSessionPoolStatistics(readSessionPool));
+            info.put("write", getSessionPoolStatistics(writeSessionPool));
+        }
+        final CredentialCache credentialCache = (CredentialCache) request.getAttribute(AuthenticationConstants.HIPPO_CREDENTIAL_CACHE);
+        if (credentialCache != null) {
+            Map<String, Object> credentials = new LinkedHashMap<String, Object>();
+            credentials.put("hits", credentialCache.getHits());
+            credentials.put("misses", credentialCache.getMisses());
+            credentials.put("size", credentialCache.getSize());
+            credentials.put("maxSize", credentialCache.getMaxSize());
+            credentials.put("timeToLive", credentialCache.getTimeToLive());
+            info.put("credentials", credentials);
+        }
+        final Impersonator impersonator = (Impersonator) request.getAttribute(AuthenticationConstants.HIPPO_IMPERSONATOR);
+        if (impersonator != null) {
+            Map<String, Object> impersonation = new LinkedHashMap<String, Object>();
+            impersonation.put("enabled", impersonator.isEnabled());
+            impersonation.put("impersonations", impersonator.getImpersonations());
+            impersonation.put("failures", impersonator.getFailures());
+            info.put("impersonation", impersonation);
+        }
+        final TokenStore tokenStore = (TokenStore) request.getAttribute(AuthenticationConstants.HIPPO_TOKEN_STORE);
+        if (tokenStore != null) {
+            Map<String, Object> tokens = new LinkedHashMap<String, Object>();
+            tokens.put("issued", tokenStore.getIssued());
+            tokens.put("hits", tokenStore.getHits());
+            tokens.put("misses", tokenStore.getMisses());
+            tokens.put("signed", tokenStore.isSigned());
+            tokens.put("size", tokenStore.getSize());
+            tokens.put("maxSize", tokenStore.getMaxSize());
+            tokens.put("timeToLive", tokenStore.getTimeToLive());
+            info.put("tokens", tokens);
+        }
+        final LoginThrottle loginThrottle = (LoginThrottle) request.getAttribute(AuthenticationConstants.HIPPO_LOGIN_THROTTLE);
+        if (loginThrottle != null) {
+            Map<String, Object> throttle = new LinkedHashMap<String, Object>();
+            throttle.put("failures", loginThrottle.getFailures());
+            throttle.put("throttled", loginThrottle.getThrottled());
+            throttle.put("size", loginThrottle.getSize());
+            throttle.put("maxSize", loginThrottle.getMaxSize());
+            throttle.put("maxFailures", loginThrottle.getMaxFailures());
+            throttle.put("backoff", loginThrottle.getBackoff());
+            throttle.put("maxBackoff", loginThrottle.getMaxBackoff());
+            info.put("throttle", throttle);
+        }
+        return Response.ok(info).build();
+    }
+
+    @ApiOperation(
+            value = "Displays the statistics of the response cache",
+            notes = "Shows the hits, misses, evictions and invalidations of the cached node representations",
+            position = 6)
+    @GET
+    @Path("/cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getResponseCacheStatistics() {
+        Map<String, Object> info = new LinkedHashMap<String, Object>();
+        final NodeResponseCache responseCache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (responseCache != null) {
+            info.put("enabled", responseCache.isEnabled());
+            info.put("hits", responseCache.getHits());
+            info.put("misses", responseCache.getMisses());
+            info.put("evictions", responseCache.getEvictions());
+            info.put("invalidations", responseCache.getInvalidations());
+            info.put("size", responseCache.getSize());
+            info.put("maxSize", responseCache.getMaxSize());
+            info.put("maxEntrySize", responseCache.getMaxEntrySize());
+        }
+        return Response.ok(info).build();
+    }
+
+    private Map<String, Object> getSessionPoolStatistics(final SessionPool sessionPool) {
+        Map<String, Object> info = new LinkedHashMap<String, Object>();
+        info.put("hits", sessionPool.getHits());
+        info.put("misses", sessionPool.getMisses());
+        info.put("evictions", sessionPool.getEvictions());
+        info.put("idle", sessionPool.getIdleCount());
+        info.put("maxIdle", sessionPool.getMaxIdle());
+        info.put("maxIdlePerUser", sessionPool.getMaxIdlePerKey());
+        info.put("maxIdleTime", sessionPool.getMaxIdleTime());
+        return info;
+    }
+
     private QueryStat getQueryStatistics(final Session session) throws NoSuchFieldException, IllegalAccessException {
         final RepositoryContext repositoryContext = getRepositoryContext(session);
         final QueryStatCore queryStat = repositoryContext.getStatManager().getQueryStat();
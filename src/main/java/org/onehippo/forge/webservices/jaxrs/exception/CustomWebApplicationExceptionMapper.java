@@ -16,7 +16,11 @@
 
 package org.onehippo.forge.webservices.jaxrs.exception;
 
+import java.util.List;
+import java.util.Map;
+
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
@@ -31,8 +35,15 @@ public class CustomWebApplicationExceptionMapper implements ExceptionMapper<WebA
 
     @Override
     public Response toResponse(WebApplicationException ex) {
+        if (ex.getCause() instanceof WebApplicationException) {
+            // resources that catch any exception wrap exceptions which already carry a response of their own
+            return toResponse((WebApplicationException) ex.getCause());
+        }
         String message = ex.getCause() == null ? ex.getMessage() : ex.getCause().getMessage();
         int status = ex.getResponse().getStatus();
+        if (message == null && ex.getResponse().getEntity() instanceof String) {
+            message = (String) ex.getResponse().getEntity();
+        }
         if (message == null) {
             if (ex.getCause() != null) {
                 message = "cause is " + ex.getCause().getClass().getName();
@@ -45,7 +56,16 @@ public class CustomWebApplicationExceptionMapper implements ExceptionMapper<WebA
         ResponseExceptionRepresentation errorRepresentation = new ResponseExceptionRepresentation();
         errorRepresentation.setMessage(message);
         errorRepresentation.setStatusCode(status);
-        return Response.status(status).entity(errorRepresentation).type(MediaType.APPLICATION_JSON).build();
+        Response.ResponseBuilder builder = Response.status(status).entity(errorRepresentation).type(MediaType.APPLICATION_JSON);
+        // keep headers like WWW-Authenticate and Retry-After of the original response
+        for (Map.Entry<String, List<Object>> header : ex.getResponse().getMetadata().entrySet()) {
+            if (!HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+                for (Object value : header.getValue()) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        return builder.build();
     }
 
     private String deriveStatusMessage(final String message, final int statusCode) {
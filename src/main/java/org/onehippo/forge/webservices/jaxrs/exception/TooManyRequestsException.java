@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.exception;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * Throw this exception to return a 429 Too Many Requests response. The Retry-After header is set to the number of
+ * seconds after which the client may try again.
+ */
+public class TooManyRequestsException extends WebApplicationException {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    public TooManyRequestsException(long retryDelay) {
+        this("Too many failed login attempts.", retryDelay);
+    }
+
+    public TooManyRequestsException(String message, long retryDelay) {
+        super(Response.status(STATUS_TOO_MANY_REQUESTS).header("Retry-After", String.valueOf((retryDelay + 999) / 1000))
+                .entity(message).build());
+    }
+}
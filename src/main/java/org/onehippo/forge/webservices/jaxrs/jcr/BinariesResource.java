@@ -0,0 +1,417 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.jcr.Binary;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
+import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.api.JackrabbitValue;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrBinaryStreamingOutput;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrDataBindingHelper;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrUploadStream;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrValidator;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resource for downloading and uploading binary values. The value is streamed from the repository to the response, and
+ * single byte ranges are supported so large assets can be downloaded in parts or resumed. Uploads are streamed from
+ * the request into the repository, without base64 encoding or holding the value in memory.
+ */
+@Api(value = "binaries", description = "JCR binary API", position = 3)
+@Path(JcrDataBindingHelper.BINARIES_PATH)
+@CrossOriginResourceSharing(allowAllOrigins = true)
+public class BinariesResource {
+
+    private static final Logger log = LoggerFactory.getLogger(BinariesResource.class);
+
+    // not defined in javax.ws.rs.core.Response.Status of JAX-RS 1.1
+    private static final int STATUS_PARTIAL_CONTENT = 206;
+    private static final int STATUS_REQUEST_ENTITY_TOO_LARGE = 413;
+    private static final int STATUS_REQUESTED_RANGE_NOT_SATISFIABLE = 416;
+
+    private static final String BYTES_UNIT = "bytes";
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final long[] UNSATISFIABLE = new long[0];
+    // binaries without a content identity or modification date up to this size are digested for their entity tag
+    private static final long DIGEST_MAX_SIZE = 64 * 1024;
+
+    @Context
+    private HttpServletRequest request;
+
+    /**
+     * Gets a binary value by the path of its property, or by the path of a node with a <code>jcr:data</code> property.
+     */
+    @GET
+    @Path("{path:.*}")
+    @Produces(MediaType.WILDCARD)
+    @ApiOperation(value = "Get a binary", notes = "Streams a binary value from the specified path. Supports single byte ranges.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK),
+            @ApiResponse(code = 206, message = ResponseConstants.STATUS_MESSAGE_PARTIAL_CONTENT),
+            @ApiResponse(code = 304, message = ResponseConstants.STATUS_MESSAGE_NOT_MODIFIED),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_BINARY_NOT_FOUND),
+            @ApiResponse(code = 416, message = ResponseConstants.STATUS_MESSAGE_RANGE_NOT_SATISFIABLE),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response getBinaryByPath(@ApiParam(value = "Path of the binary property, or of a node with a jcr:data property", required = true) @PathParam("path") String path,
+                                    @ApiParam(value = "Index of the value of a multiple property", required = false) @QueryParam(JcrDataBindingHelper.BINARY_INDEX_PARAM) @DefaultValue("0") int index,
+                                    @HeaderParam("Range") String range,
+                                    @HeaderParam("If-Range") String ifRange,
+                                    @Context Request jaxrsRequest,
+                                    @Context HttpHeaders headers) {
+        try {
+            Session session = JcrSessionUtil.getSessionFromRequest(request);
+            String absolutePath = StringUtils.defaultIfEmpty(path, "/");
+            if (!absolutePath.startsWith("/")) {
+                absolutePath = "/" + absolutePath;
+            }
+
+            final Property property = getBinaryProperty(session, absolutePath);
+            if (property == null || index < 0) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            final long size;
+            final Value value;
+            if (property.isMultiple()) {
+                final long[] lengths = property.getLengths();
+                if (index >= lengths.length) {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+                size = lengths[index];
+                value = property.getValues()[index];
+            } else {
+                size = property.getLength();
+                value = property.getValue();
+            }
+
+            final EntityTag eTag = getEntityTag(property, index, value, size);
+            final Date lastModified = getLastModified(property);
+            Response.ResponseBuilder notModified = JcrValidator.evaluatePreconditions(jaxrsRequest, headers, lastModified, eTag);
+            if (notModified != null) {
+                return notModified.tag(eTag).build();
+            }
+
+            long[] byteRange = null;
+            // a range of a weakly tagged binary may not be combined with a range of another version of it
+            if (ifRange == null || (!eTag.isWeak() && ifRange.equals(eTag.toString()))) {
+                byteRange = parseRange(range, size);
+            }
+            if (byteRange == UNSATISFIABLE) {
+                return Response.status(STATUS_REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HEADER_CONTENT_RANGE, BYTES_UNIT + " */" + size).build();
+            }
+
+            final Response.ResponseBuilder builder;
+            if (byteRange == null) {
+                builder = Response.ok(new JcrBinaryStreamingOutput(property, index, 0, size))
+                        .header(HEADER_CONTENT_LENGTH, String.valueOf(size));
+            } else {
+                final long length = byteRange[1] - byteRange[0] + 1;
+                builder = Response.status(STATUS_PARTIAL_CONTENT)
+                        .entity(new JcrBinaryStreamingOutput(property, index, byteRange[0], length))
+                        .header(HEADER_CONTENT_RANGE, BYTES_UNIT + " " + byteRange[0] + "-" + byteRange[1] + "/" + size)
+                        .header(HEADER_CONTENT_LENGTH, String.valueOf(length));
+            }
+            builder.type(getMediaType(property)).header(HEADER_ACCEPT_RANGES, BYTES_UNIT).tag(eTag);
+            if (lastModified != null) {
+                builder.lastModified(lastModified);
+            }
+            return builder.build();
+        } catch (RepositoryException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+    }
+
+    /**
+     * Stores the body of the request as a binary value. The path is the path of a binary property, which is created
+     * when it does not exist yet, or the path of a node of which the <code>jcr:data</code> property is set. In the
+     * latter case the content type of the request is stored as the <code>jcr:mimeType</code> of the node.
+     */
+    @PUT
+    @Path("{path:.*}")
+    @Consumes(MediaType.WILDCARD)
+    @ApiOperation(value = "Upload a binary", notes = "Streams the body of the request into a binary property. " +
+            "The upload is rejected when a Content-MD5 header is given that does not match the body.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = ResponseConstants.STATUS_MESSAGE_CREATED),
+            @ApiResponse(code = 204, message = ResponseConstants.STATUS_MESSAGE_UPDATED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 403, message = ResponseConstants.STATUS_MESSAGE_ACCESS_DENIED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 413, message = ResponseConstants.STATUS_MESSAGE_UPLOAD_TOO_LARGE),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response updateBinaryByPath(@ApiParam(value = "Path of the binary property, or of a node of which to set the jcr:data property", required = true) @PathParam("path") String path,
+                                       @HeaderParam("Content-MD5") String contentMd5,
+                                       @HeaderParam(HttpHeaders.CONTENT_LENGTH) @DefaultValue("-1") long contentLength,
+                                       @Context HttpHeaders headers,
+                                       @Context UriInfo ui,
+                                       InputStream body) {
+        try {
+            Session session = JcrSessionUtil.getSessionFromRequest(request);
+            String absolutePath = StringUtils.defaultIfEmpty(path, "/");
+            if (!absolutePath.startsWith("/")) {
+                absolutePath = "/" + absolutePath;
+            }
+
+            final Node node;
+            final String propertyName;
+            if (session.nodeExists(absolutePath)) {
+                node = session.getNode(absolutePath);
+                propertyName = JcrConstants.JCR_DATA;
+            } else {
+                final int separator = absolutePath.lastIndexOf('/');
+                final String parentPath = separator == 0 ? "/" : absolutePath.substring(0, separator);
+                if (separator == absolutePath.length() - 1 || !session.nodeExists(parentPath)) {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+                node = session.getNode(parentPath);
+                propertyName = absolutePath.substring(separator + 1);
+            }
+            final boolean created = !node.hasProperty(propertyName);
+            if (!created && node.getProperty(propertyName).isMultiple()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("Values of a multiple property can not be uploaded").type(MediaType.TEXT_PLAIN_TYPE).build();
+            }
+
+            final Long maxUploadSize = (Long) request.getAttribute(AuthenticationConstants.HIPPO_MAX_UPLOAD_SIZE);
+            final long maxSize = maxUploadSize != null ? maxUploadSize : JcrUploadStream.DEFAULT_MAX_SIZE;
+            if (maxSize > 0 && contentLength > maxSize) {
+                return uploadTooLarge(maxSize);
+            }
+
+            final JcrUploadStream upload = new JcrUploadStream(body, maxSize);
+            final Binary binary;
+            try {
+                binary = session.getValueFactory().createBinary(upload);
+            } catch (RepositoryException e) {
+                if (upload.isLimitExceeded()) {
+                    return uploadTooLarge(maxSize);
+                }
+                throw e;
+            }
+            try {
+                if (contentMd5 != null && !upload.matches(contentMd5)) {
+                    return Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The body does not match the Content-MD5 header").type(MediaType.TEXT_PLAIN_TYPE).build();
+                }
+                node.setProperty(propertyName, binary);
+                if (JcrConstants.JCR_DATA.equals(propertyName)) {
+                    final MediaType mediaType = headers.getMediaType();
+                    if (mediaType != null && !mediaType.isWildcardType()) {
+                        node.setProperty(JcrConstants.JCR_MIMETYPE, mediaType.getType() + "/" + mediaType.getSubtype());
+                    }
+                    if (node.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
+                        node.setProperty(JcrConstants.JCR_LASTMODIFIED, Calendar.getInstance());
+                    }
+                }
+                session.save();
+            } finally {
+                binary.dispose();
+            }
+            invalidateResponses(node.getPath());
+
+            if (created) {
+                UriBuilder ub = ui.getBaseUriBuilder().path(this.getClass()).path(this.getClass(), "getBinaryByPath");
+                final URI newBinaryUri = ub.build(node.getProperty(propertyName).getPath().substring(1));
+                return Response.created(newBinaryUri).build();
+            }
+            return Response.noContent().build();
+        } catch (RepositoryException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+    }
+
+    /**
+     * Evicts the cached representations of a node that this request has changed, so the next read does not have to
+     * wait for the observation events of the change.
+     */
+    private void invalidateResponses(final String path) {
+        final NodeResponseCache cache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    private static Response uploadTooLarge(final long maxSize) {
+        return Response.status(STATUS_REQUEST_ENTITY_TOO_LARGE)
+                .entity("The upload exceeds the maximum size of " + maxSize + " bytes").type(MediaType.TEXT_PLAIN_TYPE).build();
+    }
+
+    private static Property getBinaryProperty(final Session session, final String absolutePath) throws RepositoryException {
+        Property property = null;
+        if (session.propertyExists(absolutePath)) {
+            property = session.getProperty(absolutePath);
+        } else if (session.nodeExists(absolutePath)) {
+            final Node node = session.getNode(absolutePath);
+            if (node.hasProperty(JcrConstants.JCR_DATA)) {
+                property = node.getProperty(JcrConstants.JCR_DATA);
+            }
+        }
+        if (property == null || property.getType() != PropertyType.BINARY) {
+            return null;
+        }
+        return property;
+    }
+
+    /**
+     * Gets the entity tag of a binary value. The tag is strong when it changes with the content: when it is the
+     * identity of the value in the data store, or the digest of a small value. Otherwise only a weak tag can be given,
+     * derived from the last modification date when there is one, which is not used for byte ranges, since not every
+     * write of a binary updates that date.
+     */
+    static EntityTag getEntityTag(final Property property, final int index, final Value value, final long size)
+            throws RepositoryException {
+        if (value instanceof JackrabbitValue) {
+            // the identity of a value in the data store is derived from its content
+            final String contentIdentity = ((JackrabbitValue) value).getContentIdentity();
+            if (contentIdentity != null) {
+                return new EntityTag(contentIdentity);
+            }
+        }
+        if (size >= 0 && size <= DIGEST_MAX_SIZE) {
+            final Binary binary = value.getBinary();
+            try {
+                final InputStream content = binary.getStream();
+                try {
+                    return new EntityTag(DigestUtils.md5Hex(content));
+                } finally {
+                    content.close();
+                }
+            } catch (IOException e) {
+                log.debug("Unable to digest binary {}: {}", property.getPath(), e.getMessage());
+            } finally {
+                binary.dispose();
+            }
+        }
+        final Date lastModified = getLastModified(property);
+        return new EntityTag(DigestUtils.md5Hex(property.getPath() + ":" + index + ":" + size + ":"
+                + property.getParent().getIdentifier() + ":" + (lastModified != null ? lastModified.getTime() : "")),
+                true);
+    }
+
+    private static Date getLastModified(final Property property) throws RepositoryException {
+        final Calendar lastModified = JcrValidator.getLastModified(property.getParent());
+        return lastModified != null ? lastModified.getTime() : null;
+    }
+
+    private static String getMediaType(final Property property) throws RepositoryException {
+        final String mimeType = JcrDataBindingHelper.getMimeType(property);
+        if (mimeType != null) {
+            try {
+                return MediaType.valueOf(mimeType).toString();
+            } catch (IllegalArgumentException e) {
+                log.debug("Invalid mime type '{}' of binary {}", mimeType, property.getPath());
+            }
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    /**
+     * Parses a Range header with a single byte range. Multiple ranges and malformed headers are ignored, in which
+     * case the complete binary is returned.
+     *
+     * @param range the value of the Range header, or <code>null</code>
+     * @param size  the size of the binary
+     * @return the first and last byte of the range, <code>null</code> to return the complete binary, or
+     * {@link #UNSATISFIABLE} if the range lies outside of the binary
+     */
+    static long[] parseRange(final String range, final long size) {
+        if (range == null || !range.regionMatches(true, 0, BYTES_UNIT + "=", 0, BYTES_UNIT.length() + 1)) {
+            return null;
+        }
+        final String spec = range.substring(BYTES_UNIT.length() + 1).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            if (first.length() == 0) {
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            final long start = Long.parseLong(first);
+            final long end = last.length() == 0 ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                return null;
+            }
+            if (start >= size) {
+                return UNSATISFIABLE;
+            }
+            return new long[]{start, Math.min(end, size - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr;
+
+import java.io.InputStream;
+
+import javax.jcr.Session;
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrBulkStreamingOutput;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
+
+/**
+ * Resource for writing many nodes and properties in a single request. The operations are streamed from the request
+ * and their results are written to the response once the request has been read, see {@link JcrBulkStreamingOutput}.
+ */
+@Api(value = "_bulk", description = "Bulk API", position = 4)
+@Path(value = "_bulk")
+@CrossOriginResourceSharing(allowAllOrigins = true)
+public class BulkResource {
+
+    @Context
+    private HttpServletRequest request;
+
+    @POST
+    @Consumes(ResponseConstants.MEDIA_TYPE_NDJSON)
+    @Produces(ResponseConstants.MEDIA_TYPE_NDJSON)
+    @ApiOperation(value = "Apply bulk operations", notes = "Applies newline delimited create, update, delete and " +
+            "setProperty operations, saving after every saveInterval operations, and returns the status of each " +
+            "operation as newline delimited JSON", position = 1)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response applyOperations(@ApiParam(value = "Number of operations after which the changes are saved", required = false)
+                                    @QueryParam("saveInterval") @DefaultValue("500") int saveInterval,
+                                    InputStream body) {
+        if (saveInterval <= 0) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        final Session session = JcrSessionUtil.getSessionFromRequest(request);
+        final NodeResponseCache cache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        return Response.ok(new JcrBulkStreamingOutput(session, body, saveInterval, cache),
+                ResponseConstants.MEDIA_TYPE_NDJSON).build();
+    }
+}
@@ -16,11 +16,20 @@
 
 package org.onehippo.forge.webservices.jaxrs.jcr;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.List;
 
+import javax.jcr.AccessDeniedException;
+import javax.jcr.ItemExistsException;
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.ValueFormatException;
+import javax.jcr.nodetype.ConstraintViolationException;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -34,8 +43,11 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
 
@@ -48,9 +60,25 @@ import com.wordnik.swagger.annotations.ApiResponses;
 import org.apache.commons.lang.StringUtils;
 import org.apache.cxf.annotations.GZIP;
 import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
+import org.codehaus.jackson.JsonNode;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.PATCH;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetRequest;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetResult;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNodeReference;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrChildPage;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrDataBindingHelper;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrExportStreamingOutput;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrMultiGetStreamingOutput;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrNodeImporter;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrNodePatch;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrNodeProjection;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrNodeStreamingOutput;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrReadBudget;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrValidator;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -66,11 +94,28 @@ public class NodesResource {
 
     private static final Logger log = LoggerFactory.getLogger(NodesResource.class);
 
+    // not defined in javax.ws.rs.core.Response.Status of JAX-RS 1.1
+    private static final int STATUS_REQUEST_ENTITY_TOO_LARGE = 413;
+
     @Context
     private HttpServletRequest request;
 
     /**
-     * Gets a node by its path.
+     * Gets a node by its path. The node and its children are streamed to the response while the tree is traversed.
+     * The properties and child nodes in the response can be limited with the fields, exclude and childrenOnly
+     * parameters, see {@link JcrNodeProjection}. The children of large folders can be fetched page by page with the
+     * childOffset, childLimit and childCursor parameters, see {@link JcrChildPage}.
+     * <p>
+     * The traversal stops when the {@link JcrReadBudget} of the request runs out, and nodes of which properties or
+     * children have been left out are marked as truncated. When the number of children requested already exceeds the
+     * node budget, a 413 response is returned without reading them.
+     * <p>
+     * A single node, or a request with If-None-Match or If-Modified-Since, carries the validators of the
+     * representation, see {@link JcrValidator}, so a client can get a 304 response without the representation being
+     * built. Only the requested page of children is visited for them.
+     * <p>
+     * Rendered representations are kept in the {@link NodeResponseCache} of the add-on, when it is enabled, until
+     * the nodes they contain change.
      */
     @GET
     @Path("{path:.*}")
@@ -82,35 +127,369 @@ public class NodesResource {
 
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK, response = JcrNode.class),
+            @ApiResponse(code = 304, message = ResponseConstants.STATUS_MESSAGE_NOT_MODIFIED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
             @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
             @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 413, message = ResponseConstants.STATUS_MESSAGE_READ_BUDGET_EXCEEDED),
             @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
     })
     public Response getNodeByPath(@ApiParam(value = "Path of the node to retrieve", required = true) @PathParam("path") @DefaultValue("/") String path,
                                   @ApiParam(value = "Depth of the retrieval", required = false) @QueryParam("depth") @DefaultValue("0") int depth,
-                                  @Context UriInfo ui) throws RepositoryException {
+                                  @ApiParam(value = "Comma separated name globs of the properties to include, e.g. 'hippostd:*'", required = false) @QueryParam("fields") String fields,
+                                  @ApiParam(value = "Comma separated name globs of the properties to exclude", required = false) @QueryParam("exclude") String exclude,
+                                  @ApiParam(value = "Set to 'names' to only return the names of the child nodes", required = false, allowableValues = "names") @QueryParam("childrenOnly") String childrenOnly,
+                                  @ApiParam(value = "Number of child nodes to skip", required = false) @QueryParam(JcrChildPage.PARAM_OFFSET) @DefaultValue("0") long childOffset,
+                                  @ApiParam(value = "Maximum number of child nodes to return, 0 for all", required = false) @QueryParam(JcrChildPage.PARAM_LIMIT) @DefaultValue("0") long childLimit,
+                                  @ApiParam(value = "Cursor of the next page of child nodes, as returned in the 'next' link", required = false) @QueryParam(JcrChildPage.PARAM_CURSOR) String childCursor,
+                                  @ApiParam(value = "Set to 'true' to return numbers and booleans as JSON values instead of strings", required = false) @QueryParam(JcrNodeProjection.TYPED_PARAM) @DefaultValue("false") boolean typed,
+                                  @Context UriInfo ui,
+                                  @Context Request jaxrsRequest,
+                                  @Context HttpHeaders headers) throws RepositoryException {
+        return getNode(StringUtils.defaultIfEmpty(path, "/"), null, depth, fields, exclude, childrenOnly,
+                childOffset, childLimit, childCursor, typed, ui, jaxrsRequest, headers);
+    }
+
+    /**
+     * Gets a node by its identifier, without resolving the path of the node. Supports the same parameters and
+     * validators as {@link #getNodeByPath}.
+     */
+    @GET
+    @Path("_id/{id}")
+    @Produces({MediaType.APPLICATION_JSON})
+    @ApiOperation(value = "Get a node by identifier",
+            notes = "Returns the node with the specified identifier",
+            position = 6,
+            response = JcrNode.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK, response = JcrNode.class),
+            @ApiResponse(code = 304, message = ResponseConstants.STATUS_MESSAGE_NOT_MODIFIED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 413, message = ResponseConstants.STATUS_MESSAGE_READ_BUDGET_EXCEEDED),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response getNodeByIdentifier(@ApiParam(value = "Identifier of the node to retrieve", required = true) @PathParam("id") String id,
+                                        @ApiParam(value = "Depth of the retrieval", required = false) @QueryParam("depth") @DefaultValue("0") int depth,
+                                        @ApiParam(value = "Comma separated name globs of the properties to include, e.g. 'hippostd:*'", required = false) @QueryParam("fields") String fields,
+                                        @ApiParam(value = "Comma separated name globs of the properties to exclude", required = false) @QueryParam("exclude") String exclude,
+                                        @ApiParam(value = "Set to 'names' to only return the names of the child nodes", required = false, allowableValues = "names") @QueryParam("childrenOnly") String childrenOnly,
+                                        @ApiParam(value = "Number of child nodes to skip", required = false) @QueryParam(JcrChildPage.PARAM_OFFSET) @DefaultValue("0") long childOffset,
+                                        @ApiParam(value = "Maximum number of child nodes to return, 0 for all", required = false) @QueryParam(JcrChildPage.PARAM_LIMIT) @DefaultValue("0") long childLimit,
+                                        @ApiParam(value = "Cursor of the next page of child nodes, as returned in the 'next' link", required = false) @QueryParam(JcrChildPage.PARAM_CURSOR) String childCursor,
+                                        @ApiParam(value = "Set to 'true' to return numbers and booleans as JSON values instead of strings", required = false) @QueryParam(JcrNodeProjection.TYPED_PARAM) @DefaultValue("false") boolean typed,
+                                        @Context UriInfo ui,
+                                        @Context Request jaxrsRequest,
+                                        @Context HttpHeaders headers) throws RepositoryException {
+        if (StringUtils.isBlank(id)) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        return getNode(null, id, depth, fields, exclude, childrenOnly, childOffset, childLimit, childCursor, typed,
+                ui, jaxrsRequest, headers);
+    }
+
+    private Response getNode(final String path, final String id, final int depth, final String fields,
+                             final String exclude, final String childrenOnly, final long childOffset,
+                             final long childLimit, final String childCursor, final boolean typed,
+                             final UriInfo ui, final Request jaxrsRequest, final HttpHeaders headers)
+            throws RepositoryException {
+
+        final JcrNodeProjection projection;
+        final JcrChildPage page;
+        try {
+            projection = JcrNodeProjection.valueOf(fields, exclude, childrenOnly).withBinaryBaseUri(ui.getBaseUri())
+                    .withTypedValues(typed || JcrNodeProjection.acceptsTypedValues(headers));
+            page = JcrChildPage.valueOf(childOffset, childLimit, childCursor);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        page.setLinkBuilder(ui.getRequestUriBuilder());
+        final JcrReadBudget budget = (JcrReadBudget) request.getAttribute(AuthenticationConstants.HIPPO_READ_BUDGET);
+
+        final NodeResponseCache cache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+
+        Node node = null;
+        JcrValidator validator = null;
+        String variant = null;
+        long cacheGeneration = -1;
+        try {
+            // the user is taken from the credentials, so a cached response does not need a session
+            // typed values can also be selected by the Accept header, which is not part of the URI
+            variant = ui.getRequestUri() + " " + JcrSessionUtil.getUserIdFromRequest(request)
+                    + (projection.isTypedValues() ? " typed" : "");
+            if (cache != null && cache.isEnabled()) {
+                final NodeResponseCache.Entry cached = cache.get(variant);
+                // an entry without validators can not answer a conditional request, so it is built again
+                if (cached != null && (cached.getValidator() != null || !JcrValidator.isConditional(headers))) {
+                    return getCachedResponse(cached, jaxrsRequest, headers);
+                }
+                cacheGeneration = cache.getGeneration();
+            }
+
+            final Session session = JcrSessionUtil.getSessionFromRequest(request);
+
+            if (id != null) {
+                try {
+                    node = JcrSessionUtil.getNodeByIdentifier(session, id);
+                } catch (IllegalArgumentException e) {
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                }
+            } else {
+                final String absolutePath = path.startsWith("/") ? path : "/" + path;
+                if (session.nodeExists(absolutePath)) {
+                    node = session.getNode(absolutePath);
+                }
+            }
+            if (node == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+
+            if (budget != null && (depth > 0 || projection.isChildNamesOnly())) {
+                final long children = page.estimateSize(node.getNodes().getSize());
+                if (budget.exceeds(1 + children)) {
+                    return Response.status(STATUS_REQUEST_ENTITY_TOO_LARGE)
+                            .entity("The node has more children than the node budget of " + budget.getMaxNodes()
+                                    + " allows, use childLimit to fetch them page by page")
+                            .type(MediaType.TEXT_PLAIN_TYPE).build();
+                }
+            }
+
+            // the validators of a tree take a walk of their own, only spend it when the request can use them
+            if (JcrValidator.isConditional(headers) || (depth == 0 && !projection.isChildNamesOnly())) {
+                validator = JcrValidator.forNode(node, depth, projection,
+                        JcrChildPage.valueOf(childOffset, childLimit, childCursor), variant,
+                        budget != null ? budget.getMaxNodes() : 0);
+            }
+            if (validator != null) {
+                final Response.ResponseBuilder notModified = validator.evaluatePreconditions(jaxrsRequest, headers);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+            }
+        } catch (RepositoryException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+        StreamingOutput output = new JcrNodeStreamingOutput(node, depth, projection, page, budget);
+        if (cacheGeneration >= 0) {
+            output = cache.cache(variant, node.getPath(), depth, validator, output, cacheGeneration);
+        }
+        final Response.ResponseBuilder builder = Response.ok(output, MediaType.APPLICATION_JSON_TYPE);
+        if (validator != null) {
+            validator.addHeaders(builder);
+        }
+        return builder.build();
+    }
+
+    private static Response getCachedResponse(final NodeResponseCache.Entry cached, final Request jaxrsRequest,
+                                              final HttpHeaders headers) {
+        final JcrValidator validator = cached.getValidator();
+        if (validator == null) {
+            return Response.ok(cached.getBody(), MediaType.APPLICATION_JSON_TYPE).build();
+        }
+        final Response.ResponseBuilder notModified = validator.evaluatePreconditions(jaxrsRequest, headers);
+        if (notModified != null) {
+            return notModified.build();
+        }
+        return validator.addHeaders(Response.ok(cached.getBody(), MediaType.APPLICATION_JSON_TYPE)).build();
+    }
+
+    /**
+     * Gets multiple nodes by path or identifier in a single request. The results are returned in the order of the
+     * request, and a node that does not exist gets a result with a 404 status instead of failing the whole request,
+     * see {@link JcrMultiGetStreamingOutput}. All nodes share the {@link JcrReadBudget} of the request.
+     */
+    @POST
+    @Path("_mget")
+    @Produces({MediaType.APPLICATION_JSON})
+    @Consumes({MediaType.APPLICATION_JSON})
+    @ApiOperation(value = "Get multiple nodes",
+            notes = "Returns the nodes with the specified paths or identifiers, in the order of the request",
+            position = 5,
+            response = JcrMultiGetResult.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK, response = JcrMultiGetResult.class),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 413, message = ResponseConstants.STATUS_MESSAGE_READ_BUDGET_EXCEEDED),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response getNodes(@ApiParam(value = "Set to 'true' to return numbers and booleans as JSON values instead of strings", required = false) @QueryParam(JcrNodeProjection.TYPED_PARAM) @DefaultValue("false") boolean typed,
+                             @Context UriInfo ui,
+                             @Context HttpHeaders headers,
+                             JcrMultiGetRequest multiGetRequest) throws RepositoryException {
 
+        if (multiGetRequest == null || multiGetRequest.getNodes() == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        final List<JcrNodeReference> references = multiGetRequest.getNodes();
+        final JcrReadBudget budget = (JcrReadBudget) request.getAttribute(AuthenticationConstants.HIPPO_READ_BUDGET);
+        if (budget != null && budget.exceeds(references.size())) {
+            return Response.status(STATUS_REQUEST_ENTITY_TOO_LARGE)
+                    .entity("The request lists more nodes than the node budget of " + budget.getMaxNodes() + " allows")
+                    .type(MediaType.TEXT_PLAIN_TYPE).build();
+        }
+
+        final Session session = JcrSessionUtil.getSessionFromRequest(request);
+        final boolean typedValues = typed || JcrNodeProjection.acceptsTypedValues(headers);
+        return Response.ok(new JcrMultiGetStreamingOutput(session, references, ui.getBaseUri(), typedValues, budget),
+                MediaType.APPLICATION_JSON_TYPE).build();
+    }
 
-        JcrNode jcrNode = null;
+    /**
+     * Exports a subtree as newline delimited JSON with one line per node, see {@link JcrExportStreamingOutput}. The
+     * nodes are streamed while the subtree is walked, so the size of the subtree is not limited by memory. An export
+     * that stops at the limit or the {@link JcrReadBudget} of the request is continued by passing the path of the last
+     * exported node as the after parameter.
+     */
+    @GET
+    @Path("_export/{path:.*}")
+    @Produces({ResponseConstants.MEDIA_TYPE_NDJSON})
+    @ApiOperation(value = "Export a subtree",
+            notes = "Returns the nodes of a subtree depth first, as one JSON line per node",
+            position = 7)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 409, message = ResponseConstants.STATUS_MESSAGE_EXPORT_CURSOR_NOT_FOUND),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response exportNodeByPath(@ApiParam(value = "Path of the root node of the subtree to export", required = true) @PathParam("path") @DefaultValue("/") String path,
+                                     @ApiParam(value = "Path of the last node of a previous export, to resume after", required = false) @QueryParam("after") String after,
+                                     @ApiParam(value = "Comma separated name globs of the properties to include, e.g. 'hippostd:*'", required = false) @QueryParam("fields") String fields,
+                                     @ApiParam(value = "Comma separated name globs of the properties to exclude", required = false) @QueryParam("exclude") String exclude,
+                                     @ApiParam(value = "Maximum number of nodes to export, 0 for the read budget of the request", required = false) @QueryParam("limit") @DefaultValue("0") long limit,
+                                     @ApiParam(value = "Maximum number of nodes to export per second, 0 for no throttling", required = false) @QueryParam("rate") @DefaultValue("0") int rate,
+                                     @ApiParam(value = "Set to 'true' to return numbers and booleans as JSON values instead of strings", required = false) @QueryParam(JcrNodeProjection.TYPED_PARAM) @DefaultValue("false") boolean typed,
+                                     @Context UriInfo ui,
+                                     @Context HttpHeaders headers) throws RepositoryException {
+
+        final JcrNodeProjection projection;
+        try {
+            projection = JcrNodeProjection.valueOf(fields, exclude, null).withBinaryBaseUri(ui.getBaseUri())
+                    .withTypedValues(typed || JcrNodeProjection.acceptsTypedValues(headers));
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (limit < 0 || rate < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        final JcrReadBudget budget = (JcrReadBudget) request.getAttribute(AuthenticationConstants.HIPPO_READ_BUDGET);
+
+        final Node root;
+        Node last = null;
         try {
             Session session = JcrSessionUtil.getSessionFromRequest(request);
             String absolutePath = StringUtils.defaultIfEmpty(path, "/");
             if (!absolutePath.startsWith("/")) {
                 absolutePath = "/" + absolutePath;
             }
-
             if (!session.nodeExists(absolutePath)) {
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
-            final Node node = session.getNode(absolutePath);
-            jcrNode = JcrDataBindingHelper.getNodeRepresentation(node, depth);
-
+            root = session.getNode(absolutePath);
+
+            if (StringUtils.isNotEmpty(after)) {
+                final String afterPath = after.startsWith("/") ? after : "/" + after;
+                final String rootPath = root.getPath();
+                if (!afterPath.equals(rootPath) && !afterPath.startsWith(rootPath.equals("/") ? "/" : rootPath + "/")) {
+                    return Response.status(Response.Status.BAD_REQUEST).build();
+                }
+                if (!session.nodeExists(afterPath)) {
+                    return Response.status(Response.Status.CONFLICT)
+                            .entity("The node to resume after no longer exists, restart the export")
+                            .type(MediaType.TEXT_PLAIN_TYPE).build();
+                }
+                last = session.getNode(afterPath);
+            }
+        } catch (RepositoryException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+        return Response.ok(new JcrExportStreamingOutput(root, last, projection, limit, budget, rate),
+                ResponseConstants.MEDIA_TYPE_NDJSON).build();
+    }
 
+    /**
+     * Imports a node and its subtree as a child of the node at the path. Unlike {@link #createNodeByPath}, the request
+     * is not bound to a {@link JcrNode} first, but nodes are created while it is parsed, see {@link JcrNodeImporter}.
+     */
+    @POST
+    @Path("_import/{path:.*}")
+    @Consumes({MediaType.APPLICATION_JSON})
+    @ApiOperation(value = "Import a subtree", notes = "Creates a node and its child nodes while the request is being " +
+            "read, optionally saving after every saveInterval nodes, so large trees can be imported with bounded memory", position = 2)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = ResponseConstants.STATUS_MESSAGE_CREATED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 403, message = ResponseConstants.STATUS_MESSAGE_ACCESS_DENIED),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response importNodeByPath(@ApiParam(required = true, value = "Path of the node to which to add the imported node e.g. '/content/documents/'")
+                                     @PathParam("path") @DefaultValue("/") String parentPath,
+                                     @ApiParam(value = "Number of nodes after which the changes are saved, 0 to save once at the end", required = false)
+                                     @QueryParam("saveInterval") @DefaultValue("0") int saveInterval,
+                                     @Context UriInfo ui,
+                                     InputStream body) {
+        if (saveInterval < 0) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        Session session = null;
+        JcrNodeImporter importer = null;
+        try {
+            session = JcrSessionUtil.getSessionFromRequest(request);
+            String absolutePath = StringUtils.defaultIfEmpty(parentPath, "/");
+            if (!absolutePath.startsWith("/")) {
+                absolutePath = "/" + absolutePath;
+            }
+            if (!session.nodeExists(absolutePath)) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            importer = new JcrNodeImporter(session, saveInterval);
+            final Node node = importer.importNode(session.getNode(absolutePath), body);
+            invalidateResponses(node.getPath());
+            UriBuilder ub = ui.getBaseUriBuilder().path(this.getClass()).path(this.getClass(), "getNodeByPath");
+            return Response.created(ub.build(node.getPath().substring(1))).build();
+        } catch (IllegalArgumentException e) {
+            discardChanges(session);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage() + getImportProgress(importer)).type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (ValueFormatException e) {
+            discardChanges(session);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage() + getImportProgress(importer)).type(MediaType.TEXT_PLAIN_TYPE).build();
         } catch (RepositoryException e) {
+            discardChanges(session);
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        } catch (IOException e) {
+            discardChanges(session);
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
         }
-        return Response.ok(jcrNode).build();
+    }
+
+    /**
+     * Evicts the cached representations of a node that this request has changed, so the next read does not have to
+     * wait for the observation events of the change.
+     */
+    private void invalidateResponses(final String path) {
+        final NodeResponseCache cache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    private static String getImportProgress(final JcrNodeImporter importer) {
+        if (importer == null || importer.getSavedCount() == 0) {
+            return "";
+        }
+        return " (" + importer.getSavedCount() + " nodes had already been saved)";
     }
 
     /**
@@ -163,6 +542,7 @@ public class NodesResource {
             UriBuilder ub = ui.getAbsolutePathBuilder().path(this.getClass(), "getNodeByPath");
             newNodeUri = ub.build(node.getName());
             session.save();
+            invalidateResponses(node.getPath());
         } catch (Exception e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -173,7 +553,11 @@ public class NodesResource {
     /**
      * Updates a node. To update a node you need to provide the entire entity. The entity will be replaced with the
      * provided data. Be careful in case you want to update entire node structures, because the UUIDs will be
-     * regenerated
+     * regenerated, unless the reconcile mode is used.
+     * <p>
+     * In reconcile mode the existing node is updated in place: only changed properties are set, only the children that
+     * differ are added or removed, and siblings are reordered when needed. The node and its unchanged descendants keep
+     * their identifiers. See {@link JcrDataBindingHelper#reconcileNodeWithRepresentation(Node, JcrNode)}.
      */
     @PUT
     @Path("{path:.*}")
@@ -181,7 +565,7 @@ public class NodesResource {
     @Consumes({MediaType.APPLICATION_JSON})
     @ApiOperation(value = "Update a node", notes = "To update a node you need to provide the entire entity. The entity will be replaced with the " +
             " provided data. Be careful in case you want to update entire node structures, because the UUIDs will be " +
-            " regenerated", position = 3)
+            " regenerated, unless mode=reconcile is used to update the existing node in place.", position = 3)
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK),
             @ApiResponse(code = 204, message = ResponseConstants.STATUS_MESSAGE_UPDATED),
@@ -193,8 +577,13 @@ public class NodesResource {
     })
     public Response updateNodeByPath(@ApiParam(required = true, value = "Path of the node to update. '/content/documents/'")
                                      @PathParam("path") String parentPath,
+                                     @ApiParam(value = "'replace' to re-create the node, or 'reconcile' to update the existing node in place")
+                                     @QueryParam("mode") @DefaultValue(JcrDataBindingHelper.UPDATE_MODE_REPLACE) String mode,
                                      @Context UriInfo ui,
                                      JcrNode jcrNode) throws RepositoryException {
+        if (!JcrDataBindingHelper.UPDATE_MODE_REPLACE.equals(mode) && !JcrDataBindingHelper.UPDATE_MODE_RECONCILE.equals(mode)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         try {
             Session session = JcrSessionUtil.getSessionFromRequest(request);
             String absolutePath = StringUtils.defaultIfEmpty(parentPath, "/");
@@ -210,19 +599,25 @@ public class NodesResource {
                 return Response.status(Response.Status.BAD_REQUEST).build();
             }
 
+            if (!JcrDataBindingHelper.isCompleteRepresentation(jcrNode)) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity("A truncated or paged representation can not be used to update a node")
+                        .type(MediaType.TEXT_PLAIN_TYPE).build();
+            }
+
             if (!session.nodeExists(absolutePath)) {
                 return Response.status(Response.Status.BAD_REQUEST).build();
             }
 
             final Node nodeToUpdate = session.getNode(absolutePath);
-            final Node parentNode = nodeToUpdate.getParent();
-            nodeToUpdate.remove();
-
-            final Node node = parentNode.addNode(jcrNode.getName(), jcrNode.getPrimaryType());
-            JcrDataBindingHelper.addMixinsFromRepresentation(node, jcrNode.getMixinTypes());
-            JcrDataBindingHelper.addPropertiesFromRepresentation(node, jcrNode.getProperties());
-            JcrDataBindingHelper.addChildNodesFromRepresentation(node, jcrNode.getNodes());
+            if (JcrDataBindingHelper.UPDATE_MODE_RECONCILE.equals(mode)) {
+                JcrDataBindingHelper.renameNode(nodeToUpdate, jcrNode.getName());
+                JcrDataBindingHelper.reconcileNodeWithRepresentation(nodeToUpdate, jcrNode);
+            } else {
+                JcrDataBindingHelper.replaceNodeWithRepresentation(nodeToUpdate, jcrNode);
+            }
             session.save();
+            invalidateResponses(absolutePath);
         } catch (Exception e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -231,6 +626,203 @@ public class NodesResource {
         return Response.noContent().build();
     }
 
+    /**
+     * Patches the properties of a node with a JSON Merge Patch or a JSON Patch, selected by the content type of the
+     * request. All changes of the patch are saved at once, or none of them when the patch fails. See
+     * {@link JcrNodePatch} for the supported documents.
+     */
+    @PATCH
+    @Path("{path:.*}")
+    @Consumes({JcrNodePatch.MERGE_PATCH_MEDIA_TYPE, JcrNodePatch.JSON_PATCH_MEDIA_TYPE})
+    @ApiOperation(value = "Patch a node", notes = "Sets or removes properties of a node with an " +
+            JcrNodePatch.MERGE_PATCH_MEDIA_TYPE + " or " + JcrNodePatch.JSON_PATCH_MEDIA_TYPE + " document, " +
+            "in which properties are referenced as '/properties/{name}'", position = 3)
+    @ApiResponses(value = {
+            @ApiResponse(code = 204, message = ResponseConstants.STATUS_MESSAGE_UPDATED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 403, message = ResponseConstants.STATUS_MESSAGE_ACCESS_DENIED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 409, message = ResponseConstants.STATUS_MESSAGE_PATCH_CONFLICT),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response patchNodeByPath(@ApiParam(required = true, value = "Path of the node to patch e.g. '/content/documents/'")
+                                    @PathParam("path") String path,
+                                    @Context HttpHeaders headers,
+                                    InputStream body) {
+        Session session = null;
+        try {
+            session = JcrSessionUtil.getSessionFromRequest(request);
+            String absolutePath = StringUtils.defaultIfEmpty(path, "/");
+            if (!absolutePath.startsWith("/")) {
+                absolutePath = "/" + absolutePath;
+            }
+            if (!session.nodeExists(absolutePath)) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            final Node node = session.getNode(absolutePath);
+
+            final JsonNode patch = JcrNodePatch.read(body);
+            if (MediaType.valueOf(JcrNodePatch.JSON_PATCH_MEDIA_TYPE).isCompatible(headers.getMediaType())) {
+                JcrNodePatch.applyJsonPatch(node, patch);
+            } else {
+                JcrNodePatch.applyMergePatch(node, patch);
+            }
+            session.save();
+            invalidateResponses(absolutePath);
+        } catch (IllegalArgumentException e) {
+            discardChanges(session);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage()).type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (IllegalStateException e) {
+            discardChanges(session);
+            return Response.status(Response.Status.CONFLICT)
+                    .entity(e.getMessage()).type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (ValueFormatException e) {
+            discardChanges(session);
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage()).type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (RepositoryException e) {
+            discardChanges(session);
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        } catch (IOException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+        return Response.noContent().build();
+    }
+
+    private static void discardChanges(final Session session) {
+        if (session == null) {
+            return;
+        }
+        try {
+            session.refresh(false);
+        } catch (RepositoryException e) {
+            log.warn("Unable to discard the changes of a failed request: {}", e);
+        }
+    }
+
+    /**
+     * Moves a node and its subtree to another path within the repository. The nodes keep their identifiers, and the
+     * move is persisted immediately, without sending the subtree over the wire.
+     */
+    @POST
+    @Path("{path:.*}/_move")
+    @ApiOperation(value = "Move a node", notes = "Moves a node and its child nodes to the destination path, " +
+            "keeping their identifiers", position = 4)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = ResponseConstants.STATUS_MESSAGE_CREATED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 403, message = ResponseConstants.STATUS_MESSAGE_ACCESS_DENIED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 409, message = ResponseConstants.STATUS_MESSAGE_DESTINATION_CONFLICT),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response moveNodeByPath(@ApiParam(required = true, value = "Path of the node to move e.g. '/content/documents/news'")
+                                   @PathParam("path") String path,
+                                   @ApiParam(required = true, value = "New path of the node e.g. '/content/documents/archive/news'")
+                                   @QueryParam("destination") String destination,
+                                   @Context UriInfo ui) {
+        return relocateNode(path, destination, false, ui);
+    }
+
+    /**
+     * Copies a node and its subtree to another path within the repository. The copy is persisted immediately, without
+     * sending the subtree over the wire. Referenceable nodes in the copy get new identifiers.
+     */
+    @POST
+    @Path("{path:.*}/_copy")
+    @ApiOperation(value = "Copy a node", notes = "Copies a node and its child nodes to the destination path", position = 4)
+    @ApiResponses(value = {
+            @ApiResponse(code = 201, message = ResponseConstants.STATUS_MESSAGE_CREATED),
+            @ApiResponse(code = 400, message = ResponseConstants.STATUS_MESSAGE_BAD_REQUEST),
+            @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
+            @ApiResponse(code = 403, message = ResponseConstants.STATUS_MESSAGE_ACCESS_DENIED),
+            @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
+            @ApiResponse(code = 409, message = ResponseConstants.STATUS_MESSAGE_DESTINATION_CONFLICT),
+            @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
+    })
+    public Response copyNodeByPath(@ApiParam(required = true, value = "Path of the node to copy e.g. '/content/documents/news'")
+                                   @PathParam("path") String path,
+                                   @ApiParam(required = true, value = "Path of the copy e.g. '/content/documents/news-copy'")
+                                   @QueryParam("destination") String destination,
+                                   @Context UriInfo ui) {
+        return relocateNode(path, destination, true, ui);
+    }
+
+    /**
+     * Moves or copies a node with the {@link javax.jcr.Workspace} of the session, so the subtree is relocated inside
+     * the repository. Workspace operations do not touch the unsaved changes of the session.
+     */
+    private Response relocateNode(final String path, final String destination, final boolean copy, final UriInfo ui) {
+        if (StringUtils.isBlank(path) || StringUtils.isBlank(destination)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        final String absolutePath = path.startsWith("/") ? path : "/" + path;
+        final String destinationPath = destination.startsWith("/") ? destination : "/" + destination;
+        if (destinationPath.endsWith("]")) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("The destination can not have an index").type(MediaType.TEXT_PLAIN_TYPE).build();
+        }
+        if (destinationPath.equals(absolutePath) || destinationPath.startsWith(absolutePath + "/")) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("A node can not be moved or copied into itself").type(MediaType.TEXT_PLAIN_TYPE).build();
+        }
+        try {
+            Session session = JcrSessionUtil.getSessionFromRequest(request);
+            if (!session.nodeExists(absolutePath)) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            if (copy) {
+                session.getWorkspace().copy(absolutePath, destinationPath);
+            } else {
+                session.getWorkspace().move(absolutePath, destinationPath);
+            }
+            final Node node = getRelocatedNode(session, destinationPath);
+            if (!copy) {
+                invalidateResponses(absolutePath);
+            }
+            invalidateResponses(node.getPath());
+            UriBuilder ub = ui.getBaseUriBuilder().path(this.getClass()).path(this.getClass(), "getNodeByPath");
+            return Response.created(ub.build(node.getPath().substring(1))).build();
+        } catch (AccessDeniedException e) {
+            return Response.status(Response.Status.FORBIDDEN).build();
+        } catch (ItemExistsException e) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("The destination already exists").type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (PathNotFoundException e) {
+            return Response.status(Response.Status.CONFLICT)
+                    .entity("The parent of the destination does not exist").type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (ConstraintViolationException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage()).type(MediaType.TEXT_PLAIN_TYPE).build();
+        } catch (RepositoryException e) {
+            log.error("Error: {}", e);
+            throw new WebApplicationException(e);
+        }
+    }
+
+    /**
+     * Gets the node that a workspace operation created at a destination. The workspace adds it as the last child of
+     * the destination parent, so when same-name siblings are allowed it is the last sibling with the destination name,
+     * which is not necessarily the node at the destination path itself.
+     */
+    private static Node getRelocatedNode(final Session session, final String destinationPath)
+            throws RepositoryException {
+        session.refresh(true);
+        final int separator = destinationPath.lastIndexOf('/');
+        final Node parent = session.getNode(separator == 0 ? "/" : destinationPath.substring(0, separator));
+        Node node = null;
+        final NodeIterator siblings = parent.getNodes(destinationPath.substring(separator + 1));
+        while (siblings.hasNext()) {
+            node = siblings.nextNode();
+        }
+        return node != null ? node : session.getNode(destinationPath);
+    }
+
     @DELETE
     @Path("{path:.*}")
     @ApiOperation(value = "Delete a node", notes = "Deletes a node (and child-nodes)", position = 4)
@@ -260,6 +852,7 @@ public class NodesResource {
             final Node node = session.getNode(absolutePath);
             node.remove();
             session.save();
+            invalidateResponses(absolutePath);
         } catch (Exception e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -32,9 +32,12 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.core.UriInfo;
@@ -48,10 +51,15 @@ import com.wordnik.swagger.annotations.ApiResponses;
 import org.apache.commons.lang.StringUtils;
 import org.apache.cxf.annotations.GZIP;
 import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrDataBindingHelper;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrNodeProjection;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrPropertyStreamingOutput;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrValidator;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,7 +80,8 @@ public class PropertiesResource {
     private HttpServletRequest request;
 
     /**
-     * Gets a property by its path.
+     * Gets a property by its path. When typed values are requested with the typed parameter or a media type parameter
+     * in the Accept header, the property is returned as JSON with numbers and booleans as JSON values.
      */
     @GET
     @Path("{path:.*}")
@@ -84,13 +93,19 @@ public class PropertiesResource {
     )
     @ApiResponses(value = {
             @ApiResponse(code = 200, message = ResponseConstants.STATUS_MESSAGE_OK, response = JcrProperty.class),
+            @ApiResponse(code = 304, message = ResponseConstants.STATUS_MESSAGE_NOT_MODIFIED),
             @ApiResponse(code = 401, message = ResponseConstants.STATUS_MESSAGE_UNAUTHORIZED),
             @ApiResponse(code = 404, message = ResponseConstants.STATUS_MESSAGE_NODE_NOT_FOUND),
             @ApiResponse(code = 500, message = ResponseConstants.STATUS_MESSAGE_ERROR_OCCURRED)
     })
-    public Response getPropertyByPath(@ApiParam(value = "Path of the node to retrieve e.g '/content/hippostd:foldertype'.", required = true) @PathParam("path") String path) throws RepositoryException {
+    public Response getPropertyByPath(@ApiParam(value = "Path of the node to retrieve e.g '/content/hippostd:foldertype'.", required = true) @PathParam("path") String path,
+                                      @ApiParam(value = "Set to 'true' to return numbers and booleans as JSON values instead of strings", required = false) @QueryParam(JcrNodeProjection.TYPED_PARAM) @DefaultValue("false") boolean typed,
+                                      @Context UriInfo ui,
+                                      @Context Request jaxrsRequest,
+                                      @Context HttpHeaders headers) throws RepositoryException {
 
-        JcrProperty jcrProperty = null;
+        Response.ResponseBuilder builder = null;
+        JcrValidator validator = null;
 
         try {
             Session session = JcrSessionUtil.getSessionFromRequest(request);
@@ -103,12 +118,24 @@ public class PropertiesResource {
                 return Response.status(Response.Status.NOT_FOUND).build();
             }
             final Property property = session.getProperty(absolutePath);
-            jcrProperty = JcrDataBindingHelper.getPropertyRepresentation(property);
+            // the property is represented as JSON or XML, depending on the Accept header
+            final String variant = ui.getRequestUri() + " " + session.getUserID() + " " + headers.getRequestHeader(HttpHeaders.ACCEPT);
+            validator = JcrValidator.forProperty(property, variant);
+            final Response.ResponseBuilder notModified = validator.evaluatePreconditions(jaxrsRequest, headers);
+            if (notModified != null) {
+                return notModified.build();
+            }
+            if (typed || JcrNodeProjection.acceptsTypedValues(headers)) {
+                builder = Response.ok(new JcrPropertyStreamingOutput(property, ui.getBaseUri()),
+                        MediaType.APPLICATION_JSON_TYPE);
+            } else {
+                builder = Response.ok(JcrDataBindingHelper.getPropertyRepresentation(property, ui.getBaseUri()));
+            }
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
         }
-        return Response.ok(jcrProperty).build();
+        return validator.addHeaders(builder).build();
     }
 
     /**
@@ -152,6 +179,7 @@ public class PropertiesResource {
             final Node parentNode = session.getNode(absolutePath);
             JcrDataBindingHelper.addPropertyToNode(parentNode, jcrProperty);
             session.save();
+            invalidateResponses(parentNode.getPath());
             UriBuilder ub = ui.getBaseUriBuilder().path(this.getClass()).path(this.getClass(), "getPropertyByPath");
             newPropertyUri = ub.build(parentNode.getProperty(jcrProperty.getName()).getPath().substring(1));
         } catch (Exception e) {
@@ -202,6 +230,7 @@ public class PropertiesResource {
             final Node node = property.getParent();
             JcrDataBindingHelper.addPropertyToNode(node,jcrProperty);
             session.save();
+            invalidateResponses(node.getPath());
         } catch (Exception e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -243,8 +272,10 @@ public class PropertiesResource {
             }
 
             final Property property = session.getProperty(absolutePath);
+            final String nodePath = property.getParent().getPath();
             property.remove();
             session.save();
+            invalidateResponses(nodePath);
         } catch (Exception e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -253,4 +284,15 @@ public class PropertiesResource {
 
     }
 
+    /**
+     * Evicts the cached representations of a node that this request has changed, so the next read does not have to
+     * wait for the observation events of the change.
+     */
+    private void invalidateResponses(final String path) {
+        final NodeResponseCache cache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+    }
+
 }
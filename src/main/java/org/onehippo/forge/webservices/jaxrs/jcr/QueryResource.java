@@ -19,6 +19,7 @@ package org.onehippo.forge.webservices.jaxrs.jcr;
 import java.net.URI;
 import java.util.ArrayList;
 
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.jcr.Value;
@@ -51,7 +52,6 @@ import com.wordnik.swagger.annotations.ApiResponses;
 import org.apache.cxf.rs.security.cors.CrossOriginResourceSharing;
 import org.hippoecm.repository.api.HippoNodeIterator;
 import org.hippoecm.repository.util.RepoUtils;
-import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrQueryResult;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrQueryResultNode;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrSearchQuery;
@@ -119,8 +119,7 @@ public class QueryResource {
 
             while (rowIterator.hasNext()) {
                 Row row = rowIterator.nextRow();
-                final JcrNode nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(row.getNode(), 0);
-                final URI nodeUri = getUriForNode(ui, nodeRepresentation);
+                final URI nodeUri = getUriForNode(ui, row.getNode());
 
                 final JcrQueryResultNode queryResultNode = new JcrQueryResultNode();
                 for(String column : queryResult.getColumnNames()){
@@ -182,8 +181,7 @@ public class QueryResource {
 
             while (rowIterator.hasNext()) {
                 Row row = rowIterator.nextRow();
-                final JcrNode nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(row.getNode(), 0);
-                final URI nodeUri = getUriForNode(ui, nodeRepresentation);
+                final URI nodeUri = getUriForNode(ui, row.getNode());
 
                 final JcrQueryResultNode queryResultNode = new JcrQueryResultNode();
                 for(String column : queryResult.getColumnNames()){
@@ -204,9 +202,12 @@ public class QueryResource {
         return Response.ok(jcrQueryResult).build();
     }
 
-    private URI getUriForNode(final UriInfo ui, final JcrNode nodeRepresentation) {
-        UriBuilder uriBuilder = ui.getBaseUriBuilder().path(NodesResource.class).path(NodesResource.class, "getNodeByPath");
-        return uriBuilder.build(nodeRepresentation.getPath().substring(1));
+    /**
+     * Links to the node by its identifier, so fetching the node does not need to resolve its path.
+     */
+    private URI getUriForNode(final UriInfo ui, final Node node) throws RepositoryException {
+        UriBuilder uriBuilder = ui.getBaseUriBuilder().path(NodesResource.class).path(NodesResource.class, "getNodeByIdentifier");
+        return uriBuilder.build(node.getIdentifier());
     }
 
 }
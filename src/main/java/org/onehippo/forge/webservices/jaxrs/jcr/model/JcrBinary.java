@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+@ApiModel(value = "A reference to a binary value of a JCR property, which can be downloaded from the binaries API")
+@XmlRootElement(name = "binary")
+@XmlType(propOrder = {"href", "size", "mimeType"})
+public class JcrBinary {
+
+    @ApiModelProperty(required = false)
+    private String href;
+    @ApiModelProperty(required = true)
+    private long size;
+    @ApiModelProperty(required = false)
+    private String mimeType;
+
+    public JcrBinary() {
+    }
+
+    public JcrBinary(final String href, final long size, final String mimeType) {
+        this.href = href;
+        this.size = size;
+        this.mimeType = mimeType;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public void setHref(final String href) {
+        this.href = href;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(final long size) {
+        this.size = size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(final String mimeType) {
+        this.mimeType = mimeType;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * A single operation of a bulk request. A create operation adds the node to the node at the path, an update
+ * operation updates the node at the path, a delete operation removes it and a setProperty operation sets the
+ * property on it.
+ */
+@ApiModel(value = "Representation of a bulk operation")
+@XmlRootElement(name = "operation")
+public class JcrBulkOperation {
+
+    public static final String OP_CREATE = "create";
+    public static final String OP_UPDATE = "update";
+    public static final String OP_DELETE = "delete";
+    public static final String OP_SET_PROPERTY = "setProperty";
+
+    @ApiModelProperty(required = true, notes = "One of 'create', 'update', 'delete' or 'setProperty'")
+    private String op;
+    @ApiModelProperty(required = true, notes = "Path of the node to operate on, the parent node for 'create'")
+    private String path;
+    @ApiModelProperty(required = false, notes = "Update mode, 'replace' (default) or 'reconcile'")
+    private String mode;
+    @ApiModelProperty(required = false, notes = "The node to create or to update to")
+    private JcrNode node;
+    @ApiModelProperty(required = false, notes = "The property to set")
+    private JcrProperty property;
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(final String op) {
+        this.op = op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(final String mode) {
+        this.mode = mode;
+    }
+
+    public JcrNode getNode() {
+        return node;
+    }
+
+    public void setNode(final JcrNode node) {
+        this.node = node;
+    }
+
+    public JcrProperty getProperty() {
+        return property;
+    }
+
+    public void setProperty(final JcrProperty property) {
+        this.property = property;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Result of a single operation of a bulk request, identified by its position in the request.
+ */
+@ApiModel(value = "Representation of the result of a bulk operation")
+@XmlRootElement(name = "result")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = {"index", "op", "path", "status", "error"})
+public class JcrBulkResult {
+
+    @ApiModelProperty(required = true, notes = "Position of the operation in the request, starting at 0")
+    private long index;
+    @ApiModelProperty(required = false)
+    private String op;
+    @ApiModelProperty(required = false)
+    private String path;
+    @ApiModelProperty(required = true, notes = "The HTTP status of the operation, e.g. 201, 204 or 404")
+    private int status;
+    @ApiModelProperty(required = false, notes = "The reason the operation failed")
+    private String error;
+
+    public JcrBulkResult() {
+    }
+
+    public JcrBulkResult(final long index, final String op, final String path) {
+        this.index = index;
+        this.op = op;
+        this.path = path;
+    }
+
+    public long getIndex() {
+        return index;
+    }
+
+    public void setIndex(final long index) {
+        this.index = index;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(final String op) {
+        this.op = op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(final String error) {
+        this.error = error;
+    }
+
+}
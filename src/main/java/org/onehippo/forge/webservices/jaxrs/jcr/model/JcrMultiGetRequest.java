@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Multi-get request representation, listing the nodes to retrieve in a single request.
+ */
+@ApiModel(value = "Representation of a multi-get request")
+@XmlRootElement(name = "mget")
+public class JcrMultiGetRequest {
+
+    @ApiModelProperty(required = true, notes = "The nodes to retrieve, in the order of the results")
+    private List<JcrNodeReference> nodes = new ArrayList<JcrNodeReference>();
+
+    public List<JcrNodeReference> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(final List<JcrNodeReference> nodes) {
+        this.nodes = nodes;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Multi-get result representation.
+ */
+@ApiModel(value = "Representation of a multi-get result")
+@XmlRootElement(name = "results")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class JcrMultiGetResult {
+
+    @ApiModelProperty(notes = "The results, in the order of the requested nodes")
+    private List<JcrNodeResult> results;
+
+    public List<JcrNodeResult> getResults() {
+        return results;
+    }
+
+    public void setResults(final List<JcrNodeResult> results) {
+        this.results = results;
+    }
+
+}
@@ -17,6 +17,7 @@
 package org.onehippo.forge.webservices.jaxrs.jcr.model;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlElement;
@@ -27,9 +28,11 @@ import javax.xml.bind.annotation.XmlType;
 import com.wordnik.swagger.annotations.ApiModel;
 import com.wordnik.swagger.annotations.ApiModelProperty;
 
+import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
+
 @ApiModel(value = "JcrNode", description = "Representation of a JCR node")
 @XmlRootElement(name = "node")
-@XmlType(propOrder = {"name", "identifier", "path", "primaryType", "mixinTypes", "properties", "nodes"})
+@XmlType(propOrder = {"name", "identifier", "path", "primaryType", "mixinTypes", "properties", "nodes", "links", "truncated"})
 public class JcrNode {
 
     @ApiModelProperty(required = true)
@@ -40,9 +43,16 @@ public class JcrNode {
     private String path;
     @ApiModelProperty(required = false)
     private String identifier;
-    private List<String> mixinTypes = new ArrayList<String>();
-    private List<JcrProperty> properties = new ArrayList<JcrProperty>();
-    private List<JcrNode> nodes = new ArrayList<JcrNode>();
+    @ApiModelProperty(value = "Left out when the mixin types are not known, e.g. in an update that keeps them as they are")
+    private List<String> mixinTypes;
+    @ApiModelProperty(value = "Left out when the properties are not known, e.g. in an update that keeps them as they are")
+    private List<JcrProperty> properties;
+    @ApiModelProperty(value = "Left out when the child nodes have not been read because the requested depth was reached")
+    private List<JcrNode> nodes;
+    private List<Link> links;
+    @ApiModelProperty(value = "Set when properties or child nodes have been left out because the read budget of the " +
+            "request ran out, or because only some properties were selected")
+    private Boolean truncated;
 
     public JcrNode() {
     }
@@ -95,6 +105,9 @@ public class JcrNode {
     }
 
     public boolean addNode(JcrNode name) {
+        if (nodes == null) {
+            nodes = new ArrayList<JcrNode>();
+        }
         return nodes.add(name);
     }
 
@@ -108,6 +121,31 @@ public class JcrNode {
         this.nodes = nodes;
     }
 
+    public void addLink(Link link) {
+        if (links == null) {
+            links = new LinkedList<Link>();
+        }
+        links.add(link);
+    }
+
+    @XmlElementWrapper(name = "links")
+    @XmlElement(name = "link")
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    public void setLinks(final List<Link> links) {
+        this.links = links;
+    }
+
+    public Boolean getTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(final Boolean truncated) {
+        this.truncated = truncated;
+    }
+
     public List<String> getMixinTypes() {
         return mixinTypes;
     }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Reference to a node in a multi-get request, by path or by identifier, together with the depth and the projection
+ * of its representation.
+ */
+@ApiModel(value = "Reference to a node by path or identifier")
+@XmlRootElement(name = "node")
+public class JcrNodeReference {
+
+    @ApiModelProperty(required = false, notes = "Path of the node, ignored when an identifier is given")
+    private String path;
+    @ApiModelProperty(required = false, notes = "Identifier of the node")
+    private String identifier;
+    @ApiModelProperty(required = false)
+    private int depth;
+    @ApiModelProperty(required = false, notes = "Comma separated name globs of the properties to include")
+    private String fields;
+    @ApiModelProperty(required = false, notes = "Comma separated name globs of the properties to exclude")
+    private String exclude;
+    @ApiModelProperty(required = false, notes = "Set to 'names' to only return the names of the child nodes")
+    private String childrenOnly;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(final String identifier) {
+        this.identifier = identifier;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(final int depth) {
+        this.depth = depth;
+    }
+
+    public String getFields() {
+        return fields;
+    }
+
+    public void setFields(final String fields) {
+        this.fields = fields;
+    }
+
+    public String getExclude() {
+        return exclude;
+    }
+
+    public void setExclude(final String exclude) {
+        this.exclude = exclude;
+    }
+
+    public String getChildrenOnly() {
+        return childrenOnly;
+    }
+
+    public void setChildrenOnly(final String childrenOnly) {
+        this.childrenOnly = childrenOnly;
+    }
+
+}
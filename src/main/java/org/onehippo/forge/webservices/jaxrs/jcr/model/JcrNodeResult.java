@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.model;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlType;
+
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Result of a single node of a multi-get request. A node that could not be retrieved is represented by its status
+ * and the path or identifier by which it was requested.
+ */
+@ApiModel(value = "Representation of the result of a single node")
+@XmlRootElement(name = "result")
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(propOrder = {"status", "path", "identifier", "node"})
+public class JcrNodeResult {
+
+    @ApiModelProperty(required = true, notes = "The HTTP status of the node, e.g. 200 or 404")
+    private int status;
+    @ApiModelProperty(required = false, notes = "The requested path, when the node could not be retrieved")
+    private String path;
+    @ApiModelProperty(required = false, notes = "The requested identifier, when the node could not be retrieved")
+    private String identifier;
+    @ApiModelProperty(required = false)
+    private JcrNode node;
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(final String path) {
+        this.path = path;
+    }
+
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    public void setIdentifier(final String identifier) {
+        this.identifier = identifier;
+    }
+
+    public JcrNode getNode() {
+        return node;
+    }
+
+    public void setNode(final JcrNode node) {
+        this.node = node;
+    }
+
+}
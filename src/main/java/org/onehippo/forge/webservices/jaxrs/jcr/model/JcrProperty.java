@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlElementWrapper;
 import javax.xml.bind.annotation.XmlElements;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlType;
@@ -29,7 +30,7 @@ import com.wordnik.swagger.annotations.ApiModelProperty;
 
 @ApiModel(value = "A representation of a JCR property")
 @XmlRootElement(name = "property")
-@XmlType(propOrder = {"name","type","multiple","values"})
+@XmlType(propOrder = {"name","type","multiple","values","binaries"})
 public class JcrProperty {
 
     @ApiModelProperty(required = true)
@@ -40,6 +41,8 @@ public class JcrProperty {
     private boolean multiple = false;
     @ApiModelProperty(required = true)
     private List<String> values = new ArrayList<String>(0);
+    @ApiModelProperty(required = false, value = "References to the values of a binary property, which are not included in the values")
+    private List<JcrBinary> binaries;
 
     public String getName() {
         return name;
@@ -79,4 +82,14 @@ public class JcrProperty {
         this.values.add(value);
     }
 
+    @XmlElementWrapper(name = "binaries")
+    @XmlElement(name = "binary")
+    public List<JcrBinary> getBinaries() {
+        return binaries;
+    }
+
+    public void setBinaries(List<JcrBinary> binaries) {
+        this.binaries = binaries;
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.jcr.Binary;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a range of a binary value of a JCR property to the response, without holding the value in memory. The
+ * binary is only opened when the response is written, so it is never read for HEAD requests or when the response
+ * is not modified.
+ */
+public class JcrBinaryStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrBinaryStreamingOutput.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Property property;
+    private final int index;
+    private final long offset;
+    private final long length;
+
+    /**
+     * @param property the binary property
+     * @param index    the index of the value of a multiple property, ignored for a single property
+     * @param offset   the offset of the first byte to write
+     * @param length   the number of bytes to write
+     */
+    public JcrBinaryStreamingOutput(final Property property, final int index, final long offset, final long length) {
+        this.property = property;
+        this.index = index;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        Binary binary = null;
+        InputStream input = null;
+        try {
+            binary = property.isMultiple() ? property.getValues()[index].getBinary() : property.getBinary();
+            input = binary.getStream();
+            skipFully(input, offset);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = length;
+            while (remaining > 0) {
+                final int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    throw new EOFException("Binary ended " + remaining + " bytes before the end of the range");
+                }
+                output.write(buffer, 0, read);
+                remaining -= read;
+            }
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to stream binary: {} ", e);
+            throw new IOException("Unable to stream binary", e);
+        } finally {
+            if (input != null) {
+                input.close();
+            }
+            if (binary != null) {
+                binary.dispose();
+            }
+        }
+    }
+
+    private static void skipFully(final InputStream input, final long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            final long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() < 0) {
+                    throw new EOFException("Binary ended before the start of the range");
+                }
+                remaining--;
+            } else {
+                remaining -= skipped;
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.AccessDeniedException;
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.ItemExistsException;
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.PathNotFoundException;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.ValueFormatException;
+import javax.jcr.nodetype.ConstraintViolationException;
+import javax.jcr.nodetype.NoSuchNodeTypeException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.util.MinimalPrettyPrinter;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBulkOperation;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBulkResult;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the operations of a bulk request while the response is written, see
+ * {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBulkOperation}. The operations are read one by one from a
+ * newline delimited JSON stream, and a {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBulkResult} is written
+ * for each of them, so memory use does not grow with the number of operations.
+ * <p>
+ * The session is saved after every <code>saveInterval</code> operations, after which the results of those operations
+ * are written. An operation that is invalid or of which the node does not exist does not change anything, and gets
+ * a 400 or 404 status. When an operation fails in the repository, the unsaved changes of the batch it belongs to are
+ * discarded, and the other operations of that batch get a 409 status. When a batch can not be saved, all its
+ * operations fail. A request that is not valid JSON stops at the first malformed operation. The cached
+ * representations of the nodes of a batch are evicted once it has been saved.
+ * <p>
+ * The results are spooled to a temporary file until all operations have been read, and only then copied to the
+ * response. Many clients only read the response after they have sent the whole request, and would otherwise block
+ * once the results of a large request fill the buffers of the connection.
+ */
+public class JcrBulkStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrBulkStreamingOutput.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // a response that fails halfway must not be completed into valid JSON
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+    private final Session session;
+    private final InputStream input;
+    private final int saveInterval;
+    private final NodeResponseCache responseCache;
+    private final List<JcrBulkResult> pending = new ArrayList<JcrBulkResult>();
+    private boolean changing;
+
+    /**
+     * @param session      the session of the request
+     * @param input        the newline delimited JSON operations
+     * @param saveInterval the number of operations after which the session is saved
+     */
+    public JcrBulkStreamingOutput(final Session session, final InputStream input, final int saveInterval) {
+        this(session, input, saveInterval, null);
+    }
+
+    /**
+     * @param session       the session of the request
+     * @param input         the newline delimited JSON operations
+     * @param saveInterval  the number of operations after which the session is saved
+     * @param responseCache the {@link NodeResponseCache} of which to evict the changed nodes, or <code>null</code>
+     */
+    public JcrBulkStreamingOutput(final Session session, final InputStream input, final int saveInterval,
+                                  final NodeResponseCache responseCache) {
+        if (saveInterval <= 0) {
+            throw new IllegalArgumentException("The save interval must be positive");
+        }
+        this.session = session;
+        this.input = input;
+        this.saveInterval = saveInterval;
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final File spool = File.createTempFile("bulk-results", ".ndjson");
+        try {
+            final OutputStream spoolOutput = new BufferedOutputStream(new FileOutputStream(spool));
+            try {
+                apply(spoolOutput);
+            } finally {
+                spoolOutput.close();
+            }
+            copy(spool, output);
+        } finally {
+            if (!spool.delete()) {
+                log.warn("Unable to delete spooled bulk results {}", spool);
+            }
+        }
+    }
+
+    private void apply(final OutputStream output) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        final JsonParser parser = OBJECT_MAPPER.getJsonFactory().createJsonParser(input);
+        long index = 0;
+        try {
+            try {
+                while (parser.nextToken() != null) {
+                    final JsonNode operation = OBJECT_MAPPER.readTree(parser);
+                    pending.add(apply(operation, index++));
+                    if (pending.size() >= saveInterval) {
+                        save(generator);
+                    }
+                }
+                save(generator);
+            } catch (JsonParseException e) {
+                log.debug("Malformed bulk operation: {}", e.getMessage());
+                save(generator);
+                final JcrBulkResult result = new JcrBulkResult(index, null, null);
+                fail(result, Response.Status.BAD_REQUEST.getStatusCode(), "Malformed operation: " + e.getMessage());
+                writeResult(generator, result);
+            }
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to apply bulk operations: {} ", e);
+            throw new IOException("Unable to apply bulk operations", e);
+        } finally {
+            generator.close();
+            parser.close();
+        }
+    }
+
+    private static void copy(final File spool, final OutputStream output) throws IOException {
+        final InputStream spoolInput = new FileInputStream(spool);
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = spoolInput.read(buffer)) >= 0) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            spoolInput.close();
+        }
+    }
+
+    private JcrBulkResult apply(final JsonNode tree, final long index) throws RepositoryException {
+        final JcrBulkResult result = new JcrBulkResult(index, tree.path("op").getTextValue(),
+                tree.path("path").getTextValue());
+        final JcrBulkOperation operation;
+        try {
+            operation = OBJECT_MAPPER.readValue(tree, JcrBulkOperation.class);
+        } catch (IOException e) {
+            return fail(result, Response.Status.BAD_REQUEST.getStatusCode(), "Invalid operation: " + e.getMessage());
+        }
+        changing = false;
+        try {
+            result.setStatus(execute(operation));
+        } catch (IllegalArgumentException e) {
+            if (changing) {
+                discardBatch(index);
+            }
+            fail(result, Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+        } catch (RepositoryException e) {
+            log.debug("Bulk operation {} failed: {}", index, e);
+            discardBatch(index);
+            fail(result, getStatus(e), e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Discards the unsaved changes of the current batch, which may have been left incomplete by a failed operation.
+     */
+    private void discardBatch(final long failedIndex) throws RepositoryException {
+        session.refresh(false);
+        for (JcrBulkResult discarded : pending) {
+            if (isSuccessful(discarded)) {
+                fail(discarded, Response.Status.CONFLICT.getStatusCode(),
+                        "Discarded because operation " + failedIndex + " failed");
+            }
+        }
+    }
+
+    /**
+     * Executes an operation. Everything that can be checked up front is checked before the repository is changed,
+     * which is marked by the changing flag.
+     *
+     * @return the status of the operation
+     */
+    private int execute(final JcrBulkOperation operation) throws RepositoryException {
+        final Node node = getNode(operation.getPath());
+        if (node == null) {
+            return Response.Status.NOT_FOUND.getStatusCode();
+        }
+        final String op = operation.getOp();
+        if (JcrBulkOperation.OP_CREATE.equals(op)) {
+            final JcrNode jcrNode = getNodeRepresentation(operation);
+            changing = true;
+            final Node newNode = node.addNode(jcrNode.getName(), jcrNode.getPrimaryType());
+            JcrDataBindingHelper.addMixinsFromRepresentation(newNode, jcrNode.getMixinTypes());
+            JcrDataBindingHelper.addPropertiesFromRepresentation(newNode, jcrNode.getProperties());
+            JcrDataBindingHelper.addChildNodesFromRepresentation(newNode, jcrNode.getNodes());
+            return Response.Status.CREATED.getStatusCode();
+        }
+        if (JcrBulkOperation.OP_UPDATE.equals(op)) {
+            final JcrNode jcrNode = getNodeRepresentation(operation);
+            final String mode = StringUtils.defaultIfEmpty(operation.getMode(), JcrDataBindingHelper.UPDATE_MODE_REPLACE);
+            if (!JcrDataBindingHelper.UPDATE_MODE_RECONCILE.equals(mode)
+                    && !JcrDataBindingHelper.UPDATE_MODE_REPLACE.equals(mode)) {
+                throw new IllegalArgumentException("Unsupported update mode: '" + mode + "'");
+            }
+            if (!JcrDataBindingHelper.isCompleteRepresentation(jcrNode)) {
+                throw new IllegalArgumentException("A truncated or paged representation can not be used to update a node");
+            }
+            changing = true;
+            if (JcrDataBindingHelper.UPDATE_MODE_RECONCILE.equals(mode)) {
+                JcrDataBindingHelper.renameNode(node, jcrNode.getName());
+                JcrDataBindingHelper.reconcileNodeWithRepresentation(node, jcrNode);
+            } else {
+                JcrDataBindingHelper.replaceNodeWithRepresentation(node, jcrNode);
+            }
+            return Response.Status.NO_CONTENT.getStatusCode();
+        }
+        if (JcrBulkOperation.OP_DELETE.equals(op)) {
+            if (node.getDepth() == 0) {
+                throw new IllegalArgumentException("The root node can not be deleted");
+            }
+            changing = true;
+            node.remove();
+            return Response.Status.NO_CONTENT.getStatusCode();
+        }
+        if (JcrBulkOperation.OP_SET_PROPERTY.equals(op)) {
+            final JcrProperty property = operation.getProperty();
+            if (property == null || StringUtils.isEmpty(property.getName())
+                    || JcrDataBindingHelper.isIgnoredProperty(property.getName())) {
+                throw new IllegalArgumentException("A setProperty operation needs a property that can be set");
+            }
+            if (!property.isMultiple() && (property.getValues() == null || property.getValues().size() != 1)) {
+                throw new IllegalArgumentException("A single valued property needs exactly one value");
+            }
+            changing = true;
+            JcrDataBindingHelper.addPropertyToNode(node, property);
+            return Response.Status.NO_CONTENT.getStatusCode();
+        }
+        throw new IllegalArgumentException("Unsupported operation: '" + op + "'");
+    }
+
+    private Node getNode(final String path) {
+        if (StringUtils.isEmpty(path)) {
+            throw new IllegalArgumentException("An operation needs a path");
+        }
+        final String absolutePath = path.startsWith("/") ? path : "/" + path;
+        try {
+            return session.nodeExists(absolutePath) ? session.getNode(absolutePath) : null;
+        } catch (RepositoryException e) {
+            throw new IllegalArgumentException("Invalid path: '" + path + "'", e);
+        }
+    }
+
+    private static JcrNode getNodeRepresentation(final JcrBulkOperation operation) {
+        final JcrNode jcrNode = operation.getNode();
+        if (jcrNode == null || StringUtils.isEmpty(jcrNode.getName()) || StringUtils.isEmpty(jcrNode.getPrimaryType())) {
+            throw new IllegalArgumentException("A " + operation.getOp() + " operation needs a node with a name and primary type");
+        }
+        return jcrNode;
+    }
+
+    /**
+     * Saves the changes of the pending operations and writes their results.
+     */
+    private void save(final JsonGenerator generator) throws IOException, RepositoryException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            session.save();
+            invalidateResponses();
+        } catch (RepositoryException e) {
+            log.debug("Saving bulk operations failed: {}", e);
+            session.refresh(false);
+            for (JcrBulkResult result : pending) {
+                if (isSuccessful(result)) {
+                    fail(result, getStatus(e), "Not saved: " + e.getMessage());
+                }
+            }
+        }
+        for (JcrBulkResult result : pending) {
+            writeResult(generator, result);
+        }
+        pending.clear();
+    }
+
+    private void invalidateResponses() {
+        if (responseCache == null) {
+            return;
+        }
+        for (JcrBulkResult result : pending) {
+            if (isSuccessful(result)) {
+                final String path = result.getPath();
+                responseCache.invalidate(path.startsWith("/") ? path : "/" + path);
+            }
+        }
+    }
+
+    private static void writeResult(final JsonGenerator generator, final JcrBulkResult result) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("index", result.getIndex());
+        if (result.getOp() != null) {
+            generator.writeStringField("op", result.getOp());
+        }
+        if (result.getPath() != null) {
+            generator.writeStringField("path", result.getPath());
+        }
+        generator.writeNumberField("status", result.getStatus());
+        if (result.getError() != null) {
+            generator.writeStringField("error", result.getError());
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+
+    private static JcrBulkResult fail(final JcrBulkResult result, final int status, final String error) {
+        result.setStatus(status);
+        result.setError(error);
+        return result;
+    }
+
+    private static boolean isSuccessful(final JcrBulkResult result) {
+        return result.getStatus() < Response.Status.BAD_REQUEST.getStatusCode();
+    }
+
+    private static int getStatus(final RepositoryException e) {
+        if (e instanceof PathNotFoundException || e instanceof ItemNotFoundException) {
+            return Response.Status.NOT_FOUND.getStatusCode();
+        }
+        if (e instanceof AccessDeniedException) {
+            return Response.Status.FORBIDDEN.getStatusCode();
+        }
+        if (e instanceof ItemExistsException || e instanceof InvalidItemStateException) {
+            return Response.Status.CONFLICT.getStatusCode();
+        }
+        if (e instanceof ConstraintViolationException || e instanceof ValueFormatException
+                || e instanceof NoSuchNodeTypeException) {
+            return Response.Status.BAD_REQUEST.getStatusCode();
+        }
+        return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.NoSuchElementException;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
+
+/**
+ * A page of the child nodes of a JCR node. A page starts at an offset or at a cursor returned with the previous page,
+ * and holds at most a limited number of children. The children before the page are skipped without being loaded, so
+ * large folders can be walked page by page with bounded memory.
+ * <p>
+ * A cursor remembers the position and the name of the last child of the previous page. When children have been added
+ * or removed before that position in the mean time, the next page still starts right after that child, as long as it
+ * exists.
+ */
+public final class JcrChildPage {
+
+    public static final String PARAM_OFFSET = "childOffset";
+    public static final String PARAM_LIMIT = "childLimit";
+    public static final String PARAM_CURSOR = "childCursor";
+
+    private static final String CURSOR_SEPARATOR = "/";
+    private static final String ENCODING = "UTF-8";
+
+    private final long limit;
+    private long position;
+    private String lastName;
+    private long count;
+    private String nextCursor;
+    private UriBuilder linkBuilder;
+
+    private JcrChildPage(final long position, final long limit, final String lastName) {
+        this.position = position;
+        this.limit = limit;
+        this.lastName = lastName;
+    }
+
+    /**
+     * Creates a page from request parameters.
+     *
+     * @param offset the number of children to skip, ignored when a cursor is given
+     * @param limit  the maximum number of children in the page, or <code>0</code> for all remaining children
+     * @param cursor the cursor returned with the previous page, or <code>null</code>
+     * @return the page
+     * @throws IllegalArgumentException if the offset or limit is negative or the cursor is invalid
+     */
+    public static JcrChildPage valueOf(final long offset, final long limit, final String cursor) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("The child offset and limit can not be negative");
+        }
+        if (StringUtils.isEmpty(cursor)) {
+            return new JcrChildPage(offset, limit, null);
+        }
+        final String decoded;
+        try {
+            decoded = new String(Base64.decodeBase64(cursor), ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        final int separator = decoded.indexOf(CURSOR_SEPARATOR);
+        if (separator <= 0 || separator == decoded.length() - 1) {
+            throw new IllegalArgumentException("Invalid child cursor: '" + cursor + "'");
+        }
+        try {
+            final long cursorPosition = Long.parseLong(decoded.substring(0, separator));
+            if (cursorPosition <= 0) {
+                throw new IllegalArgumentException("Invalid child cursor: '" + cursor + "'");
+            }
+            return new JcrChildPage(cursorPosition, limit, decoded.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid child cursor: '" + cursor + "'", e);
+        }
+    }
+
+    /**
+     * Gets the children of a node, positioned at the start of this page.
+     *
+     * @param node the parent {@link javax.jcr.Node}
+     * @return the child nodes starting at this page
+     * @throws RepositoryException
+     */
+    public NodeIterator getNodes(final Node node) throws RepositoryException {
+        NodeIterator childNodes = node.getNodes();
+        if (lastName != null) {
+            if (skip(childNodes, position - 1) && childNodes.hasNext()
+                    && lastName.equals(getChildName(childNodes.nextNode()))) {
+                return childNodes;
+            }
+            // the children have changed since the previous page, so look up the last child of that page
+            childNodes = node.getNodes();
+            long index = 0;
+            while (childNodes.hasNext()) {
+                index++;
+                if (lastName.equals(getChildName(childNodes.nextNode()))) {
+                    position = index;
+                    return childNodes;
+                }
+            }
+            // the last child of the previous page has been removed, so continue at the same position
+            childNodes = node.getNodes();
+        }
+        if (!skip(childNodes, position)) {
+            return NodeIteratorAdapter.EMPTY;
+        }
+        return childNodes;
+    }
+
+    /**
+     * Estimates the number of children in this page, without reading them.
+     *
+     * @param childCount the total number of children of the node, or <code>-1</code> if unknown
+     * @return the estimated number of children in this page, or <code>-1</code> if unknown
+     */
+    public long estimateSize(final long childCount) {
+        if (childCount < 0) {
+            return limit > 0 ? limit : -1;
+        }
+        final long remaining = Math.max(0, childCount - position);
+        return limit > 0 ? Math.min(limit, remaining) : remaining;
+    }
+
+    /**
+     * @return <code>true</code> if another child fits in this page
+     */
+    public boolean hasRoom() {
+        return limit == 0 || count < limit;
+    }
+
+    /**
+     * Records that a child has been added to this page.
+     *
+     * @param child the child {@link javax.jcr.Node}
+     * @throws RepositoryException
+     */
+    public void added(final Node child) throws RepositoryException {
+        count++;
+        lastName = getChildName(child);
+    }
+
+    /**
+     * Completes this page.
+     *
+     * @param hasMore whether there are children after this page
+     */
+    public void completed(final boolean hasMore) {
+        if (hasMore && count > 0) {
+            nextCursor = createCursor(position + count, lastName);
+        }
+    }
+
+    /**
+     * @return the cursor of the next page, or <code>null</code> if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Sets the builder of the URI of the current request, from which the link to the next page is created.
+     *
+     * @param linkBuilder a {@link javax.ws.rs.core.UriBuilder}
+     */
+    public void setLinkBuilder(final UriBuilder linkBuilder) {
+        this.linkBuilder = linkBuilder;
+    }
+
+    /**
+     * @return the link to the next page, or <code>null</code> if this is the last page
+     */
+    public Link getNextLink() {
+        if (nextCursor == null || linkBuilder == null) {
+            return null;
+        }
+        final UriBuilder ub = linkBuilder.clone();
+        ub.replaceQueryParam(PARAM_OFFSET);
+        ub.replaceQueryParam(PARAM_CURSOR, nextCursor);
+        return new Link("next", ub.build().toString());
+    }
+
+    private static String createCursor(final long position, final String name) {
+        try {
+            return Base64.encodeBase64URLSafeString((position + CURSOR_SEPARATOR + name).getBytes(ENCODING));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String getChildName(final Node child) throws RepositoryException {
+        final int index = child.getIndex();
+        return index > 1 ? child.getName() + "[" + index + "]" : child.getName();
+    }
+
+    private static boolean skip(final NodeIterator childNodes, final long skipNum) {
+        if (skipNum <= 0) {
+            return true;
+        }
+        try {
+            childNodes.skip(skipNum);
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+}
@@ -18,11 +18,15 @@ package org.onehippo.forge.webservices.jaxrs.jcr.util;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -32,10 +36,17 @@ import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
+import javax.ws.rs.core.UriBuilder;
 
+import org.apache.commons.lang.StringUtils;
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.value.ValueFactoryImpl;
 import org.apache.jackrabbit.value.ValueHelper;
+import org.codehaus.jackson.JsonGenerator;
+import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBinary;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
 import org.slf4j.Logger;
@@ -49,8 +60,31 @@ public final class JcrDataBindingHelper {
 
     private static final Logger log = LoggerFactory.getLogger(JcrDataBindingHelper.class);
 
+    /**
+     * Update mode that removes a node and re-creates it from its representation.
+     */
+    public static final String UPDATE_MODE_REPLACE = "replace";
+
+    /**
+     * Update mode that reconciles a node with its representation, see {@link #reconcileNodeWithRepresentation}.
+     */
+    public static final String UPDATE_MODE_RECONCILE = "reconcile";
+
     private static final Map<Integer, String> PROPERTY_BLACKLIST = ignoreMap();
 
+    // rough length of a number or boolean in the response, for the read budget
+    private static final int TYPED_NUMBER_LENGTH = 8;
+
+    /**
+     * Path of the binaries API, relative to the base URI of the API.
+     */
+    public static final String BINARIES_PATH = "binaries";
+
+    /**
+     * Query parameter selecting a value of a multiple binary property in the binaries API.
+     */
+    public static final String BINARY_INDEX_PARAM = "index";
+
     private static Map<Integer, String> ignoreMap() {
         Map<Integer, String> result = new HashMap<Integer, String>();
         result.put(1, "hippo:paths");
@@ -73,34 +107,105 @@ public final class JcrDataBindingHelper {
      * @return a representation of a JCR node
      */
     public static JcrNode getNodeRepresentation(final Node node, final int depth) {
+        return getNodeRepresentation(node, depth, JcrNodeProjection.ALL);
+    }
+
+    /**
+     * Get the representation of a JCR node, containing only the properties and child nodes selected by a projection.
+     *
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children to fetch underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @return a representation of a JCR node
+     */
+    public static JcrNode getNodeRepresentation(final Node node, final int depth, final JcrNodeProjection projection) {
+        return getNodeRepresentation(node, depth, projection, null, null);
+    }
+
+    /**
+     * Get the representation of a JCR node, containing only the properties and child nodes selected by a projection
+     * and a single page of its children. When there are more children, a link to the next page is added. When the
+     * read budget runs out, the traversal stops and the nodes of which properties or children have been left out are
+     * marked as truncated.
+     *
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children to fetch underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @param page       the {@link JcrChildPage} of children of this node to fetch, or <code>null</code> for all
+     * @param budget     the {@link JcrReadBudget} of the request, or <code>null</code> for no limits
+     * @return a representation of a JCR node
+     */
+    public static JcrNode getNodeRepresentation(final Node node, final int depth, final JcrNodeProjection projection,
+                                                final JcrChildPage page, final JcrReadBudget budget) {
         JcrNode jcrNode = new JcrNode();
         try {
             jcrNode.setName(node.getName());
             jcrNode.setIdentifier(node.getIdentifier());
             jcrNode.setPath(node.getPath());
             jcrNode.setPrimaryType(node.getPrimaryNodeType().getName());
+            if (budget != null) {
+                budget.nodeRead(jcrNode.getName(), jcrNode.getPath());
+            }
 
             final NodeType[] mixinNodeTypes = node.getMixinNodeTypes();
+            final List<String> mixins = new ArrayList<String>();
             if (mixinNodeTypes != null) {
-                List<String> mixins = new ArrayList<String>(mixinNodeTypes.length);
                 for (NodeType mixinNodeType : mixinNodeTypes) {
                     mixins.add(mixinNodeType.getName());
                 }
-                jcrNode.setMixinTypes(mixins);
             }
+            jcrNode.setMixinTypes(mixins);
 
-            PropertyIterator properties = node.getProperties();
+            jcrNode.setProperties(new ArrayList<JcrProperty>());
+            if (projection.isPropertySelection()) {
+                jcrNode.setTruncated(true);
+            }
+            PropertyIterator properties = projection.getProperties(node);
             while (properties.hasNext()) {
+                if (isExhausted(budget)) {
+                    jcrNode.setTruncated(true);
+                    break;
+                }
                 Property property = properties.nextProperty();
-                if(!PROPERTY_BLACKLIST.containsValue(property.getName())) {
-                    jcrNode.getProperties().add(getPropertyRepresentation(property));
+                if(!PROPERTY_BLACKLIST.containsValue(property.getName()) && projection.isIncluded(property.getName())) {
+                    final JcrProperty jcrProperty = getPropertyRepresentation(property, projection.getBinaryBaseUri());
+                    if (budget != null) {
+                        budget.propertyRead(jcrProperty.getName(), jcrProperty.getValues());
+                    }
+                    jcrNode.getProperties().add(jcrProperty);
                 }
             }
 
-            if (depth > 0 && node.hasNodes()) {
-                final NodeIterator childNodes = node.getNodes();
-                while (childNodes.hasNext()) {
-                    jcrNode.addNode(getNodeRepresentation(childNodes.nextNode(), depth - 1));
+            // child nodes beyond the requested depth are left out rather than represented as none
+            if (projection.isChildNamesOnly() || depth > 0) {
+                jcrNode.setNodes(new ArrayList<JcrNode>());
+            }
+            if (projection.isChildNamesOnly() || (depth > 0 && node.hasNodes())) {
+                final NodeIterator childNodes = getChildNodes(node, page);
+                while (childNodes.hasNext() && (page == null || page.hasRoom())) {
+                    if (isExhausted(budget)) {
+                        jcrNode.setTruncated(true);
+                        break;
+                    }
+                    final Node childNode = childNodes.nextNode();
+                    if (projection.isChildNamesOnly()) {
+                        final JcrNode childName = getNodeNameRepresentation(childNode);
+                        if (budget != null) {
+                            budget.nodeRead(childName.getName(), null);
+                        }
+                        jcrNode.addNode(childName);
+                    } else {
+                        jcrNode.addNode(getNodeRepresentation(childNode, depth - 1, projection, null, budget));
+                    }
+                    if (page != null) {
+                        page.added(childNode);
+                    }
+                }
+                if (page != null) {
+                    page.completed(childNodes.hasNext());
+                    if (page.getNextLink() != null) {
+                        jcrNode.addLink(page.getNextLink());
+                    }
                 }
             }
         } catch (RepositoryException e) {
@@ -109,6 +214,296 @@ public final class JcrDataBindingHelper {
         return jcrNode;
     }
 
+    private static boolean isExhausted(final JcrReadBudget budget) {
+        return budget != null && budget.isExhausted();
+    }
+
+    private static NodeIterator getChildNodes(final Node node, final JcrChildPage page) throws RepositoryException {
+        return page == null ? node.getNodes() : page.getNodes(node);
+    }
+
+    private static JcrNode getNodeNameRepresentation(final Node node) throws RepositoryException {
+        JcrNode jcrNode = new JcrNode();
+        jcrNode.setName(node.getName());
+        return jcrNode;
+    }
+
+    /**
+     * Writes the representation of a JCR node to a JSON generator, in the same format as the representation returned
+     * by {@link #getNodeRepresentation(javax.jcr.Node, int)}. Nodes and properties are written while the node tree
+     * is being traversed, so the memory used does not depend on the size of the tree.
+     *
+     * @param generator the {@link org.codehaus.jackson.JsonGenerator} to write to
+     * @param node      the {@link javax.jcr.Node}
+     * @param depth     the amount of children to write underneath this node
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    public static void writeNodeRepresentation(final JsonGenerator generator, final Node node, final int depth)
+            throws IOException, RepositoryException {
+        writeNodeRepresentation(generator, node, depth, JcrNodeProjection.ALL);
+    }
+
+    /**
+     * Writes the representation of a JCR node to a JSON generator, containing only the properties and child nodes
+     * selected by a projection. See {@link #getNodeRepresentation(javax.jcr.Node, int, JcrNodeProjection)}.
+     *
+     * @param generator  the {@link org.codehaus.jackson.JsonGenerator} to write to
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children to write underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    public static void writeNodeRepresentation(final JsonGenerator generator, final Node node, final int depth,
+                                               final JcrNodeProjection projection)
+            throws IOException, RepositoryException {
+        writeNodeRepresentation(generator, node, depth, projection, null, null);
+    }
+
+    /**
+     * Writes the representation of a JCR node to a JSON generator, containing only the properties and child nodes
+     * selected by a projection and a single page of its children, within the read budget of the request. See
+     * {@link #getNodeRepresentation(javax.jcr.Node, int, JcrNodeProjection, JcrChildPage, JcrReadBudget)}.
+     *
+     * @param generator  the {@link org.codehaus.jackson.JsonGenerator} to write to
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children to write underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @param page       the {@link JcrChildPage} of children of this node to write, or <code>null</code> for all
+     * @param budget     the {@link JcrReadBudget} of the request, or <code>null</code> for no limits
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    public static void writeNodeRepresentation(final JsonGenerator generator, final Node node, final int depth,
+                                               final JcrNodeProjection projection, final JcrChildPage page,
+                                               final JcrReadBudget budget)
+            throws IOException, RepositoryException {
+        final String name = node.getName();
+        final String path = node.getPath();
+        if (budget != null) {
+            budget.nodeRead(name, path);
+        }
+        boolean truncated = false;
+        generator.writeStartObject();
+        generator.writeStringField("name", name);
+        generator.writeStringField("primaryType", node.getPrimaryNodeType().getName());
+        generator.writeStringField("path", path);
+        generator.writeStringField("identifier", node.getIdentifier());
+
+        generator.writeArrayFieldStart("mixinTypes");
+        final NodeType[] mixinNodeTypes = node.getMixinNodeTypes();
+        if (mixinNodeTypes != null) {
+            for (NodeType mixinNodeType : mixinNodeTypes) {
+                generator.writeString(mixinNodeType.getName());
+            }
+        }
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("properties");
+        if (projection.isPropertySelection()) {
+            truncated = true;
+        }
+        PropertyIterator properties = projection.getProperties(node);
+        while (properties.hasNext()) {
+            if (isExhausted(budget)) {
+                truncated = true;
+                break;
+            }
+            Property property = properties.nextProperty();
+            if (!PROPERTY_BLACKLIST.containsValue(property.getName()) && projection.isIncluded(property.getName())) {
+                if (projection.isTypedValues()) {
+                    writeTypedPropertyRepresentation(generator, property, projection.getBinaryBaseUri(), budget);
+                    continue;
+                }
+                final JcrProperty jcrProperty = getPropertyRepresentation(property, projection.getBinaryBaseUri());
+                if (budget != null) {
+                    budget.propertyRead(jcrProperty.getName(), jcrProperty.getValues());
+                }
+                writePropertyRepresentation(generator, jcrProperty);
+            }
+        }
+        generator.writeEndArray();
+
+        Link nextLink = null;
+        final boolean childNodesRead = projection.isChildNamesOnly() || depth > 0;
+        if (childNodesRead) {
+            generator.writeArrayFieldStart("nodes");
+        }
+        if (projection.isChildNamesOnly() || (depth > 0 && node.hasNodes())) {
+            final NodeIterator childNodes = getChildNodes(node, page);
+            while (childNodes.hasNext() && (page == null || page.hasRoom())) {
+                if (isExhausted(budget)) {
+                    truncated = true;
+                    break;
+                }
+                final Node childNode = childNodes.nextNode();
+                if (projection.isChildNamesOnly()) {
+                    final String childName = childNode.getName();
+                    if (budget != null) {
+                        budget.nodeRead(childName, null);
+                    }
+                    generator.writeStartObject();
+                    generator.writeStringField("name", childName);
+                    generator.writeEndObject();
+                } else {
+                    writeNodeRepresentation(generator, childNode, depth - 1, projection, null, budget);
+                }
+                if (page != null) {
+                    page.added(childNode);
+                }
+            }
+            if (page != null) {
+                page.completed(childNodes.hasNext());
+                nextLink = page.getNextLink();
+            }
+        }
+        if (childNodesRead) {
+            generator.writeEndArray();
+        }
+
+        if (nextLink != null) {
+            generator.writeArrayFieldStart("links");
+            generator.writeStartObject();
+            generator.writeStringField("rel", nextLink.getRel());
+            generator.writeStringField("href", nextLink.getHref());
+            generator.writeEndObject();
+            generator.writeEndArray();
+        }
+        if (truncated) {
+            generator.writeBooleanField("truncated", true);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the representation of a JCR property to a JSON generator, in the same format as the representation
+     * returned by {@link #getPropertyRepresentation(javax.jcr.Property)}.
+     *
+     * @param generator the {@link org.codehaus.jackson.JsonGenerator} to write to
+     * @param property  the property
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    public static void writePropertyRepresentation(final JsonGenerator generator, final Property property)
+            throws IOException, RepositoryException {
+        writePropertyRepresentation(generator, getPropertyRepresentation(property));
+    }
+
+    private static void writePropertyRepresentation(final JsonGenerator generator, final JcrProperty jcrProperty)
+            throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", jcrProperty.getName());
+        generator.writeStringField("type", jcrProperty.getType());
+        generator.writeBooleanField("multiple", jcrProperty.isMultiple());
+        generator.writeArrayFieldStart("values");
+        for (String value : jcrProperty.getValues()) {
+            generator.writeString(value);
+        }
+        generator.writeEndArray();
+        if (jcrProperty.getBinaries() != null) {
+            writeBinaryRepresentations(generator, jcrProperty.getBinaries());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the typed representation of a JCR property to a JSON generator. Long, double and decimal values are
+     * written as JSON numbers and boolean values as JSON booleans, directly from the {@link javax.jcr.Value} without
+     * converting them to strings. Dates are written as ISO 8601 strings, and all other values as strings like in the
+     * representation returned by {@link #getPropertyRepresentation(javax.jcr.Property, java.net.URI)}.
+     *
+     * @param generator     the {@link org.codehaus.jackson.JsonGenerator} to write to
+     * @param property      the property
+     * @param binaryBaseUri the base URI of the API to link binary values to, or <code>null</code> for no links
+     * @throws IOException
+     * @throws RepositoryException
+     */
+    public static void writeTypedPropertyRepresentation(final JsonGenerator generator, final Property property,
+                                                        final URI binaryBaseUri)
+            throws IOException, RepositoryException {
+        writeTypedPropertyRepresentation(generator, property, binaryBaseUri, null);
+    }
+
+    private static void writeTypedPropertyRepresentation(final JsonGenerator generator, final Property property,
+                                                         final URI binaryBaseUri, final JcrReadBudget budget)
+            throws IOException, RepositoryException {
+        final String name = property.getName();
+        final int type = property.getType();
+        final boolean multiple = property.isMultiple();
+        generator.writeStartObject();
+        generator.writeStringField("name", name);
+        generator.writeStringField("type", PropertyType.nameFromValue(type));
+        generator.writeBooleanField("multiple", multiple);
+        generator.writeArrayFieldStart("values");
+        int valueCount = 0;
+        long valueLength = 0;
+        if (type != PropertyType.BINARY) {
+            if (multiple) {
+                for (Value value : property.getValues()) {
+                    valueLength += writeTypedValue(generator, value, type);
+                    valueCount++;
+                }
+            } else {
+                valueLength += writeTypedValue(generator, property.getValue(), type);
+                valueCount++;
+            }
+        }
+        generator.writeEndArray();
+        if (type == PropertyType.BINARY) {
+            writeBinaryRepresentations(generator, getBinaryRepresentations(property, binaryBaseUri));
+        }
+        generator.writeEndObject();
+        if (budget != null) {
+            budget.propertyRead(name, valueCount, valueLength);
+        }
+    }
+
+    /**
+     * Writes a value as a JSON number, boolean or string, depending on its type.
+     *
+     * @return the estimated length of the value as it appears in the response
+     */
+    private static int writeTypedValue(final JsonGenerator generator, final Value value, final int type)
+            throws IOException, RepositoryException {
+        switch (type) {
+            case PropertyType.LONG:
+                generator.writeNumber(value.getLong());
+                return TYPED_NUMBER_LENGTH;
+            case PropertyType.DOUBLE:
+                generator.writeNumber(value.getDouble());
+                return TYPED_NUMBER_LENGTH;
+            case PropertyType.DECIMAL:
+                generator.writeNumber(value.getDecimal());
+                return TYPED_NUMBER_LENGTH;
+            case PropertyType.BOOLEAN:
+                generator.writeBoolean(value.getBoolean());
+                return TYPED_NUMBER_LENGTH;
+            default:
+                // the string of a date value is its ISO 8601 representation
+                final String string = value.getString();
+                generator.writeString(string);
+                return string.length();
+        }
+    }
+
+    private static void writeBinaryRepresentations(final JsonGenerator generator, final List<JcrBinary> binaries)
+            throws IOException {
+        generator.writeArrayFieldStart("binaries");
+        for (JcrBinary binary : binaries) {
+            generator.writeStartObject();
+            if (binary.getHref() != null) {
+                generator.writeStringField("href", binary.getHref());
+            }
+            generator.writeNumberField("size", binary.getSize());
+            if (binary.getMimeType() != null) {
+                generator.writeStringField("mimeType", binary.getMimeType());
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
     /**
      * Get a presentation of a JCR property.
      * @param property the property
@@ -116,11 +511,29 @@ public final class JcrDataBindingHelper {
      * @throws RepositoryException
      */
     public static JcrProperty getPropertyRepresentation(Property property) throws RepositoryException {
+        return getPropertyRepresentation(property, null);
+    }
+
+    /**
+     * Get a presentation of a JCR property. The values of a binary property are not included, since they can be
+     * arbitrarily large. Instead, the size and mime type of each value and a link to download it from the binaries
+     * API are included.
+     * @param property the property
+     * @param binaryBaseUri the base URI of the API to link binary values to, or <code>null</code> for no links
+     * @return a {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty}
+     * @throws RepositoryException
+     */
+    public static JcrProperty getPropertyRepresentation(Property property, URI binaryBaseUri) throws RepositoryException {
         JcrProperty data = new JcrProperty();
         data.setName(property.getName());
         data.setType(PropertyType.nameFromValue(property.getType()));
         data.setMultiple(property.isMultiple());
 
+        if (property.getType() == PropertyType.BINARY) {
+            data.setBinaries(getBinaryRepresentations(property, binaryBaseUri));
+            return data;
+        }
+
         List<String> values = new ArrayList<String>();
         if (property.isMultiple()) {
             for (Value propertyValue : property.getValues()) {
@@ -133,20 +546,57 @@ public final class JcrDataBindingHelper {
         return data;
     }
 
+    private static List<JcrBinary> getBinaryRepresentations(final Property property, final URI binaryBaseUri)
+            throws RepositoryException {
+        final long[] lengths = property.isMultiple() ? property.getLengths() : new long[]{property.getLength()};
+        final String mimeType = getMimeType(property);
+        List<JcrBinary> binaries = new ArrayList<JcrBinary>(lengths.length);
+        for (int i = 0; i < lengths.length; i++) {
+            String href = null;
+            if (binaryBaseUri != null) {
+                UriBuilder ub = UriBuilder.fromUri(binaryBaseUri).path(BINARIES_PATH).path(property.getPath());
+                if (property.isMultiple()) {
+                    ub.queryParam(BINARY_INDEX_PARAM, i);
+                }
+                href = ub.build().toString();
+            }
+            binaries.add(new JcrBinary(href, lengths[i], mimeType));
+        }
+        return binaries;
+    }
+
+    /**
+     * Gets the mime type of a binary property, which is stored in the <code>jcr:mimeType</code> property of its node.
+     * @param property the binary property
+     * @return the mime type, or <code>null</code> if it is unknown
+     * @throws RepositoryException
+     */
+    public static String getMimeType(final Property property) throws RepositoryException {
+        final Node node = property.getParent();
+        if (node != null && node.hasProperty(JcrConstants.JCR_MIMETYPE)) {
+            return node.getProperty(JcrConstants.JCR_MIMETYPE).getString();
+        }
+        return null;
+    }
+
     public static String getPropertyValueAsString(final Value value) throws RepositoryException {
+        if (value.getType() != PropertyType.BINARY) {
+            return ValueHelper.serialize(value, false);
+        }
         StringWriter stringWriter = new StringWriter();
-        if(value.getType() == PropertyType.BINARY) {
-            try {
-                ValueHelper.serialize(value, false, true, stringWriter);
-            } catch (IOException e) {
-                log.error("An exception occurred while trying to serialize the value: {}", e);
-            }
-        } else {
-            stringWriter.write(ValueHelper.serialize(value,false));
+        try {
+            ValueHelper.serialize(value, false, true, stringWriter);
+        } catch (IOException e) {
+            log.error("An exception occurred while trying to serialize the value: {}", e);
         }
         return stringWriter.toString();
     }
 
+    private static boolean isBinaryReference(final JcrProperty property) {
+        return PropertyType.TYPENAME_BINARY.equals(property.getType())
+                && (property.getValues() == null || property.getValues().isEmpty());
+    }
+
     /**
      * Parses the list of mixins and applies them to the {@link Node}
      *
@@ -155,6 +605,9 @@ public final class JcrDataBindingHelper {
      * @throws RepositoryException
      */
     public static void addMixinsFromRepresentation(final Node node, final List<String> mixins) throws RepositoryException {
+        if (mixins == null) {
+            return;
+        }
         for (String mixin : mixins) {
             if (node.canAddMixin(mixin)) {
                 node.addMixin(mixin);
@@ -169,6 +622,9 @@ public final class JcrDataBindingHelper {
      * @throws RepositoryException
      */
     public static void addPropertiesFromRepresentation(final Node node, final List<JcrProperty> jcrProperties) throws RepositoryException {
+        if (jcrProperties == null) {
+            return;
+        }
         for (JcrProperty property : jcrProperties) {
             if (PROPERTY_BLACKLIST.containsValue(property.getName())) {
                 continue;
@@ -184,6 +640,9 @@ public final class JcrDataBindingHelper {
      * @throws RepositoryException
      */
     public static void addChildNodesFromRepresentation(final Node node, List<JcrNode> nodes) throws RepositoryException {
+        if (nodes == null) {
+            return;
+        }
         for (JcrNode jcrNode : nodes) {
             Node childNode;
             if(node.hasNode(jcrNode.getName()) && node.getNode(jcrNode.getName()).getDefinition().isAutoCreated()) {
@@ -193,10 +652,350 @@ public final class JcrDataBindingHelper {
             }
             addMixinsFromRepresentation(childNode, jcrNode.getMixinTypes());
             addPropertiesFromRepresentation(childNode, jcrNode.getProperties());
-            if (!jcrNode.getNodes().isEmpty()) {
+            addChildNodesFromRepresentation(childNode, jcrNode.getNodes());
+        }
+    }
+
+    /**
+     * Replaces a node with its representation. The node is removed and re-created with the name, types, properties
+     * and child nodes of the representation, so the node and its descendants get new identifiers. Binary properties
+     * that are only represented by a link keep the values of the binary property at the same relative path.
+     *
+     * @param node     the {@link javax.jcr.Node} to replace
+     * @param jcrNode  the representation of the node
+     * @return the new node
+     * @throws RepositoryException
+     */
+    public static Node replaceNodeWithRepresentation(final Node node, final JcrNode jcrNode) throws RepositoryException {
+        final Map<String, Value[]> binaries = new HashMap<String, Value[]>();
+        collectReferencedBinaries(node, jcrNode, "", binaries);
+        final Node parentNode = node.getParent();
+        node.remove();
+
+        final Node newNode = parentNode.addNode(jcrNode.getName(), jcrNode.getPrimaryType());
+        addMixinsFromRepresentation(newNode, jcrNode.getMixinTypes());
+        addPropertiesFromRepresentation(newNode, jcrNode.getProperties());
+        addChildNodesFromRepresentation(newNode, jcrNode.getNodes());
+        if (!binaries.isEmpty()) {
+            restoreReferencedBinaries(newNode, jcrNode, "", binaries);
+        }
+        return newNode;
+    }
+
+    /**
+     * Collects the values of the binary properties that a representation only links to, by their path relative to
+     * the represented node. Child nodes are matched by name and same-name sibling index.
+     */
+    private static void collectReferencedBinaries(final Node node, final JcrNode jcrNode, final String relativePath,
+                                                  final Map<String, Value[]> binaries) throws RepositoryException {
+        if (jcrNode.getProperties() != null) {
+            for (JcrProperty jcrProperty : jcrNode.getProperties()) {
+                if (isBinaryReference(jcrProperty) && node.hasProperty(jcrProperty.getName())) {
+                    final Property property = node.getProperty(jcrProperty.getName());
+                    if (property.getType() == PropertyType.BINARY) {
+                        binaries.put(relativePath + jcrProperty.getName(),
+                                property.isMultiple() ? property.getValues() : new Value[]{property.getValue()});
+                    }
+                }
+            }
+        }
+        final List<String> childPaths = getChildPaths(jcrNode);
+        for (int i = 0; i < childPaths.size(); i++) {
+            final String childPath = childPaths.get(i);
+            if (node.hasNode(childPath)) {
+                collectReferencedBinaries(node.getNode(childPath), jcrNode.getNodes().get(i),
+                        relativePath + childPath + "/", binaries);
+            }
+        }
+    }
+
+    private static void restoreReferencedBinaries(final Node node, final JcrNode jcrNode, final String relativePath,
+                                                  final Map<String, Value[]> binaries) throws RepositoryException {
+        if (jcrNode.getProperties() != null) {
+            for (JcrProperty jcrProperty : jcrNode.getProperties()) {
+                final Value[] values = binaries.get(relativePath + jcrProperty.getName());
+                if (values == null || !isBinaryReference(jcrProperty)) {
+                    continue;
+                }
+                if (jcrProperty.isMultiple()) {
+                    node.setProperty(jcrProperty.getName(), values);
+                } else if (values.length > 0) {
+                    node.setProperty(jcrProperty.getName(), values[0]);
+                }
+            }
+        }
+        final List<String> childPaths = getChildPaths(jcrNode);
+        for (int i = 0; i < childPaths.size(); i++) {
+            final String childPath = childPaths.get(i);
+            if (node.hasNode(childPath)) {
+                restoreReferencedBinaries(node.getNode(childPath), jcrNode.getNodes().get(i),
+                        relativePath + childPath + "/", binaries);
+            }
+        }
+    }
+
+    /**
+     * @return the relative paths of the child nodes of a representation, with their same-name sibling index
+     */
+    private static List<String> getChildPaths(final JcrNode jcrNode) {
+        final List<String> paths = new ArrayList<String>();
+        if (jcrNode.getNodes() == null) {
+            return paths;
+        }
+        final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (JcrNode child : jcrNode.getNodes()) {
+            final Integer previous = occurrences.get(child.getName());
+            final int index = previous == null ? 1 : previous + 1;
+            occurrences.put(child.getName(), index);
+            paths.add(child.getName() + "[" + index + "]");
+        }
+        return paths;
+    }
+
+    /**
+     * Renames a node within its parent, if its name differs.
+     *
+     * @param node the {@link javax.jcr.Node} to rename
+     * @param name the new name of the node
+     * @throws RepositoryException
+     */
+    public static void renameNode(final Node node, final String name) throws RepositoryException {
+        if (node.getName().equals(name)) {
+            return;
+        }
+        final String parentPath = node.getParent().getPath();
+        node.getSession().move(node.getPath(), ("/".equals(parentPath) ? "" : parentPath) + "/" + name);
+    }
+
+    /**
+     * Reconciles a node with its representation, changing only what differs, so the node and its descendants keep
+     * their identifiers and unchanged items are not rewritten:
+     * <ul>
+     * <li>the primary type is set and mixins are added or removed when they differ, except for
+     * <code>mix:referenceable</code>, which is never removed</li>
+     * <li>properties are only set when their type or values differ, and properties that are not in the
+     * representation are removed, except for protected properties</li>
+     * <li>child nodes are matched by name and same-name sibling index. Matched children are reconciled, missing
+     * children are added and children that are not in the representation are removed, except for protected and
+     * auto-created children. A child without a primary type in the representation, e.g. from a representation with
+     * only the names of the children, is kept as it is</li>
+     * <li>children are reordered to the order of the representation, if the node has orderable child nodes</li>
+     * </ul>
+     * Mixins, properties or child nodes that are left out of a representation, rather than being empty, are kept as
+     * they are. The name of the node itself is not changed.
+     *
+     * @param node     the {@link javax.jcr.Node} to update
+     * @param jcrNode  the representation of the node
+     * @return the number of items that have been changed
+     * @throws RepositoryException
+     */
+    public static int reconcileNodeWithRepresentation(final Node node, final JcrNode jcrNode) throws RepositoryException {
+        int changes = 0;
+        if (StringUtils.isNotEmpty(jcrNode.getPrimaryType())
+                && !node.getPrimaryNodeType().getName().equals(jcrNode.getPrimaryType())) {
+            node.setPrimaryType(jcrNode.getPrimaryType());
+            changes++;
+        }
+        if (jcrNode.getMixinTypes() != null) {
+            changes += reconcileMixins(node, jcrNode.getMixinTypes());
+        }
+        if (jcrNode.getProperties() != null) {
+            changes += reconcileProperties(node, jcrNode.getProperties());
+        }
+        if (jcrNode.getNodes() != null) {
+            changes += reconcileChildNodes(node, jcrNode.getNodes());
+        }
+        return changes;
+    }
+
+    /**
+     * Checks whether a representation holds everything that was read from the node and its descendants. A
+     * representation that has been truncated or that is a page of the children of a node leaves out items, which
+     * would be removed if it were used to update the node.
+     *
+     * @param jcrNode the representation of a node
+     * @return <code>false</code> if the representation or one of its child nodes is truncated or has a next link
+     */
+    public static boolean isCompleteRepresentation(final JcrNode jcrNode) {
+        if (Boolean.TRUE.equals(jcrNode.getTruncated())) {
+            return false;
+        }
+        if (jcrNode.getLinks() != null) {
+            for (Link link : jcrNode.getLinks()) {
+                if ("next".equals(link.getRel())) {
+                    return false;
+                }
+            }
+        }
+        if (jcrNode.getNodes() != null) {
+            for (JcrNode child : jcrNode.getNodes()) {
+                if (!isCompleteRepresentation(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int reconcileMixins(final Node node, final List<String> mixins) throws RepositoryException {
+        int changes = 0;
+        for (NodeType mixin : node.getMixinNodeTypes()) {
+            // removing mix:referenceable would break references to the node, so it is never removed implicitly
+            if (!mixins.contains(mixin.getName()) && !JcrConstants.MIX_REFERENCEABLE.equals(mixin.getName())) {
+                node.removeMixin(mixin.getName());
+                changes++;
+            }
+        }
+        for (String mixin : mixins) {
+            if (!node.isNodeType(mixin) && node.canAddMixin(mixin)) {
+                node.addMixin(mixin);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static int reconcileProperties(final Node node, final List<JcrProperty> jcrProperties)
+            throws RepositoryException {
+        int changes = 0;
+        final Set<String> names = new HashSet<String>();
+        for (JcrProperty jcrProperty : jcrProperties) {
+            names.add(jcrProperty.getName());
+            if (isIgnoredProperty(jcrProperty.getName()) || isBinaryReference(jcrProperty)) {
+                continue;
+            }
+            if (node.hasProperty(jcrProperty.getName())
+                    && isSameProperty(node.getProperty(jcrProperty.getName()), jcrProperty)) {
+                continue;
+            }
+            addPropertyToNode(node, jcrProperty);
+            changes++;
+        }
+        final List<Property> removed = new ArrayList<Property>();
+        final PropertyIterator properties = node.getProperties();
+        while (properties.hasNext()) {
+            final Property property = properties.nextProperty();
+            if (!names.contains(property.getName()) && !isIgnoredProperty(property.getName())
+                    && !property.getDefinition().isProtected()) {
+                removed.add(property);
+            }
+        }
+        for (Property property : removed) {
+            property.remove();
+            changes++;
+        }
+        return changes;
+    }
+
+    /**
+     * @return <code>true</code> if the property has the same type, multiplicity and values as its representation.
+     * Binary properties are never considered the same.
+     */
+    static boolean isSameProperty(final Property property, final JcrProperty jcrProperty)
+            throws RepositoryException {
+        if (property.isMultiple() != jcrProperty.isMultiple()
+                || property.getType() == PropertyType.BINARY
+                || !PropertyType.nameFromValue(property.getType()).equals(jcrProperty.getType())) {
+            return false;
+        }
+        final List<String> values = jcrProperty.getValues() != null ? jcrProperty.getValues() : Collections.<String>emptyList();
+        final Value[] existingValues = property.isMultiple() ? property.getValues() : new Value[]{property.getValue()};
+        if (existingValues.length != values.size()) {
+            return false;
+        }
+        for (int i = 0; i < existingValues.length; i++) {
+            if (!getPropertyValueAsString(existingValues[i]).equals(values.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the property is maintained by the repository and can not be set from a
+     * representation, e.g. <code>jcr:primaryType</code>
+     */
+    static boolean isIgnoredProperty(final String name) {
+        return PROPERTY_BLACKLIST.containsValue(name);
+    }
+
+    private static int reconcileChildNodes(final Node node, final List<JcrNode> jcrNodes) throws RepositoryException {
+        int changes = 0;
+        final Map<String, Node> existing = new LinkedHashMap<String, Node>();
+        final NodeIterator childNodes = node.getNodes();
+        while (childNodes.hasNext()) {
+            final Node childNode = childNodes.nextNode();
+            existing.put(childNode.getName() + "[" + childNode.getIndex() + "]", childNode);
+        }
+
+        final List<Node> ordered = new ArrayList<Node>(jcrNodes.size());
+        final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (JcrNode jcrNode : jcrNodes) {
+            final Integer previous = occurrences.get(jcrNode.getName());
+            final int index = previous == null ? 1 : previous + 1;
+            occurrences.put(jcrNode.getName(), index);
+            Node childNode = existing.remove(jcrNode.getName() + "[" + index + "]");
+            if (childNode == null) {
+                if (StringUtils.isEmpty(jcrNode.getPrimaryType())) {
+                    continue;
+                }
+                childNode = node.addNode(jcrNode.getName(), jcrNode.getPrimaryType());
+                addMixinsFromRepresentation(childNode, jcrNode.getMixinTypes());
+                addPropertiesFromRepresentation(childNode, jcrNode.getProperties());
                 addChildNodesFromRepresentation(childNode, jcrNode.getNodes());
+                changes++;
+            } else if (StringUtils.isNotEmpty(jcrNode.getPrimaryType())) {
+                changes += reconcileNodeWithRepresentation(childNode, jcrNode);
             }
+            ordered.add(childNode);
         }
+
+        for (Node childNode : existing.values()) {
+            final NodeDefinition definition = childNode.getDefinition();
+            if (!definition.isProtected() && !definition.isAutoCreated()) {
+                childNode.remove();
+                changes++;
+            }
+        }
+
+        if (ordered.size() > 1 && node.getPrimaryNodeType().hasOrderableChildNodes()) {
+            changes += reorderChildNodes(node, ordered);
+        }
+        return changes;
+    }
+
+    /**
+     * Moves the children of a node into the given order, with as few moves as possible when only a few children are
+     * out of place. Children that are not in the list keep their position relative to each other.
+     */
+    private static int reorderChildNodes(final Node node, final List<Node> ordered) throws RepositoryException {
+        final List<Node> current = new ArrayList<Node>(ordered.size());
+        final NodeIterator childNodes = node.getNodes();
+        while (childNodes.hasNext()) {
+            final Node childNode = childNodes.nextNode();
+            for (Node orderedNode : ordered) {
+                if (orderedNode.isSame(childNode)) {
+                    current.add(orderedNode);
+                    break;
+                }
+            }
+        }
+        int changes = 0;
+        for (int i = 0; i < ordered.size(); i++) {
+            final Node expected = ordered.get(i);
+            final Node actual = current.get(i);
+            if (!expected.isSame(actual)) {
+                node.orderBefore(getRelativePath(expected), getRelativePath(actual));
+                current.remove(expected);
+                current.add(i, expected);
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static String getRelativePath(final Node childNode) throws RepositoryException {
+        return childNode.getName() + "[" + childNode.getIndex() + "]";
     }
 
     /**
@@ -206,6 +1005,10 @@ public final class JcrDataBindingHelper {
      * @throws RepositoryException
      */
     public static void addPropertyToNode(final Node node, final JcrProperty property) throws RepositoryException {
+        if (isBinaryReference(property)) {
+            // binary values are only represented by a link, so the binary is left as it is
+            return;
+        }
         ValueFactory valueFactory = node.getSession().getValueFactory();
         if (property.isMultiple()) {
             Value[] values;
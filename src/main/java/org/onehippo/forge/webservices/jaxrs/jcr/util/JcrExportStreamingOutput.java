@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.util.MinimalPrettyPrinter;
+import org.hippoecm.repository.api.HippoNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a subtree as newline delimited JSON, with one line per node in the layout of
+ * {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode} without child nodes. The subtree is walked depth
+ * first, so a parent is always written before its children, and only the child iterators of the ancestors of the
+ * current node are kept in memory.
+ * <p>
+ * An export can be resumed after the last node of a previous export. The export stops after a complete line once the
+ * limit of nodes or the {@link JcrReadBudget} of the request has been reached, and can be throttled to a number of
+ * nodes per second to spread the load on the repository. Virtual nodes are not exported.
+ */
+public class JcrExportStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrExportStreamingOutput.class);
+
+    // a response that fails halfway must not be completed into valid JSON
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+    private static final char LINE_SEPARATOR = '\n';
+
+    private final Node root;
+    private final Node after;
+    private final JcrNodeProjection projection;
+    private final long limit;
+    private final JcrReadBudget budget;
+    private final int rate;
+
+    /**
+     * @param root       the root node of the subtree
+     * @param after      the last node of a previous export of the subtree, or <code>null</code> to start at the root
+     * @param projection the projection of the nodes
+     * @param limit      the maximum number of nodes to write, or <code>0</code> for no limit
+     * @param budget     the read budget of the request, or <code>null</code> for no limits
+     * @param rate       the maximum number of nodes to write per second, or <code>0</code> for no throttling
+     */
+    public JcrExportStreamingOutput(final Node root, final Node after, final JcrNodeProjection projection,
+                                    final long limit, final JcrReadBudget budget, final int rate) {
+        this.root = root;
+        this.after = after;
+        this.projection = projection;
+        this.limit = limit;
+        this.budget = budget;
+        this.rate = rate;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final CountingOutputStream counter = new CountingOutputStream(output);
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(counter, JsonEncoding.UTF8);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+        final long start = System.currentTimeMillis();
+        long count = 0;
+        try {
+            final Deque<NodeIterator> iterators = new ArrayDeque<NodeIterator>();
+            if (after == null) {
+                writeNode(generator, root);
+                count++;
+                iterators.push(root.getNodes());
+            } else {
+                for (NodeIterator iterator : getIteratorsAfter(root, after)) {
+                    iterators.push(iterator);
+                }
+            }
+            while (!iterators.isEmpty()) {
+                final NodeIterator iterator = iterators.peek();
+                if (!iterator.hasNext()) {
+                    iterators.pop();
+                    continue;
+                }
+                final Node node = iterator.nextNode();
+                if (isVirtual(node)) {
+                    continue;
+                }
+                // the count lags behind by the buffer of the generator, which is negligible to the budget
+                if (isLimitReached(count, counter.getCount())) {
+                    break;
+                }
+                throttle(generator, count, start);
+                writeNode(generator, node);
+                count++;
+                iterators.push(node.getNodes());
+            }
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to export nodes: {} ", e);
+            throw new IOException("Unable to export nodes", e);
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void writeNode(final JsonGenerator generator, final Node node) throws IOException, RepositoryException {
+        JcrDataBindingHelper.writeNodeRepresentation(generator, node, 0, projection, null, null);
+        generator.writeRaw(LINE_SEPARATOR);
+    }
+
+    private boolean isLimitReached(final long count, final long bytes) {
+        if (limit > 0 && count >= limit) {
+            return true;
+        }
+        if (budget == null) {
+            return false;
+        }
+        return (budget.getMaxNodes() > 0 && count >= budget.getMaxNodes())
+                || (budget.getMaxBytes() > 0 && bytes >= budget.getMaxBytes());
+    }
+
+    private void throttle(final JsonGenerator generator, final long count, final long start) throws IOException {
+        if (rate <= 0) {
+            return;
+        }
+        final long delay = start + count * 1000L / rate - System.currentTimeMillis();
+        if (delay > 0) {
+            // let the client process what has been written so far
+            generator.flush();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+        }
+    }
+
+    /**
+     * Gets the iterators that continue a depth first walk of a subtree after a node, from the root of the subtree
+     * down to the children of the node.
+     *
+     * @param root the root node of the subtree
+     * @param last the last node that has been walked
+     * @return the iterators, from the root down
+     * @throws RepositoryException
+     */
+    static Iterable<NodeIterator> getIteratorsAfter(final Node root, final Node last) throws RepositoryException {
+        final LinkedList<NodeIterator> iterators = new LinkedList<NodeIterator>();
+        iterators.add(last.getNodes());
+        Node current = last;
+        while (!current.isSame(root)) {
+            final Node parent = current.getParent();
+            final NodeIterator siblings = parent.getNodes();
+            while (siblings.hasNext() && !siblings.nextNode().isSame(current)) {
+                // skip the siblings that have been walked
+            }
+            iterators.addFirst(siblings);
+            current = parent;
+        }
+        return iterators;
+    }
+
+    private static boolean isVirtual(final Node node) throws RepositoryException {
+        if (node instanceof HippoNode) {
+            final Node canonical = ((HippoNode) node).getCanonicalNode();
+            return canonical == null || !canonical.isSame(node);
+        }
+        return false;
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
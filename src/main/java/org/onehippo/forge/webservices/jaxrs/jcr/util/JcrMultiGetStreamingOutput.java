@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNodeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the results of a multi-get request to the response, see
+ * {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetResult}. The nodes are looked up one by one in the
+ * session of the request, by identifier or by path, and each node is written before the next one is looked up. A
+ * node that can not be retrieved does not fail the request, but gets a result with a 404 status, or a 400 status when
+ * its reference is invalid.
+ * <p>
+ * All nodes share the {@link JcrReadBudget} of the request. A node that is reached after the budget has run out is
+ * not read, but gets a result with a 413 status.
+ */
+public class JcrMultiGetStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrMultiGetStreamingOutput.class);
+
+    // a response that fails halfway must not be completed into valid JSON
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+    // not defined in javax.ws.rs.core.Response.Status of JAX-RS 1.1
+    private static final int STATUS_REQUEST_ENTITY_TOO_LARGE = 413;
+
+    private final Session session;
+    private final List<JcrNodeReference> references;
+    private final URI binaryBaseUri;
+    private final boolean typedValues;
+    private final JcrReadBudget budget;
+
+    /**
+     * @param session       the session of the request
+     * @param references    the nodes to retrieve
+     * @param binaryBaseUri the base URI of the API to which binary values are linked, or <code>null</code> for no links
+     * @param typedValues   whether numbers and booleans are represented as JSON values instead of strings
+     * @param budget        the read budget of the request, or <code>null</code> for no limits
+     */
+    public JcrMultiGetStreamingOutput(final Session session, final List<JcrNodeReference> references,
+                                      final URI binaryBaseUri, final boolean typedValues,
+                                      final JcrReadBudget budget) {
+        this.session = session;
+        this.references = references;
+        this.binaryBaseUri = binaryBaseUri;
+        this.typedValues = typedValues;
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+        try {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("results");
+            for (JcrNodeReference reference : references) {
+                writeResult(generator, reference);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to stream nodes: {} ", e);
+            throw new IOException("Unable to stream nodes", e);
+        } finally {
+            generator.close();
+        }
+    }
+
+    private void writeResult(final JsonGenerator generator, final JcrNodeReference reference)
+            throws IOException, RepositoryException {
+        if (budget != null && budget.isExhausted()) {
+            writeStatus(generator, reference, STATUS_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        final JcrNodeProjection projection;
+        final Node node;
+        try {
+            if (reference.getDepth() < 0) {
+                throw new IllegalArgumentException("The depth can not be negative");
+            }
+            projection = JcrNodeProjection.valueOf(reference.getFields(), reference.getExclude(),
+                    reference.getChildrenOnly()).withBinaryBaseUri(binaryBaseUri).withTypedValues(typedValues);
+            node = getNode(session, reference);
+        } catch (IllegalArgumentException e) {
+            log.debug("Invalid node reference: {}", e.getMessage());
+            writeStatus(generator, reference, Response.Status.BAD_REQUEST.getStatusCode());
+            return;
+        }
+        if (node == null) {
+            writeStatus(generator, reference, Response.Status.NOT_FOUND.getStatusCode());
+            return;
+        }
+        generator.writeStartObject();
+        generator.writeNumberField("status", Response.Status.OK.getStatusCode());
+        generator.writeFieldName("node");
+        JcrDataBindingHelper.writeNodeRepresentation(generator, node, reference.getDepth(), projection, null, budget);
+        generator.writeEndObject();
+    }
+
+    private static void writeStatus(final JsonGenerator generator, final JcrNodeReference reference,
+                                    final int status) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("status", status);
+        if (reference.getPath() != null) {
+            generator.writeStringField("path", reference.getPath());
+        }
+        if (reference.getIdentifier() != null) {
+            generator.writeStringField("identifier", reference.getIdentifier());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Looks up a referenced node. The identifier takes precedence over the path.
+     *
+     * @param session   the {@link javax.jcr.Session} in which to look up the node
+     * @param reference the reference to the node
+     * @return the node, or <code>null</code> if it does not exist or is not readable
+     * @throws IllegalArgumentException if the reference has neither a path nor an identifier, or either is invalid
+     * @throws RepositoryException
+     */
+    static Node getNode(final Session session, final JcrNodeReference reference) throws RepositoryException {
+        final String identifier = reference.getIdentifier();
+        final String path = reference.getPath();
+        if (StringUtils.isEmpty(identifier) && StringUtils.isEmpty(path)) {
+            throw new IllegalArgumentException("Either a path or an identifier is required");
+        }
+        if (StringUtils.isNotEmpty(identifier)) {
+            return JcrSessionUtil.getNodeByIdentifier(session, identifier);
+        }
+        final String absolutePath = path.startsWith("/") ? path : "/" + path;
+        try {
+            return session.nodeExists(absolutePath) ? session.getNode(absolutePath) : null;
+        } catch (RepositoryException e) {
+            throw new IllegalArgumentException("Invalid path: '" + path + "'", e);
+        }
+    }
+}
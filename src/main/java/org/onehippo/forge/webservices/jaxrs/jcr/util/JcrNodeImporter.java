@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.type.TypeReference;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
+
+/**
+ * Imports a node representation, see {@link org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode}, while it is
+ * being parsed. A node is created as soon as its child nodes start, so only the name, types and properties of the
+ * nodes on the path to the current node are held in memory instead of the whole tree. The name and primary type of a
+ * node have to precede its child nodes, as they do in the representations returned by the nodes API.
+ * <p>
+ * The session is saved after every <code>saveInterval</code> imported nodes, if set, which keeps the transient state
+ * of the session small as well. Nodes that have been saved are not removed when the import fails later on, so
+ * intermediate saves are only suitable for trees of which the nodes are valid before all their children exist.
+ */
+public class JcrNodeImporter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final TypeReference<List<String>> MIXINS_TYPE = new TypeReference<List<String>>() {
+    };
+    private static final TypeReference<List<JcrProperty>> PROPERTIES_TYPE = new TypeReference<List<JcrProperty>>() {
+    };
+
+    private final Session session;
+    private final int saveInterval;
+    private long imported;
+    private long saved;
+
+    /**
+     * @param session      the session in which to import
+     * @param saveInterval the number of nodes after which the session is saved, or <code>0</code> to only save when
+     *                     the import has completed
+     */
+    public JcrNodeImporter(final Session session, final int saveInterval) {
+        if (saveInterval < 0) {
+            throw new IllegalArgumentException("The save interval can not be negative");
+        }
+        this.session = session;
+        this.saveInterval = saveInterval;
+    }
+
+    /**
+     * Imports a node as a child of a parent node, and saves the session.
+     *
+     * @param parent the parent {@link javax.jcr.Node}
+     * @param input  the JSON representation of the node
+     * @return the imported node
+     * @throws IllegalArgumentException if the representation is malformed or incomplete
+     * @throws IOException              if the representation can not be read
+     * @throws RepositoryException
+     */
+    public Node importNode(final Node parent, final InputStream input) throws IOException, RepositoryException {
+        final JsonParser parser = OBJECT_MAPPER.getJsonFactory().createJsonParser(input);
+        try {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("A node must be an object");
+            }
+            final Node node = readNode(parser, parent, false);
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Unexpected content after the node");
+            }
+            session.save();
+            saved = imported;
+            return node;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed node: " + e.getMessage(), e);
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @return the number of nodes that have been imported so far
+     */
+    public long getImportedCount() {
+        return imported;
+    }
+
+    /**
+     * @return the number of imported nodes that have been saved so far
+     */
+    public long getSavedCount() {
+        return saved;
+    }
+
+    /**
+     * Reads a node of which the start of the object has just been read, and creates it.
+     */
+    private Node readNode(final JsonParser parser, final Node parent, final boolean reuseAutoCreated)
+            throws IOException, RepositoryException {
+        String name = null;
+        String primaryType = null;
+        List<String> mixins = new ArrayList<String>(0);
+        List<JcrProperty> properties = new ArrayList<JcrProperty>(0);
+        Node node = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("name".equals(field)) {
+                name = parser.getText();
+            } else if ("primaryType".equals(field)) {
+                primaryType = parser.getText();
+            } else if ("mixinTypes".equals(field)) {
+                mixins = OBJECT_MAPPER.readValue(parser, MIXINS_TYPE);
+                if (node != null) {
+                    JcrDataBindingHelper.addMixinsFromRepresentation(node, mixins);
+                }
+            } else if ("properties".equals(field)) {
+                properties = OBJECT_MAPPER.readValue(parser, PROPERTIES_TYPE);
+                if (node != null) {
+                    JcrDataBindingHelper.addPropertiesFromRepresentation(node, properties);
+                }
+            } else if ("nodes".equals(field)) {
+                if (token != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException("The child nodes of a node must be an array");
+                }
+                if (node == null) {
+                    node = createNode(parent, name, primaryType, mixins, properties, reuseAutoCreated);
+                }
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    readNode(parser, node, true);
+                }
+                if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                    throw new IllegalArgumentException("A child node must be an object");
+                }
+            } else {
+                // read-only members like the path, identifier and links are ignored
+                parser.skipChildren();
+            }
+        }
+        if (node == null) {
+            node = createNode(parent, name, primaryType, mixins, properties, reuseAutoCreated);
+        }
+        return node;
+    }
+
+    private Node createNode(final Node parent, final String name, final String primaryType, final List<String> mixins,
+                            final List<JcrProperty> properties, final boolean reuseAutoCreated)
+            throws RepositoryException {
+        if (StringUtils.isEmpty(name) || StringUtils.isEmpty(primaryType)) {
+            throw new IllegalArgumentException("A node needs a name and a primary type before its child nodes");
+        }
+        final Node node;
+        if (reuseAutoCreated && parent.hasNode(name) && parent.getNode(name).getDefinition().isAutoCreated()) {
+            node = parent.getNode(name);
+        } else {
+            node = parent.addNode(name, primaryType);
+        }
+        JcrDataBindingHelper.addMixinsFromRepresentation(node, mixins);
+        JcrDataBindingHelper.addPropertiesFromRepresentation(node, properties);
+        imported++;
+        if (saveInterval > 0 && imported % saveInterval == 0) {
+            session.save();
+            saved = imported;
+        }
+        return node;
+    }
+}
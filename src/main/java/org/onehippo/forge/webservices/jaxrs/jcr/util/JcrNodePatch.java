@@ -0,0 +1,300 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
+
+/**
+ * Applies a patch to the properties of a JCR node, so a few properties can be changed without sending the whole
+ * node. Two formats are supported:
+ * <ul>
+ * <li>a JSON Merge Patch (RFC 7386) with a <code>properties</code> object, of which each member sets a property or
+ * removes it when it is <code>null</code>, e.g. <code>{"properties": {"title": "New title", "obsolete": null}}</code></li>
+ * <li>a JSON Patch (RFC 6902) of which the operations refer to properties by the path
+ * <code>/properties/{name}</code>, e.g. <code>[{"op": "replace", "path": "/properties/title", "value": "New title"}]</code></li>
+ * </ul>
+ * A property value is either a property representation with a <code>type</code>, <code>multiple</code> and
+ * <code>values</code>, a single value or an array of values. When no type is given, the type of the existing property
+ * is kept, and a new property gets a type that matches the JSON value.
+ * <p>
+ * The patch is only applied to the transient state of the session, the caller saves or discards it. Properties that
+ * already have the same values are not written.
+ */
+public final class JcrNodePatch {
+
+    public static final String MERGE_PATCH_MEDIA_TYPE = "application/merge-patch+json";
+    public static final String JSON_PATCH_MEDIA_TYPE = "application/json-patch+json";
+
+    private static final String PROPERTIES_MEMBER = "properties";
+    private static final String PROPERTIES_PATH = "/" + PROPERTIES_MEMBER + "/";
+
+    private static final String OP_ADD = "add";
+    private static final String OP_REMOVE = "remove";
+    private static final String OP_REPLACE = "replace";
+    private static final String OP_MOVE = "move";
+    private static final String OP_COPY = "copy";
+    private static final String OP_TEST = "test";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private JcrNodePatch() {
+    }
+
+    /**
+     * Reads a patch document.
+     *
+     * @param input the JSON patch document
+     * @return the parsed document
+     * @throws IllegalArgumentException if the document is not valid JSON
+     * @throws IOException              if the document can not be read
+     */
+    public static JsonNode read(final InputStream input) throws IOException {
+        final JsonNode patch;
+        try {
+            patch = OBJECT_MAPPER.readTree(input);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid patch document: " + e.getMessage(), e);
+        }
+        if (patch == null) {
+            throw new IllegalArgumentException("Empty patch document");
+        }
+        return patch;
+    }
+
+    /**
+     * Applies a JSON Merge Patch to a node.
+     *
+     * @param node  the {@link javax.jcr.Node} to patch
+     * @param patch the merge patch document
+     * @throws IllegalArgumentException if the patch is invalid
+     * @throws RepositoryException
+     */
+    public static void applyMergePatch(final Node node, final JsonNode patch) throws RepositoryException {
+        if (!patch.isObject()) {
+            throw new IllegalArgumentException("A merge patch must be an object");
+        }
+        final Iterator<String> members = patch.getFieldNames();
+        while (members.hasNext()) {
+            final String member = members.next();
+            if (!PROPERTIES_MEMBER.equals(member)) {
+                throw new IllegalArgumentException("Unsupported member of a merge patch: '" + member + "'");
+            }
+        }
+        final JsonNode properties = patch.get(PROPERTIES_MEMBER);
+        if (properties == null) {
+            return;
+        }
+        if (!properties.isObject()) {
+            throw new IllegalArgumentException("The properties of a merge patch must be an object");
+        }
+        final Iterator<Map.Entry<String, JsonNode>> fields = properties.getFields();
+        while (fields.hasNext()) {
+            final Map.Entry<String, JsonNode> field = fields.next();
+            checkPropertyName(field.getKey());
+            if (field.getValue().isNull()) {
+                if (node.hasProperty(field.getKey())) {
+                    node.getProperty(field.getKey()).remove();
+                }
+            } else {
+                setProperty(node, toProperty(node, field.getKey(), field.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Applies a JSON Patch to a node. The operations are applied in order, and the first one that fails stops the
+     * patch, in which case the caller should discard the changes of the previous operations.
+     *
+     * @param node  the {@link javax.jcr.Node} to patch
+     * @param patch the array of patch operations
+     * @throws IllegalArgumentException if an operation is invalid
+     * @throws IllegalStateException    if an operation does not apply to the current properties of the node, e.g.
+     *                                  a test fails or a property to remove does not exist
+     * @throws RepositoryException
+     */
+    public static void applyJsonPatch(final Node node, final JsonNode patch) throws RepositoryException {
+        if (!patch.isArray()) {
+            throw new IllegalArgumentException("A JSON patch must be an array of operations");
+        }
+        for (JsonNode operation : patch) {
+            if (!operation.isObject()) {
+                throw new IllegalArgumentException("A JSON patch operation must be an object");
+            }
+            final String op = getMember(operation, "op").asText();
+            final String name = getPropertyName(getMember(operation, "path").asText());
+            if (OP_ADD.equals(op)) {
+                setProperty(node, toProperty(node, name, getMember(operation, "value")));
+            } else if (OP_REPLACE.equals(op)) {
+                getExistingProperty(node, name);
+                setProperty(node, toProperty(node, name, getMember(operation, "value")));
+            } else if (OP_REMOVE.equals(op)) {
+                getExistingProperty(node, name).remove();
+            } else if (OP_TEST.equals(op)) {
+                final Property property = getExistingProperty(node, name);
+                final JcrProperty expected = toProperty(node, name, getMember(operation, "value"));
+                if (!JcrDataBindingHelper.isSameProperty(property, expected)) {
+                    throw new IllegalStateException("Property '" + name + "' does not have the tested value");
+                }
+            } else if (OP_MOVE.equals(op) || OP_COPY.equals(op)) {
+                final String from = getPropertyName(getMember(operation, "from").asText());
+                final Property source = getExistingProperty(node, from);
+                if (!from.equals(name)) {
+                    copyProperty(node, source, name);
+                    if (OP_MOVE.equals(op)) {
+                        source.remove();
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported JSON patch operation: '" + op + "'");
+            }
+        }
+    }
+
+    private static void setProperty(final Node node, final JcrProperty property) throws RepositoryException {
+        if (node.hasProperty(property.getName())
+                && JcrDataBindingHelper.isSameProperty(node.getProperty(property.getName()), property)) {
+            return;
+        }
+        JcrDataBindingHelper.addPropertyToNode(node, property);
+    }
+
+    private static void copyProperty(final Node node, final Property source, final String name)
+            throws RepositoryException {
+        if (node.hasProperty(name) && node.getProperty(name).isMultiple() != source.isMultiple()) {
+            node.getProperty(name).remove();
+        }
+        if (source.isMultiple()) {
+            node.setProperty(name, source.getValues(), source.getType());
+        } else {
+            node.setProperty(name, source.getValue());
+        }
+    }
+
+    private static JcrProperty toProperty(final Node node, final String name, final JsonNode value)
+            throws RepositoryException {
+        final JcrProperty property;
+        final JsonNode typeSample;
+        if (value.isObject()) {
+            try {
+                property = OBJECT_MAPPER.readValue(value, JcrProperty.class);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Invalid representation of property '" + name + "'", e);
+            }
+            if (property.getValues() == null) {
+                property.setValues(new ArrayList<String>(0));
+            }
+            typeSample = value.path("values").path(0);
+        } else if (value.isArray()) {
+            property = new JcrProperty();
+            property.setMultiple(true);
+            final List<String> values = new ArrayList<String>(value.size());
+            for (JsonNode element : value) {
+                values.add(getScalarValue(name, element));
+            }
+            property.setValues(values);
+            typeSample = value.path(0);
+        } else {
+            property = new JcrProperty();
+            property.setMultiple(false);
+            final List<String> values = new ArrayList<String>(1);
+            values.add(getScalarValue(name, value));
+            property.setValues(values);
+            typeSample = value;
+        }
+        property.setName(name);
+        if (StringUtils.isEmpty(property.getType())) {
+            property.setType(node.hasProperty(name)
+                    ? PropertyType.nameFromValue(node.getProperty(name).getType())
+                    : getTypeName(typeSample));
+        }
+        if (!property.isMultiple() && property.getValues().size() != 1) {
+            throw new IllegalArgumentException("Single valued property '" + name + "' needs exactly one value");
+        }
+        return property;
+    }
+
+    private static String getScalarValue(final String name, final JsonNode value) {
+        if (!value.isValueNode() || value.isNull()) {
+            throw new IllegalArgumentException("Invalid value of property '" + name + "'");
+        }
+        return value.asText();
+    }
+
+    private static String getTypeName(final JsonNode value) {
+        if (value.isBoolean()) {
+            return PropertyType.TYPENAME_BOOLEAN;
+        }
+        if (value.isIntegralNumber()) {
+            return PropertyType.TYPENAME_LONG;
+        }
+        if (value.isNumber()) {
+            return PropertyType.TYPENAME_DOUBLE;
+        }
+        return PropertyType.TYPENAME_STRING;
+    }
+
+    private static Property getExistingProperty(final Node node, final String name) throws RepositoryException {
+        if (!node.hasProperty(name)) {
+            throw new IllegalStateException("Property '" + name + "' does not exist");
+        }
+        return node.getProperty(name);
+    }
+
+    private static JsonNode getMember(final JsonNode operation, final String member) {
+        final JsonNode value = operation.get(member);
+        if (value == null) {
+            throw new IllegalArgumentException("JSON patch operation without '" + member + "'");
+        }
+        return value;
+    }
+
+    /**
+     * Gets the name of the property referenced by a JSON pointer of the form <code>/properties/{name}</code>, in
+     * which a '/' in the name is escaped as '~1' and a '~' as '~0'.
+     */
+    private static String getPropertyName(final String pointer) {
+        if (!pointer.startsWith(PROPERTIES_PATH) || pointer.length() == PROPERTIES_PATH.length()
+                || pointer.indexOf('/', PROPERTIES_PATH.length()) >= 0) {
+            throw new IllegalArgumentException("Unsupported JSON patch path: '" + pointer + "'");
+        }
+        final String name = pointer.substring(PROPERTIES_PATH.length()).replace("~1", "/").replace("~0", "~");
+        checkPropertyName(name);
+        return name;
+    }
+
+    private static void checkPropertyName(final String name) {
+        if (StringUtils.isEmpty(name) || JcrDataBindingHelper.isIgnoredProperty(name)) {
+            throw new IllegalArgumentException("Property '" + name + "' can not be patched");
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.jackrabbit.util.ChildrenCollectorFilter;
+
+/**
+ * Selects which parts of a JCR node end up in its representation. Properties can be selected and excluded by name
+ * globs as defined by {@link javax.jcr.Node#getProperties(String[])}, e.g. <code>hippostd:*</code>, and child nodes can
+ * be limited to their names. Binary values are never included, but are represented by a link to the binaries API.
+ * <p>
+ * The selection is applied while the node is being read, so properties that are not selected are never loaded or
+ * converted. Values are represented as strings, unless typed values are requested, in which case numbers and booleans
+ * are represented as native JSON values.
+ */
+public final class JcrNodeProjection {
+
+    /**
+     * Value of the <code>childrenOnly</code> parameter that limits child nodes to their names.
+     */
+    public static final String CHILDREN_ONLY_NAMES = "names";
+
+    /**
+     * Name of the query parameter and media type parameter that selects typed values.
+     */
+    public static final String TYPED_PARAM = "typed";
+
+    /**
+     * Selects all properties and child nodes.
+     */
+    public static final JcrNodeProjection ALL = new JcrNodeProjection(null, null, false);
+
+    private static final String TYPED_VALUE = "true";
+
+    private static final String GLOB_SEPARATOR = ",";
+
+    private final String[] fields;
+    private final String[] exclude;
+    private final boolean childNamesOnly;
+    private final URI binaryBaseUri;
+    private final boolean typedValues;
+
+    public JcrNodeProjection(final String[] fields, final String[] exclude, final boolean childNamesOnly) {
+        this(fields, exclude, childNamesOnly, null, false);
+    }
+
+    private JcrNodeProjection(final String[] fields, final String[] exclude, final boolean childNamesOnly,
+                              final URI binaryBaseUri, final boolean typedValues) {
+        this.fields = fields;
+        this.exclude = exclude;
+        this.childNamesOnly = childNamesOnly;
+        this.binaryBaseUri = binaryBaseUri;
+        this.typedValues = typedValues;
+    }
+
+    /**
+     * Creates a projection from request parameters.
+     *
+     * @param fields       comma separated name globs of the properties to include, or <code>null</code> for all
+     * @param exclude      comma separated name globs of the properties to exclude, or <code>null</code> for none
+     * @param childrenOnly {@link #CHILDREN_ONLY_NAMES} to limit child nodes to their names, or <code>null</code>
+     * @return the projection
+     * @throws IllegalArgumentException if the value of childrenOnly is not supported
+     */
+    public static JcrNodeProjection valueOf(final String fields, final String exclude, final String childrenOnly) {
+        if (StringUtils.isNotEmpty(childrenOnly) && !CHILDREN_ONLY_NAMES.equals(childrenOnly)) {
+            throw new IllegalArgumentException("Unsupported value for childrenOnly: '" + childrenOnly + "'");
+        }
+        final String[] fieldGlobs = splitGlobs(fields);
+        final String[] excludeGlobs = splitGlobs(exclude);
+        final boolean childNamesOnly = CHILDREN_ONLY_NAMES.equals(childrenOnly);
+        if (fieldGlobs == null && excludeGlobs == null && !childNamesOnly) {
+            return ALL;
+        }
+        return new JcrNodeProjection(fieldGlobs, excludeGlobs, childNamesOnly);
+    }
+
+    /**
+     * Gets the properties of a node that are selected by the field globs. Excluded properties still have to be
+     * filtered with {@link #isIncluded(String)}.
+     *
+     * @param node the {@link javax.jcr.Node}
+     * @return the selected properties
+     * @throws RepositoryException
+     */
+    public PropertyIterator getProperties(final Node node) throws RepositoryException {
+        if (fields == null) {
+            return node.getProperties();
+        }
+        return node.getProperties(fields);
+    }
+
+    /**
+     * @param propertyName the name of a property
+     * @return <code>true</code> if the property is not excluded
+     */
+    public boolean isIncluded(final String propertyName) {
+        return exclude == null || !ChildrenCollectorFilter.matches(propertyName, exclude);
+    }
+
+    /**
+     * @return <code>true</code> if only some of the properties are selected, so a representation may leave out
+     * properties of the node
+     */
+    public boolean isPropertySelection() {
+        return fields != null || exclude != null;
+    }
+
+    /**
+     * @return <code>true</code> if child nodes are represented by their name only
+     */
+    public boolean isChildNamesOnly() {
+        return childNamesOnly;
+    }
+
+    /**
+     * Creates a copy of this projection that links binary values to the binaries API.
+     *
+     * @param baseUri the base URI of the API
+     * @return the projection
+     */
+    public JcrNodeProjection withBinaryBaseUri(final URI baseUri) {
+        return new JcrNodeProjection(fields, exclude, childNamesOnly, baseUri, typedValues);
+    }
+
+    /**
+     * @return the base URI of the API to which binary values are linked, or <code>null</code> for no links
+     */
+    public URI getBinaryBaseUri() {
+        return binaryBaseUri;
+    }
+
+    /**
+     * Creates a copy of this projection that represents values as strings or as typed values.
+     *
+     * @param typed <code>true</code> for typed values
+     * @return the projection
+     */
+    public JcrNodeProjection withTypedValues(final boolean typed) {
+        return new JcrNodeProjection(fields, exclude, childNamesOnly, binaryBaseUri, typed);
+    }
+
+    /**
+     * @return <code>true</code> if long, double, decimal and boolean values are represented as JSON numbers and
+     * booleans instead of strings
+     */
+    public boolean isTypedValues() {
+        return typedValues;
+    }
+
+    /**
+     * Checks whether a request selects typed values with a media type parameter in its Accept header, e.g.
+     * <code>application/json; typed=true</code>.
+     *
+     * @param headers the headers of the request
+     * @return <code>true</code> if an acceptable media type has the typed parameter set to true
+     */
+    public static boolean acceptsTypedValues(final HttpHeaders headers) {
+        if (headers == null) {
+            return false;
+        }
+        for (MediaType mediaType : headers.getAcceptableMediaTypes()) {
+            if (TYPED_VALUE.equalsIgnoreCase(mediaType.getParameters().get(TYPED_PARAM))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] splitGlobs(final String globs) {
+        if (StringUtils.isBlank(globs)) {
+            return null;
+        }
+        final List<String> result = new ArrayList<String>();
+        for (String glob : StringUtils.split(globs, GLOB_SEPARATOR)) {
+            if (StringUtils.isNotBlank(glob)) {
+                result.add(glob.trim());
+            }
+        }
+        return result.isEmpty() ? null : result.toArray(new String[result.size()]);
+    }
+}
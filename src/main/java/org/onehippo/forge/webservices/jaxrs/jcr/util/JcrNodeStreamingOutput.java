@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the JSON representation of a JCR node and its children to the response while traversing the node tree,
+ * see {@link JcrDataBindingHelper#writeNodeRepresentation(org.codehaus.jackson.JsonGenerator, javax.jcr.Node, int)}.
+ * <p>
+ * The output is written after the resource method has returned, so the session of the node must stay available
+ * until the output has been written. The status of the response has already been sent by then, so a failure while
+ * traversing the tree aborts the response instead of producing an error status.
+ */
+public class JcrNodeStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrNodeStreamingOutput.class);
+
+    // a response that fails halfway must not be completed into valid JSON
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+
+    private final Node node;
+    private final int depth;
+    private final JcrNodeProjection projection;
+    private final JcrChildPage page;
+    private final JcrReadBudget budget;
+
+    public JcrNodeStreamingOutput(final Node node, final int depth, final JcrNodeProjection projection,
+                                  final JcrChildPage page, final JcrReadBudget budget) {
+        this.node = node;
+        this.depth = depth;
+        this.projection = projection;
+        this.page = page;
+        this.budget = budget;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+        try {
+            JcrDataBindingHelper.writeNodeRepresentation(generator, node, depth, projection, page, budget);
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to stream node: {} ", e);
+            throw new IOException("Unable to stream node", e);
+        } finally {
+            generator.close();
+        }
+    }
+}
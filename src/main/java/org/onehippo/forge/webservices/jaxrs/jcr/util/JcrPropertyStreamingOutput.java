@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the typed JSON representation of a JCR property to the response, see
+ * {@link JcrDataBindingHelper#writeTypedPropertyRepresentation(org.codehaus.jackson.JsonGenerator, javax.jcr.Property, java.net.URI)}.
+ */
+public class JcrPropertyStreamingOutput implements StreamingOutput {
+
+    private static final Logger log = LoggerFactory.getLogger(JcrPropertyStreamingOutput.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Property property;
+    private final URI binaryBaseUri;
+
+    public JcrPropertyStreamingOutput(final Property property, final URI binaryBaseUri) {
+        this.property = property;
+        this.binaryBaseUri = binaryBaseUri;
+    }
+
+    @Override
+    public void write(final OutputStream output) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+        try {
+            JcrDataBindingHelper.writeTypedPropertyRepresentation(generator, property, binaryBaseUri);
+        } catch (RepositoryException e) {
+            log.error("An exception occurred while trying to stream property: {} ", e);
+            throw new IOException("Unable to stream property", e);
+        } finally {
+            generator.close();
+        }
+    }
+}
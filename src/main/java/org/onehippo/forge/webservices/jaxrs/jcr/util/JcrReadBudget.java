@@ -0,0 +1,121 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+/**
+ * Limits the number of nodes and the amount of data a single request can read from the repository. Once either
+ * limit has been reached, the traversal of the node tree stops and the nodes of which children or properties have
+ * been left out are marked as truncated.
+ * <p>
+ * The amount of data is an estimate based on the length of the names and values that have been read, which is close
+ * to the size of the response in bytes. A limit of <code>0</code> or less disables the limit.
+ */
+public final class JcrReadBudget {
+
+    public static final int DEFAULT_MAX_NODES = 10000;
+    public static final long DEFAULT_MAX_BYTES = 20 * 1024 * 1024L;
+
+    // rough size of the JSON structure around a node or a property
+    private static final int NODE_OVERHEAD = 96;
+    private static final int PROPERTY_OVERHEAD = 48;
+
+    private final int maxNodes;
+    private final long maxBytes;
+    private int nodes;
+    private long bytes;
+
+    public JcrReadBudget(final int maxNodes, final long maxBytes) {
+        this.maxNodes = maxNodes;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Checks up front whether reading a number of nodes would exceed the node limit.
+     *
+     * @param estimatedNodes the estimated number of nodes to read
+     * @return <code>true</code> if the estimate exceeds the node limit
+     */
+    public boolean exceeds(final long estimatedNodes) {
+        return maxNodes > 0 && estimatedNodes > maxNodes;
+    }
+
+    /**
+     * @return <code>true</code> if the node or byte limit has been reached
+     */
+    public boolean isExhausted() {
+        return (maxNodes > 0 && nodes >= maxNodes) || (maxBytes > 0 && bytes >= maxBytes);
+    }
+
+    /**
+     * Records that a node has been read.
+     *
+     * @param name the name of the node
+     * @param path the path of the node, or <code>null</code> if only the name has been read
+     */
+    public void nodeRead(final String name, final String path) {
+        nodes++;
+        bytes += NODE_OVERHEAD + length(name) + length(path);
+    }
+
+    /**
+     * Records that a property has been read.
+     *
+     * @param name   the name of the property
+     * @param values the values of the property, as they appear in the response
+     */
+    public void propertyRead(final String name, final Iterable<String> values) {
+        int count = 0;
+        long length = 0;
+        for (String value : values) {
+            count++;
+            length += length(value);
+        }
+        propertyRead(name, count, length);
+    }
+
+    /**
+     * Records that a property has been read, of which the values have been written without converting them to
+     * strings.
+     *
+     * @param name        the name of the property
+     * @param valueCount  the number of values
+     * @param valueLength the estimated length of the values, as they appear in the response
+     */
+    public void propertyRead(final String name, final int valueCount, final long valueLength) {
+        bytes += PROPERTY_OVERHEAD + length(name) + valueLength + 3L * valueCount;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxNodes() {
+        return maxNodes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static int length(final String value) {
+        return value == null ? 0 : value.length();
+    }
+}
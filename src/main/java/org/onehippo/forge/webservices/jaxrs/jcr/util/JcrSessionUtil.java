@@ -16,14 +16,19 @@
 
 package org.onehippo.forge.webservices.jaxrs.jcr.util;
 
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.LoginException;
+import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
 import javax.servlet.http.HttpServletRequest;
 
 import org.hippoecm.repository.HippoRepository;
 import org.hippoecm.repository.HippoRepositoryFactory;
 import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.jaxrs.exception.UnauthorizedException;
+import org.onehippo.forge.webservices.session.LazySession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,13 +40,65 @@ public class JcrSessionUtil {
     }
 
     /**
-     * Gets a JCR session from the servlet request. The session does need to be logged out by the developer,
-     * but is logged out once the request is finished.
+     * Gets a JCR session from the servlet request. The session is acquired on the first call for a request. The
+     * session does not need to be logged out by the developer, but is released once the request is finished.
      * @param request an HttpServletRequest
      * @return a {@link javax.jcr.Session}
      */
     public static Session getSessionFromRequest(HttpServletRequest request) {
-        return (Session) request.getAttribute(AuthenticationConstants.HIPPO_SESSION);
+        final Object session = request.getAttribute(AuthenticationConstants.HIPPO_SESSION);
+        if (session instanceof LazySession) {
+            final Session acquired;
+            try {
+                acquired = ((LazySession) session).getSession();
+            } catch (LoginException e) {
+                log.debug("Unable to acquire a session: {}", e);
+                throw new UnauthorizedException(e.getMessage());
+            }
+            if (acquired == null) {
+                throw new UnauthorizedException();
+            }
+            return acquired;
+        }
+        return (Session) session;
+    }
+
+    /**
+     * Gets the user of the servlet request from its credentials, without acquiring a JCR session for it.
+     * @param request an HttpServletRequest
+     * @return the user id
+     */
+    public static String getUserIdFromRequest(HttpServletRequest request) {
+        final Object session = request.getAttribute(AuthenticationConstants.HIPPO_SESSION);
+        if (session instanceof LazySession) {
+            return ((LazySession) session).getUsername();
+        }
+        if (session == null) {
+            throw new UnauthorizedException();
+        }
+        return ((Session) session).getUserID();
+    }
+
+    /**
+     * Gets a node by its identifier, without resolving the path of the node.
+     * @param session the session in which to look up the node
+     * @param identifier the identifier of the node
+     * @return the {@link javax.jcr.Node}, or <code>null</code> if no node with the identifier exists or is readable
+     * @throws IllegalArgumentException if the identifier is not valid
+     * @throws RepositoryException
+     */
+    public static Node getNodeByIdentifier(Session session, String identifier) throws RepositoryException {
+        try {
+            return session.getNodeByIdentifier(identifier);
+        } catch (ItemNotFoundException e) {
+            return null;
+        } catch (RepositoryException e) {
+            // the repository wraps the parse error of an invalid identifier
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw new IllegalArgumentException("Invalid identifier: '" + identifier + "'", e);
+            }
+            throw e;
+        }
     }
 
     /**
@@ -64,4 +121,24 @@ public class JcrSessionUtil {
         return session;
     }
 
+    /**
+     * Creates a JCR session for a user by impersonating the user from another session. The password of the user is
+     * not checked, so the caller needs to make sure the user has been authenticated before.
+     * @param session the session from which to impersonate, usually a session of a privileged user
+     * @param username the username
+     * @return a {@link javax.jcr.Session}
+     * @throws LoginException
+     */
+    public static Session impersonateSession(Session session, String username) throws LoginException {
+        Session impersonatedSession = null;
+        try {
+            impersonatedSession = session.impersonate(new SimpleCredentials(username, new char[0]));
+        } catch (LoginException le) {
+            throw new LoginException(le);
+        } catch (RepositoryException e) {
+            log.error("An exception occurred: {}", e);
+        }
+        return impersonatedSession;
+    }
+
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Wraps the body of an upload while it is streamed into the repository. It counts the bytes that pass, stops the
+ * upload when it grows beyond the maximum size, and computes the MD5 digest of the content on the fly so it can be
+ * verified against a <code>Content-MD5</code> header without buffering the body.
+ */
+public final class JcrUploadStream extends FilterInputStream {
+
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024 * 1024L;
+
+    private final long maxSize;
+    private final MessageDigest digest;
+    private long size;
+    private boolean limitExceeded;
+
+    /**
+     * @param input   the body of the request
+     * @param maxSize the maximum size in bytes, or <code>0</code> or less for no limit
+     */
+    public JcrUploadStream(final InputStream input, final long maxSize) {
+        super(input);
+        this.maxSize = maxSize;
+        try {
+            this.digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) {
+            digest.update((byte) b);
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            digest.update(buffer, offset, read);
+            count(read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // every byte has to pass through the digest
+        final byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        final int read = read(buffer, 0, buffer.length);
+        return read < 0 ? 0 : read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return <code>true</code> if the upload has been stopped because it exceeded the maximum size
+     */
+    public boolean isLimitExceeded() {
+        return limitExceeded;
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Checks the content read so far against the value of a <code>Content-MD5</code> header, which is the base64
+     * encoded MD5 digest of the content.
+     *
+     * @param contentMd5 the value of the header
+     * @return <code>true</code> if the digest matches
+     */
+    public boolean matches(final String contentMd5) {
+        return MessageDigest.isEqual(digest.digest(), Base64.decodeBase64(contentMd5.trim()));
+    }
+
+    private void count(final int read) throws IOException {
+        size += read;
+        if (maxSize > 0 && size > maxSize) {
+            limitExceeded = true;
+            throw new IOException("Upload exceeds the maximum size of " + maxSize + " bytes");
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.jcr.nodetype.NodeType;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.jackrabbit.JcrConstants;
+
+/**
+ * The validators of a representation of a JCR node or property: an entity tag and a last modification date, with
+ * which conditional requests can be answered with a 304 response before the representation is built.
+ * <p>
+ * The entity tag is a weak tag derived from the nodes that end up in the representation: their identity, path, types,
+ * number of children and the values of the selected properties. Values are hashed without being converted to JSON,
+ * and binary values are represented by their length only. Only the requested page of children is visited. The
+ * modification dates of the nodes only serve as the last modification date, since not every write updates them. It
+ * is the latest <code>jcr:lastModified</code> or <code>hippostdpubwf:lastModificationDate</code> of the nodes, and is
+ * only known when every node in the representation has one.
+ */
+public final class JcrValidator {
+
+    public static final String HIPPOSTDPUBWF_LAST_MODIFICATION_DATE = "hippostdpubwf:lastModificationDate";
+
+    private static final String ENCODING = "UTF-8";
+    private static final byte SEPARATOR = 0;
+
+    private final EntityTag entityTag;
+    private final Date lastModified;
+
+    private JcrValidator(final EntityTag entityTag, final Date lastModified) {
+        this.entityTag = entityTag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates the validators of the representation of a node.
+     *
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children in the representation underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @param variant    identifies the variant of the representation, e.g. the request URI and the user
+     * @param maxNodes   the maximum number of nodes to visit, or <code>0</code> for no limit
+     * @return the validators, or <code>null</code> if the representation contains more than <code>maxNodes</code> nodes
+     * @throws RepositoryException
+     */
+    public static JcrValidator forNode(final Node node, final int depth, final JcrNodeProjection projection,
+                                       final String variant, final int maxNodes) throws RepositoryException {
+        return forNode(node, depth, projection, null, variant, maxNodes);
+    }
+
+    /**
+     * Creates the validators of the representation of a node with a page of its children.
+     *
+     * @param node       the {@link javax.jcr.Node}
+     * @param depth      the amount of children in the representation underneath this node
+     * @param projection the {@link JcrNodeProjection} selecting the properties and child nodes
+     * @param page       a new {@link JcrChildPage} of the children in the representation, or <code>null</code> for all
+     * @param variant    identifies the variant of the representation, e.g. the request URI and the user
+     * @param maxNodes   the maximum number of nodes to visit, or <code>0</code> for no limit
+     * @return the validators, or <code>null</code> if the representation contains more than <code>maxNodes</code> nodes
+     * @throws RepositoryException
+     */
+    public static JcrValidator forNode(final Node node, final int depth, final JcrNodeProjection projection,
+                                       final JcrChildPage page, final String variant, final int maxNodes)
+            throws RepositoryException {
+        final Fingerprint fingerprint = new Fingerprint(variant, maxNodes);
+        if (!fingerprint.addNode(node, depth, projection, page)) {
+            return null;
+        }
+        return fingerprint.toValidator();
+    }
+
+    /**
+     * Checks whether a request is conditional, in which case the validators of its representation are needed before
+     * the representation is built.
+     *
+     * @param headers the {@link javax.ws.rs.core.HttpHeaders} of the request
+     * @return <code>true</code> if the request has an If-None-Match or If-Modified-Since header
+     */
+    public static boolean isConditional(final HttpHeaders headers) {
+        return hasHeader(headers, HttpHeaders.IF_NONE_MATCH) || hasHeader(headers, HttpHeaders.IF_MODIFIED_SINCE);
+    }
+
+    private static boolean hasHeader(final HttpHeaders headers, final String name) {
+        final List<String> values = headers.getRequestHeader(name);
+        return values != null && !values.isEmpty();
+    }
+
+    /**
+     * Creates the validators of the representation of a property.
+     *
+     * @param property the {@link javax.jcr.Property}
+     * @param variant  identifies the variant of the representation, e.g. the request URI and the user
+     * @return the validators
+     * @throws RepositoryException
+     */
+    public static JcrValidator forProperty(final Property property, final String variant) throws RepositoryException {
+        final Fingerprint fingerprint = new Fingerprint(variant, 0);
+        fingerprint.addProperty(property);
+        fingerprint.lastModified(getLastModified(property.getParent()));
+        return fingerprint.toValidator();
+    }
+
+    /**
+     * Gets the last modification date of a node, which is the latest of its <code>jcr:lastModified</code> and
+     * <code>hippostdpubwf:lastModificationDate</code> properties.
+     *
+     * @param node the {@link javax.jcr.Node}
+     * @return the last modification date, or <code>null</code> if the node has neither property
+     * @throws RepositoryException
+     */
+    public static Calendar getLastModified(final Node node) throws RepositoryException {
+        Calendar lastModified = null;
+        if (node.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
+            lastModified = node.getProperty(JcrConstants.JCR_LASTMODIFIED).getDate();
+        }
+        if (node.hasProperty(HIPPOSTDPUBWF_LAST_MODIFICATION_DATE)) {
+            final Calendar modificationDate = node.getProperty(HIPPOSTDPUBWF_LAST_MODIFICATION_DATE).getDate();
+            if (lastModified == null || modificationDate.after(lastModified)) {
+                lastModified = modificationDate;
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Evaluates the preconditions of a request against these validators.
+     *
+     * @param request the {@link javax.ws.rs.core.Request}
+     * @param headers the {@link javax.ws.rs.core.HttpHeaders} of the request
+     * @return a builder of the 304 or 412 response, or <code>null</code> if the representation has to be returned
+     */
+    public Response.ResponseBuilder evaluatePreconditions(final Request request, final HttpHeaders headers) {
+        final Response.ResponseBuilder builder = evaluatePreconditions(request, headers, lastModified, entityTag);
+        return builder != null ? addHeaders(builder) : null;
+    }
+
+    /**
+     * Evaluates the preconditions of a request against an entity tag and an optional last modification date. Unlike
+     * {@link javax.ws.rs.core.Request#evaluatePreconditions(java.util.Date, javax.ws.rs.core.EntityTag)}, the date is
+     * ignored when the request has an <code>If-None-Match</code> header, so a changed entity is never reported as not
+     * modified because its modification date has not changed.
+     *
+     * @param request      the {@link javax.ws.rs.core.Request}
+     * @param headers      the {@link javax.ws.rs.core.HttpHeaders} of the request
+     * @param lastModified the last modification date, or <code>null</code> if unknown
+     * @param entityTag    the entity tag
+     * @return a builder of the 304 or 412 response, or <code>null</code> if the representation has to be returned
+     */
+    public static Response.ResponseBuilder evaluatePreconditions(final Request request, final HttpHeaders headers,
+                                                                 final Date lastModified, final EntityTag entityTag) {
+        final List<String> ifNoneMatch = headers.getRequestHeader(HttpHeaders.IF_NONE_MATCH);
+        if (lastModified == null || (ifNoneMatch != null && !ifNoneMatch.isEmpty())) {
+            return request.evaluatePreconditions(entityTag);
+        }
+        return request.evaluatePreconditions(lastModified, entityTag);
+    }
+
+    /**
+     * Adds the ETag and Last-Modified headers to a response.
+     *
+     * @param builder the builder of the response
+     * @return the builder
+     */
+    public Response.ResponseBuilder addHeaders(final Response.ResponseBuilder builder) {
+        builder.tag(entityTag);
+        if (lastModified != null) {
+            builder.lastModified(lastModified);
+        }
+        return builder;
+    }
+
+    public EntityTag getEntityTag() {
+        return entityTag;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    private static final class Fingerprint {
+
+        private final MessageDigest digest;
+        private final int maxNodes;
+        private int nodes;
+        private Calendar lastModified;
+        private boolean lastModifiedKnown = true;
+
+        private Fingerprint(final String variant, final int maxNodes) {
+            this.maxNodes = maxNodes;
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            update(variant);
+        }
+
+        private boolean addNode(final Node node, final int depth, final JcrNodeProjection projection,
+                                final JcrChildPage page) throws RepositoryException {
+            if (maxNodes > 0 && ++nodes > maxNodes) {
+                return false;
+            }
+            update(node.getIdentifier());
+            update(node.getPath());
+            update(node.getPrimaryNodeType().getName());
+            final NodeType[] mixinNodeTypes = node.getMixinNodeTypes();
+            if (mixinNodeTypes != null) {
+                for (NodeType mixinNodeType : mixinNodeTypes) {
+                    update(mixinNodeType.getName());
+                }
+            }
+            lastModified(getLastModified(node));
+            // writes do not necessarily update the modification date, so the values themselves are hashed
+            final PropertyIterator properties = projection.getProperties(node);
+            while (properties.hasNext()) {
+                final Property property = properties.nextProperty();
+                if (projection.isIncluded(property.getName())) {
+                    addProperty(property);
+                }
+            }
+            update(String.valueOf(node.getNodes().getSize()));
+
+            if (projection.isChildNamesOnly() || depth > 0) {
+                final NodeIterator childNodes = page != null ? page.getNodes(node) : node.getNodes();
+                while (childNodes.hasNext() && (page == null || page.hasRoom())) {
+                    final Node childNode = childNodes.nextNode();
+                    if (projection.isChildNamesOnly()) {
+                        if (maxNodes > 0 && ++nodes > maxNodes) {
+                            return false;
+                        }
+                        update(childNode.getName());
+                        update(String.valueOf(childNode.getIndex()));
+                    } else if (!addNode(childNode, depth - 1, projection, null)) {
+                        return false;
+                    }
+                    if (page != null) {
+                        page.added(childNode);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void addProperty(final Property property) throws RepositoryException {
+            update(property.getName());
+            final int type = property.getType();
+            update(String.valueOf(type));
+            if (property.isMultiple()) {
+                if (type == PropertyType.BINARY) {
+                    for (long length : property.getLengths()) {
+                        update(String.valueOf(length));
+                    }
+                } else {
+                    for (Value value : property.getValues()) {
+                        update(value.getString());
+                    }
+                }
+                update("[]");
+            } else if (type == PropertyType.BINARY) {
+                update(String.valueOf(property.getLength()));
+            } else {
+                update(property.getString());
+            }
+        }
+
+        private void lastModified(final Calendar modified) {
+            if (modified == null) {
+                lastModifiedKnown = false;
+            } else if (lastModified == null || modified.after(lastModified)) {
+                lastModified = modified;
+            }
+        }
+
+        private void update(final String value) {
+            try {
+                digest.update(String.valueOf(value).getBytes(ENCODING));
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+            digest.update(SEPARATOR);
+        }
+
+        private JcrValidator toValidator() {
+            final EntityTag entityTag = new EntityTag(new String(Hex.encodeHex(digest.digest())), true);
+            final Date date = lastModifiedKnown && lastModified != null ? lastModified.getTime() : null;
+            return new JcrValidator(entityTag, date);
+        }
+    }
+}
@@ -18,6 +18,8 @@ package org.onehippo.forge.webservices.jaxrs.jcr.util;
 
 public abstract class ResponseConstants {
 
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
     public static final String STATUS_MESSAGE_OK = "OK";
     public static final String STATUS_MESSAGE_DELETED = "Deleted";
     public static final String STATUS_MESSAGE_CREATED = "Created";
@@ -27,7 +29,17 @@ public abstract class ResponseConstants {
     public static final String STATUS_MESSAGE_ACCESS_DENIED = "Access denied";
     public static final String STATUS_MESSAGE_NODE_NOT_FOUND = "Node not found";
     public static final String STATUS_MESSAGE_PROPERTY_NOT_FOUND = "Property not found";
+    public static final String STATUS_MESSAGE_BINARY_NOT_FOUND = "Binary not found";
     public static final String STATUS_MESSAGE_ERROR_OCCURRED = "Error occurred";
+    public static final String STATUS_MESSAGE_READ_BUDGET_EXCEEDED = "Read budget of the request exceeded";
+    public static final String STATUS_MESSAGE_PARTIAL_CONTENT = "Partial content";
+    public static final String STATUS_MESSAGE_NOT_MODIFIED = "Not modified";
+    public static final String STATUS_MESSAGE_RANGE_NOT_SATISFIABLE = "Requested range not satisfiable";
+    public static final String STATUS_MESSAGE_UPLOAD_TOO_LARGE = "Upload exceeds the maximum size";
+    public static final String STATUS_MESSAGE_EXPORT_CURSOR_NOT_FOUND = "Node to resume the export after not found";
+    public static final String STATUS_MESSAGE_PATCH_CONFLICT = "Patch does not apply to the current state of the node";
+    public static final String STATUS_MESSAGE_DESTINATION_CONFLICT = "Destination already exists or its parent does not exist";
+    public static final String STATUS_MESSAGE_TOKENS_UNAVAILABLE = "Tokens need impersonation to be configured";
 
     private ResponseConstants() {
     }
@@ -56,12 +56,15 @@ import org.apache.jackrabbit.util.ISO9075;
 import org.apache.jackrabbit.util.Text;
 import org.hippoecm.repository.api.HippoNodeType;
 import org.hippoecm.repository.api.NodeNameCodec;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
 import org.onehippo.forge.webservices.jaxrs.exception.ResponseExceptionRepresentation;
 import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.ResponseConstants;
 import org.onehippo.forge.webservices.jaxrs.management.model.Group;
 import org.onehippo.forge.webservices.jaxrs.management.model.GroupCollection;
+import org.onehippo.forge.webservices.session.SessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -192,6 +195,7 @@ public class GroupsResource {
             UriBuilder ub = ui.getAbsolutePathBuilder().path(this.getClass(), "getGroupByName");
             newUserUri = ub.build(node.getName());
             session.save();
+            invalidatePermissions();
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -231,6 +235,7 @@ public class GroupsResource {
             }
             update(group);
             session.save();
+            invalidatePermissions();
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -258,6 +263,7 @@ public class GroupsResource {
             }
             groupNode.remove();
             session.save();
+            invalidatePermissions();
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -265,6 +271,25 @@ public class GroupsResource {
         return Response.noContent().build();
     }
 
+    /**
+     * Invalidates the pooled sessions and clears the cached responses, since group memberships decide what their
+     * users are allowed to read and sessions keep the permissions they logged in with.
+     */
+    private void invalidatePermissions() {
+        final SessionPool readSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_READ_SESSION_POOL);
+        if (readSessionPool != null) {
+            readSessionPool.clear();
+        }
+        final SessionPool writeSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_WRITE_SESSION_POOL);
+        if (writeSessionPool != null) {
+            writeSessionPool.clear();
+        }
+        final NodeResponseCache responseCache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
     public boolean exists(String groupname) {
         return getGroupNodeByName(groupname) != null;
     }
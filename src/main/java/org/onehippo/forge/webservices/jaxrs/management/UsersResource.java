@@ -63,6 +63,8 @@ import org.apache.jackrabbit.util.Text;
 import org.hippoecm.repository.PasswordHelper;
 import org.hippoecm.repository.api.HippoNodeType;
 import org.hippoecm.repository.api.NodeNameCodec;
+import org.onehippo.forge.webservices.AuthenticationConstants;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
 import org.onehippo.forge.webservices.jaxrs.exception.ResponseExceptionRepresentation;
 import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
 import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
@@ -71,6 +73,9 @@ import org.onehippo.forge.webservices.jaxrs.management.model.Group;
 import org.onehippo.forge.webservices.jaxrs.management.model.GroupCollection;
 import org.onehippo.forge.webservices.jaxrs.management.model.User;
 import org.onehippo.forge.webservices.jaxrs.management.model.UserCollection;
+import org.onehippo.forge.webservices.security.CredentialCache;
+import org.onehippo.forge.webservices.security.TokenStore;
+import org.onehippo.forge.webservices.session.SessionPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -276,6 +281,7 @@ public class UsersResource {
             }
             updateUserNodeFromModel(userNode, user);
             userNode.getSession().save();
+            invalidateCredentials(username);
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -304,6 +310,7 @@ public class UsersResource {
             }
             userNode.remove();
             session.save();
+            invalidateCredentials(username);
         } catch (RepositoryException e) {
             log.error("Error: {}", e);
             throw new WebApplicationException(e);
@@ -434,6 +441,39 @@ public class UsersResource {
     }
 
 
+    /**
+     * Removes the cached credentials and pooled sessions of a user, so the next request of the user is verified by
+     * the repository again. Needs to be called after a password change or the removal of a user has been saved.
+     * <p>
+     * The cached responses are cleared as well, so they are rendered again with the permissions of the user's new
+     * sessions. Clearing them has no effect unless the pooled sessions, which keep the permissions they logged in
+     * with, are invalidated first.
+     *
+     * @param username the name of the user
+     */
+    private void invalidateCredentials(final String username) {
+        final CredentialCache credentialCache = (CredentialCache) request.getAttribute(AuthenticationConstants.HIPPO_CREDENTIAL_CACHE);
+        if (credentialCache != null) {
+            credentialCache.invalidate(username);
+        }
+        final SessionPool readSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_READ_SESSION_POOL);
+        if (readSessionPool != null) {
+            readSessionPool.invalidate(username);
+        }
+        final SessionPool writeSessionPool = (SessionPool) request.getAttribute(AuthenticationConstants.HIPPO_WRITE_SESSION_POOL);
+        if (writeSessionPool != null) {
+            writeSessionPool.invalidate(username);
+        }
+        final TokenStore tokenStore = (TokenStore) request.getAttribute(AuthenticationConstants.HIPPO_TOKEN_STORE);
+        if (tokenStore != null) {
+            tokenStore.invalidate(username);
+        }
+        final NodeResponseCache responseCache = (NodeResponseCache) request.getAttribute(AuthenticationConstants.HIPPO_RESPONSE_CACHE);
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
     private User createUserFromNode(final Node userNode) throws RepositoryException {
         User user = new User(NodeNameCodec.decode(userNode.getName()));
         user.setPath(userNode.getPath().substring(1));
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * In-memory cache of credentials that have been verified by the repository. For every user only a salted digest of
+ * the last verified password is kept, never the password itself. Entries expire after the time to live and the
+ * number of cached users is bounded.
+ * <p>
+ * Credentials must be invalidated when a password changes or a user is removed. To prevent a login that was verified
+ * with an old password from being cached after such an invalidation, callers obtain the current generation before
+ * logging in and pass it to {@link #put(String, String, long)}.
+ */
+public class CredentialCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+    public static final long DEFAULT_TIME_TO_LIVE = 5 * 60 * 1000L;
+
+    private static final int SALT_LENGTH = 16;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final byte[] salt;
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    public CredentialCache() {
+        salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Checks whether the credentials have been verified before and have not expired yet.
+     *
+     * @param username the username
+     * @param password the password
+     * @return <code>true</code> if the credentials are known to be valid, <code>false</code> otherwise
+     */
+    public boolean verify(final String username, final String password) {
+        if (username == null || password == null) {
+            return false;
+        }
+        final Entry entry = entries.get(username);
+        if (entry != null) {
+            if (entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(username, entry);
+            } else if (MessageDigest.isEqual(entry.digest, digest(username, password))) {
+                hits.incrementAndGet();
+                return true;
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the current generation of the cache, which changes on every invalidation.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Caches credentials that have just been verified by the repository.
+     *
+     * @param username   the username
+     * @param password   the password
+     * @param generation the generation of the cache obtained before the credentials were verified
+     */
+    public void put(final String username, final String password, final long generation) {
+        if (username == null || password == null || maxSize <= 0 || timeToLive <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (entries.size() >= maxSize && !entries.containsKey(username)) {
+            evict(now);
+        }
+        entries.put(username, new Entry(digest(username, password), now + timeToLive));
+        if (generation != this.generation.get()) {
+            // an invalidation happened while the credentials were being verified
+            entries.remove(username);
+        }
+    }
+
+    /**
+     * Removes the cached credentials of a user.
+     *
+     * @param username the username
+     */
+    public void invalidate(final String username) {
+        generation.incrementAndGet();
+        if (username != null) {
+            entries.remove(username);
+        }
+    }
+
+    /**
+     * Removes all cached credentials.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(final long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    private void evict(final long now) {
+        String firstToExpire = null;
+        long firstExpiry = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            final Entry value = entry.getValue();
+            if (value.isExpired(now)) {
+                entries.remove(entry.getKey(), value);
+            } else if (value.expires < firstExpiry) {
+                firstExpiry = value.expires;
+                firstToExpire = entry.getKey();
+            }
+        }
+        if (firstToExpire != null && entries.size() >= maxSize) {
+            entries.remove(firstToExpire);
+        }
+    }
+
+    private byte[] digest(final String username, final String password) {
+        try {
+            final byte[] credentials = (username + '\u0000' + password).getBytes("UTF-8");
+            final byte[] input = new byte[salt.length + credentials.length];
+            System.arraycopy(salt, 0, input, 0, salt.length);
+            System.arraycopy(credentials, 0, input, salt.length, credentials.length);
+            return DigestUtils.sha256(input);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final byte[] digest;
+        private final long expires;
+
+        private Entry(final byte[] digest, final long expires) {
+            this.digest = digest;
+            this.expires = expires;
+        }
+
+        private boolean isExpired(final long now) {
+            return now >= expires;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of failed logins per user and per client address, so that repeated failures can be rejected before
+ * they reach the repository. After a number of free attempts, every failure doubles the time during which further
+ * attempts are rejected, up to a maximum. The failures of a user or address are forgotten after a successful login or
+ * after a quiet period as long as the maximum backoff.
+ * <p>
+ * Failures are kept in a fixed number of stripes, each guarded by its own lock and bounded in size, so contention
+ * stays low and memory use stays bounded even when failures come from many different addresses. When a stripe is
+ * full, the entry that has not been used for the longest time is dropped.
+ */
+public class LoginThrottle {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final int DEFAULT_MAX_FAILURES = 5;
+    public static final long DEFAULT_BACKOFF = 1000L;
+    public static final long DEFAULT_MAX_BACKOFF = 60 * 1000L;
+
+    private static final int STRIPES = 16;
+    private static final String USER_PREFIX = "user:";
+    private static final String ADDRESS_PREFIX = "address:";
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile int maxFailures = DEFAULT_MAX_FAILURES;
+    private volatile long backoff = DEFAULT_BACKOFF;
+    private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    public LoginThrottle() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Checks whether a login attempt has to be rejected.
+     *
+     * @param username the username, or <code>null</code>
+     * @param address  the address of the client, or <code>null</code>
+     * @return the time in milliseconds until a new attempt is allowed, or <code>0</code> if the attempt is allowed
+     */
+    public long getRetryDelay(final String username, final String address) {
+        final long now = System.currentTimeMillis();
+        final long delay = Math.max(getRetryDelay(USER_PREFIX, username, now),
+                getRetryDelay(ADDRESS_PREFIX, address, now));
+        if (delay > 0) {
+            throttled.incrementAndGet();
+        }
+        return delay;
+    }
+
+    /**
+     * Records a failed login.
+     *
+     * @param username the username, or <code>null</code>
+     * @param address  the address of the client, or <code>null</code>
+     */
+    public void loginFailed(final String username, final String address) {
+        final long now = System.currentTimeMillis();
+        failures.incrementAndGet();
+        recordFailure(USER_PREFIX, username, now);
+        recordFailure(ADDRESS_PREFIX, address, now);
+    }
+
+    /**
+     * Forgets the failed logins of a user after a successful login. Failures of the client address are kept, so a
+     * client can not reset its own backoff by logging in with an account it owns.
+     *
+     * @param username the username
+     */
+    public void loginSucceeded(final String username) {
+        if (username == null) {
+            return;
+        }
+        final String key = USER_PREFIX + username;
+        final Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    /**
+     * Forgets all failed logins.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getMaxFailures() {
+        return maxFailures;
+    }
+
+    public void setMaxFailures(final int maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    public long getBackoff() {
+        return backoff;
+    }
+
+    public void setBackoff(final long backoff) {
+        this.backoff = backoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(final long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    private long getRetryDelay(final String prefix, final String value, final long now) {
+        if (value == null) {
+            return 0;
+        }
+        final String key = prefix + value;
+        final Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            final Failures entry = stripe.get(key);
+            if (entry == null) {
+                return 0;
+            }
+            if (isExpired(entry, now)) {
+                stripe.remove(key);
+                return 0;
+            }
+            return Math.max(0, entry.blockedUntil - now);
+        }
+    }
+
+    private void recordFailure(final String prefix, final String value, final long now) {
+        if (value == null) {
+            return;
+        }
+        final String key = prefix + value;
+        final Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            Failures entry = stripe.get(key);
+            if (entry == null || isExpired(entry, now)) {
+                entry = new Failures();
+                stripe.put(key, entry);
+            }
+            entry.count++;
+            entry.lastFailure = now;
+            if (entry.count >= maxFailures) {
+                final int doublings = Math.min(entry.count - maxFailures, 30);
+                entry.blockedUntil = now + Math.min(backoff << doublings, maxBackoff);
+            }
+        }
+    }
+
+    private boolean isExpired(final Failures entry, final long now) {
+        return now - entry.lastFailure > maxBackoff;
+    }
+
+    private Stripe getStripe(final String key) {
+        final int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private final class Stripe extends LinkedHashMap<String, Failures> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Stripe() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Failures> eldest) {
+            return size() > Math.max(1, maxSize / STRIPES);
+        }
+    }
+
+    private static final class Failures {
+
+        private int count;
+        private long lastFailure;
+        private long blockedUntil;
+    }
+}
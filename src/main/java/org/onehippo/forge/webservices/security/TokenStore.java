@@ -0,0 +1,299 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Issues and validates short-lived bearer tokens for users whose credentials have been verified by the repository.
+ * <p>
+ * By default tokens are random strings that are kept in memory together with the user they were issued for, so
+ * validating a token is a single lookup. When a secret is configured, tokens are signed with HMAC-SHA256 instead and
+ * carry the user and the expiry time themselves, so they can be validated without being stored. Neither kind of
+ * token keeps the password of the user, so the caller needs another way than logging in to obtain a session for
+ * them, such as a session pool or impersonation.
+ * <p>
+ * Tokens must be invalidated when a password changes or a user is removed, see {@link #invalidate(String)}.
+ */
+public class TokenStore {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 15 * 60 * 1000L;
+
+    private static final int TOKEN_LENGTH = 32;
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '.';
+
+    private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+    private final ConcurrentMap<String, Long> revocations = new ConcurrentHashMap<String, Long>();
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+    private volatile SecretKeySpec secret;
+
+    /**
+     * Issues a token for credentials that have been verified by the repository.
+     *
+     * @param username the username
+     * @return the token
+     */
+    public String issue(final String username) {
+        if (username == null) {
+            throw new IllegalArgumentException("A token can not be issued without a username");
+        }
+        final long now = System.currentTimeMillis();
+        final long expires = now + timeToLive;
+        final SecretKeySpec key = secret;
+        final String token;
+        if (key != null) {
+            final String payload = encode(username) + SEPARATOR + now + SEPARATOR + expires;
+            token = payload + SEPARATOR + Base64.encodeBase64URLSafeString(sign(key, payload));
+        } else {
+            if (tokens.size() >= maxSize) {
+                evict(now);
+            }
+            final byte[] bytes = new byte[TOKEN_LENGTH];
+            random.nextBytes(bytes);
+            token = Base64.encodeBase64URLSafeString(bytes);
+            tokens.put(token, new Token(username, now, expires));
+        }
+        issued.incrementAndGet();
+        return token;
+    }
+
+    /**
+     * Validates a token.
+     *
+     * @param token the token
+     * @return the {@link Token} with the identity the token was issued for, or <code>null</code> if the token is
+     * unknown, has been tampered with, has expired or has been invalidated
+     */
+    public Token validate(final String token) {
+        if (token != null) {
+            final long now = System.currentTimeMillis();
+            final Token value = secret != null ? verifySignedToken(token) : tokens.get(token);
+            if (value != null) {
+                if (!value.isExpired(now) && !isRevoked(value)) {
+                    hits.incrementAndGet();
+                    return value;
+                }
+                tokens.remove(token, value);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Invalidates all tokens that have been issued for a user.
+     *
+     * @param username the username
+     */
+    public void invalidate(final String username) {
+        if (username == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        revocations.put(username, now);
+        for (Iterator<Token> iterator = tokens.values().iterator(); iterator.hasNext(); ) {
+            if (username.equals(iterator.next().username)) {
+                iterator.remove();
+            }
+        }
+        // revocations only need to be remembered as long as the tokens they apply to are valid
+        for (Iterator<Long> iterator = revocations.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next() > timeToLive) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all stored tokens.
+     */
+    public void clear() {
+        tokens.clear();
+    }
+
+    public boolean isSigned() {
+        return secret != null;
+    }
+
+    /**
+     * Sets the secret used for signing tokens. Stored tokens are used when no secret is set.
+     *
+     * @param secret the secret, or <code>null</code>
+     */
+    public void setSecret(final String secret) {
+        if (StringUtils.isEmpty(secret)) {
+            this.secret = null;
+        } else {
+            this.secret = new SecretKeySpec(getBytes(secret), HMAC_ALGORITHM);
+        }
+        tokens.clear();
+    }
+
+    public int getSize() {
+        return tokens.size();
+    }
+
+    public long getIssued() {
+        return issued.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(final long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    private Token verifySignedToken(final String token) {
+        final int signatureIndex = token.lastIndexOf(SEPARATOR);
+        if (signatureIndex < 0) {
+            return null;
+        }
+        final String payload = token.substring(0, signatureIndex);
+        final byte[] signature = Base64.decodeBase64(token.substring(signatureIndex + 1));
+        if (!MessageDigest.isEqual(signature, sign(secret, payload))) {
+            return null;
+        }
+        final String[] parts = StringUtils.split(payload, SEPARATOR);
+        if (parts.length != 3) {
+            return null;
+        }
+        try {
+            final String username = new String(Base64.decodeBase64(parts[0]), "UTF-8");
+            return new Token(username, Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        } catch (NumberFormatException e) {
+            return null;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isRevoked(final Token token) {
+        final Long revoked = revocations.get(token.username);
+        return revoked != null && token.issued <= revoked;
+    }
+
+    private void evict(final long now) {
+        String firstToExpire = null;
+        long firstExpiry = Long.MAX_VALUE;
+        for (Map.Entry<String, Token> entry : tokens.entrySet()) {
+            final Token value = entry.getValue();
+            if (value.isExpired(now)) {
+                tokens.remove(entry.getKey(), value);
+            } else if (value.expires < firstExpiry) {
+                firstExpiry = value.expires;
+                firstToExpire = entry.getKey();
+            }
+        }
+        if (firstToExpire != null && tokens.size() >= maxSize) {
+            tokens.remove(firstToExpire);
+        }
+    }
+
+    private static byte[] sign(final SecretKeySpec key, final String payload) {
+        try {
+            // Mac instances are not thread-safe, so every signature gets its own instance
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(getBytes(payload));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(final String value) {
+        return Base64.encodeBase64URLSafeString(getBytes(value));
+    }
+
+    private static byte[] getBytes(final String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The identity a token has been issued for.
+     */
+    public static final class Token {
+
+        private final String username;
+        private final long issued;
+        private final long expires;
+
+        private Token(final String username, final long issued, final long expires) {
+            this.username = username;
+            this.issued = issued;
+            this.expires = expires;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public long getExpires() {
+            return expires;
+        }
+
+        private boolean isExpired(final long now) {
+            return now >= expires;
+        }
+    }
+}
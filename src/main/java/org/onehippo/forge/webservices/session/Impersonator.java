@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.LoginException;
+import javax.jcr.Session;
+
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates sessions for users by impersonating them from one long-lived session of a privileged user. Impersonating a
+ * user does not go through the login modules of the repository, so the password of the user is not hashed again.
+ * Impersonation is only enabled when the credentials of the privileged user have been configured, and must only be
+ * used for users whose credentials have already been verified.
+ */
+public class Impersonator {
+
+    private static final Logger log = LoggerFactory.getLogger(Impersonator.class);
+
+    private final AtomicLong impersonations = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private volatile String username;
+    private volatile String password;
+    private Session systemSession;
+
+    public boolean isEnabled() {
+        return username != null && password != null;
+    }
+
+    /**
+     * Impersonates a user.
+     *
+     * @param userId the id of the user to impersonate
+     * @return a new {@link javax.jcr.Session} for the user, or <code>null</code> when impersonation is disabled or
+     * failed
+     */
+    public Session impersonate(final String userId) {
+        if (!isEnabled() || userId == null) {
+            return null;
+        }
+        try {
+            final Session session;
+            // JCR sessions are not thread-safe, so access to the shared session is serialized
+            synchronized (this) {
+                session = JcrSessionUtil.impersonateSession(getSystemSession(), userId);
+            }
+            if (session != null) {
+                impersonations.incrementAndGet();
+                return session;
+            }
+        } catch (LoginException e) {
+            log.warn("Unable to impersonate user '{}': {}", userId, e.getMessage());
+        }
+        failures.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Logs out the session of the privileged user.
+     */
+    public synchronized void close() {
+        if (systemSession != null && systemSession.isLive()) {
+            systemSession.logout();
+        }
+        systemSession = null;
+    }
+
+    public long getImpersonations() {
+        return impersonations.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(final String username) {
+        this.username = username;
+        close();
+    }
+
+    public void setPassword(final String password) {
+        this.password = password;
+        close();
+    }
+
+    private Session getSystemSession() throws LoginException {
+        if (systemSession == null || !systemSession.isLive()) {
+            systemSession = JcrSessionUtil.createSession(username, password);
+            if (systemSession == null) {
+                throw new LoginException("Unable to log in as '" + username + "'");
+            }
+        }
+        return systemSession;
+    }
+}
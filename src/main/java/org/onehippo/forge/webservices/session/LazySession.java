@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import javax.jcr.LoginException;
+import javax.jcr.Session;
+
+/**
+ * The session of an authenticated request, which is only acquired when a resource asks for it. Requests that do not
+ * need the repository, like the system information endpoints, never acquire a session at all.
+ */
+public abstract class LazySession {
+
+    private final String username;
+    private Session session;
+    private boolean released;
+
+    /**
+     * Creates a session that will be acquired on first use.
+     *
+     * @param username the user the session is for
+     */
+    protected LazySession(final String username) {
+        this.username = username;
+    }
+
+    /**
+     * Creates a session that has already been acquired, e.g. because the credentials of the request had to be
+     * verified by logging in.
+     *
+     * @param username the user the session is for
+     * @param session  the session
+     */
+    protected LazySession(final String username, final Session session) {
+        this.username = username;
+        this.session = session;
+    }
+
+    /**
+     * Returns the session, acquiring it on the first call.
+     *
+     * @return a {@link javax.jcr.Session}, or <code>null</code> if no session could be acquired
+     * @throws LoginException if the credentials of the request are no longer valid
+     */
+    public synchronized Session getSession() throws LoginException {
+        if (released) {
+            throw new IllegalStateException("The session of user '" + username + "' has already been released");
+        }
+        if (session == null) {
+            session = acquire();
+        }
+        return session;
+    }
+
+    public synchronized boolean isAcquired() {
+        return session != null;
+    }
+
+    /**
+     * Detaches the session, after which it can no longer be acquired.
+     *
+     * @return the session if it was acquired, <code>null</code> otherwise
+     */
+    public synchronized Session release() {
+        released = true;
+        final Session acquired = session;
+        session = null;
+        return acquired;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Acquires the session.
+     *
+     * @return a {@link javax.jcr.Session}, or <code>null</code> if no session could be acquired
+     * @throws LoginException if the credentials of the request are no longer valid
+     */
+    protected abstract Session acquire() throws LoginException;
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of live JCR sessions, grouped by a pool key such as the user the sessions belong to. The pool does not verify
+ * credentials: callers must only borrow a session for a key after the caller of the request has been authenticated
+ * for that key.
+ * <p>
+ * Sessions are refreshed without keeping changes when they are borrowed and when they are released, so a pooled
+ * session never carries transient state from one request to the next. Sessions that have been idle for longer than
+ * the maximum idle time are logged out. Eviction is performed while the pool is being used, so no background thread
+ * is needed.
+ * <p>
+ * The permissions of a session are fixed when it logs in, so sessions are also logged out once they are older than
+ * the maximum age, and all pooled sessions of a user must be invalidated when the permissions of the user change.
+ * To prevent a session that was in use during such an invalidation from being pooled afterwards, callers obtain the
+ * current generation before borrowing or creating a session and pass it to {@link #release(String, Session, long)}.
+ * <p>
+ * A read-only pool is meant for requests that never modify the repository. Its sessions are not refreshed, since a
+ * session without pending changes already sees the latest persisted state, and sessions that do have pending changes
+ * are logged out instead of being pooled.
+ */
+public class SessionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionPool.class);
+
+    public static final int DEFAULT_MAX_IDLE_PER_KEY = 4;
+    public static final int DEFAULT_MAX_IDLE = 256;
+    public static final long DEFAULT_MAX_IDLE_TIME = 5 * 60 * 1000L;
+    public static final long DEFAULT_MAX_AGE = 30 * 60 * 1000L;
+
+    private static final long EVICTION_INTERVAL = 30 * 1000L;
+
+    private final ConcurrentMap<String, BlockingDeque<PooledSession>> idleSessions =
+            new ConcurrentHashMap<String, BlockingDeque<PooledSession>>();
+    // sessions that have been borrowed keep their creation time until they are released
+    private final Map<Session, Long> borrowedSessions = Collections.synchronizedMap(new WeakHashMap<Session, Long>());
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private volatile int maxIdlePerKey = DEFAULT_MAX_IDLE_PER_KEY;
+    private volatile int maxIdle = DEFAULT_MAX_IDLE;
+    private volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+    private volatile long maxAge = DEFAULT_MAX_AGE;
+    private volatile long lastEviction = System.currentTimeMillis();
+    private volatile boolean readOnly;
+
+    /**
+     * Borrows an idle session for the pool key.
+     *
+     * @param key the pool key
+     * @return a live and refreshed {@link javax.jcr.Session} or <code>null</code> if no idle session is available
+     */
+    public Session borrow(final String key) {
+        final BlockingDeque<PooledSession> deque = key != null ? idleSessions.get(key) : null;
+        if (deque != null) {
+            final long now = System.currentTimeMillis();
+            PooledSession pooledSession;
+            while ((pooledSession = deque.pollFirst()) != null) {
+                idleCount.decrementAndGet();
+                if (isExpired(pooledSession, now) || !refresh(pooledSession.session)) {
+                    evict(pooledSession.session);
+                    continue;
+                }
+                hits.incrementAndGet();
+                borrowedSessions.put(pooledSession.session, pooledSession.created);
+                return pooledSession.session;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Returns the current generation of the pool, which changes on every invalidation.
+     *
+     * @return the current generation
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns a session that has just been created to the pool.
+     *
+     * @param key     the pool key the session was created for
+     * @param session the session
+     */
+    public void release(final String key, final Session session) {
+        release(key, session, generation.get());
+    }
+
+    /**
+     * Returns a session to the pool. The session is logged out in case the pool is full, the session can not be
+     * reused, or the pool has been invalidated since the session was borrowed or created.
+     *
+     * @param key        the pool key the session was created for
+     * @param session    the session
+     * @param generation the generation of the pool obtained before the session was borrowed or created
+     */
+    public void release(final String key, final Session session, final long generation) {
+        if (session == null) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final Long borrowed = borrowedSessions.remove(session);
+        final long created = borrowed != null ? borrowed : now;
+        if (key == null || generation != this.generation.get() || now - created > maxAge || !refresh(session)) {
+            logout(session);
+            return;
+        }
+        if (idleCount.incrementAndGet() > maxIdle) {
+            idleCount.decrementAndGet();
+            logout(session);
+        } else {
+            final BlockingDeque<PooledSession> deque = getOrCreateDeque(key);
+            final PooledSession pooledSession = new PooledSession(session, created, now);
+            if (deque.size() >= maxIdlePerKey || !deque.offerFirst(pooledSession)) {
+                idleCount.decrementAndGet();
+                logout(session);
+            } else if (idleSessions.get(key) != deque && deque.remove(pooledSession)) {
+                // the deque was evicted concurrently
+                idleCount.decrementAndGet();
+                logout(session);
+            }
+        }
+        if (now - lastEviction > EVICTION_INTERVAL) {
+            evictIdleSessions();
+        }
+    }
+
+    /**
+     * Logs out all sessions that have been idle for longer than the maximum idle time.
+     */
+    public void evictIdleSessions() {
+        final long now = System.currentTimeMillis();
+        lastEviction = now;
+        for (Map.Entry<String, BlockingDeque<PooledSession>> entry : idleSessions.entrySet()) {
+            final BlockingDeque<PooledSession> deque = entry.getValue();
+            PooledSession oldest;
+            while ((oldest = deque.peekLast()) != null && isExpired(oldest, now)) {
+                if (deque.removeLastOccurrence(oldest)) {
+                    idleCount.decrementAndGet();
+                    evict(oldest.session);
+                }
+            }
+            if (deque.isEmpty() && idleSessions.remove(entry.getKey(), deque)) {
+                drain(deque);
+            }
+        }
+    }
+
+    /**
+     * Logs out all idle sessions for a pool key.
+     *
+     * @param key the pool key
+     */
+    public void invalidate(final String key) {
+        generation.incrementAndGet();
+        final BlockingDeque<PooledSession> deque = key != null ? idleSessions.get(key) : null;
+        if (deque != null && idleSessions.remove(key, deque)) {
+            drain(deque);
+        }
+    }
+
+    /**
+     * Logs out all idle sessions.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        for (Map.Entry<String, BlockingDeque<PooledSession>> entry : idleSessions.entrySet()) {
+            if (idleSessions.remove(entry.getKey(), entry.getValue())) {
+                drain(entry.getValue());
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    public void setReadOnly(final boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    public int getMaxIdlePerKey() {
+        return maxIdlePerKey;
+    }
+
+    public void setMaxIdlePerKey(final int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(final int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    public void setMaxIdleTime(final long maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Sets the time in milliseconds after its creation after which a session is logged out instead of being reused.
+     *
+     * @param maxAge the maximum age
+     */
+    public void setMaxAge(final long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    private BlockingDeque<PooledSession> getOrCreateDeque(final String key) {
+        BlockingDeque<PooledSession> deque = idleSessions.get(key);
+        if (deque == null) {
+            final BlockingDeque<PooledSession> newDeque = new LinkedBlockingDeque<PooledSession>();
+            deque = idleSessions.putIfAbsent(key, newDeque);
+            if (deque == null) {
+                deque = newDeque;
+            }
+        }
+        return deque;
+    }
+
+    private void drain(final BlockingDeque<PooledSession> deque) {
+        PooledSession pooledSession;
+        while ((pooledSession = deque.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            evict(pooledSession.session);
+        }
+    }
+
+    private boolean isExpired(final PooledSession pooledSession, final long now) {
+        return now - pooledSession.lastUsed > maxIdleTime || now - pooledSession.created > maxAge;
+    }
+
+    private boolean refresh(final Session session) {
+        if (!session.isLive()) {
+            return false;
+        }
+        try {
+            if (readOnly) {
+                return !session.hasPendingChanges();
+            }
+            session.refresh(false);
+            return true;
+        } catch (RepositoryException e) {
+            log.debug("Unable to refresh session of user '{}'", session.getUserID(), e);
+            return false;
+        }
+    }
+
+    private void evict(final Session session) {
+        evictions.incrementAndGet();
+        logout(session);
+    }
+
+    private void logout(final Session session) {
+        if (session.isLive()) {
+            session.logout();
+        }
+    }
+
+    private static final class PooledSession {
+
+        private final Session session;
+        private final long created;
+        private final long lastUsed;
+
+        private PooledSession(final Session session, final long created, final long lastUsed) {
+            this.session = session;
+            this.created = created;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
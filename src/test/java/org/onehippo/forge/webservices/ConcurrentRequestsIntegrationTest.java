@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.Node;
+import javax.jcr.Value;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider;
+import org.hippoecm.repository.api.HippoNodeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onehippo.forge.webservices.jaxrs.management.UsersResource;
+import org.onehippo.forge.webservices.jaxrs.management.model.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a large number of concurrent clients with different credentials against the web services, to verify that
+ * requests never see each other's session and that no sessions are leaked.
+ */
+public class ConcurrentRequestsIntegrationTest extends WebservicesIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConcurrentRequestsIntegrationTest.class);
+
+    private static final int CLIENTS = 200;
+    private static final int REQUESTS_PER_CLIENT = 10;
+    private static final String STRESS_USER = "stressuser";
+    private static final String ADMIN_GROUP_PATH = "/" + HippoNodeType.CONFIGURATION_PATH + "/" + HippoNodeType.GROUPS_PATH + "/admin";
+    private static final String USERS_PATH = "/" + HippoNodeType.CONFIGURATION_PATH + "/" + HippoNodeType.USERS_PATH;
+    private static final String PROP_MEMBERS = "hipposys:members";
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        // all clients share the same address, so the clients with a wrong password would throttle all other logins
+        hippoAuthenticationRequestHandler.setMaxLoginFailures(Integer.MAX_VALUE);
+        final Node user = session.getNode(USERS_PATH).addNode(STRESS_USER, "hipposys:user");
+        user.setProperty(HippoNodeType.HIPPO_PASSWORD, UsersResource.createPasswordHash(STRESS_USER));
+        user.setProperty(HippoNodeType.HIPPO_ACTIVE, true);
+        setAdminGroupMembers(getAdminGroupMembers(true));
+        session.save();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        setAdminGroupMembers(getAdminGroupMembers(false));
+        session.getNode(USERS_PATH).getNode(STRESS_USER).remove();
+        session.save();
+        super.tearDown();
+    }
+
+    @Test
+    public void testConcurrentClientsDoNotShareOrLeakSessions() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger completed = new AtomicInteger();
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+
+        for (int i = 0; i < CLIENTS; i++) {
+            final String username;
+            final String password;
+            switch (i % 3) {
+                case 0:
+                    username = "admin";
+                    password = "admin";
+                    break;
+                case 1:
+                    username = STRESS_USER;
+                    password = STRESS_USER;
+                    break;
+                default:
+                    username = STRESS_USER;
+                    password = "wrong";
+            }
+            executor.execute(new ClientRunner(username, password, start, completed, failures));
+        }
+
+        final long begin = System.currentTimeMillis();
+        start.countDown();
+        executor.shutdown();
+        assertTrue("Clients did not finish in time", executor.awaitTermination(5, TimeUnit.MINUTES));
+        final long took = Math.max(1, System.currentTimeMillis() - begin);
+
+        log.info("Completed {} requests in {} ms ({} requests per second)",
+                new Object[]{completed.get(), took, completed.get() * 1000L / took});
+
+        assertTrue("Failures: " + failures, failures.isEmpty());
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, completed.get());
+        assertEquals("Leaked sessions", 0, hippoAuthenticationRequestHandler.getActiveSessionCount());
+        assertTrue(hippoAuthenticationRequestHandler.getReadSessionPool().getIdleCount()
+                <= hippoAuthenticationRequestHandler.getReadSessionPool().getMaxIdle());
+        assertTrue(hippoAuthenticationRequestHandler.getReadSessionPool().getHits() > 0);
+    }
+
+    private Value[] getAdminGroupMembers(final boolean includeStressUser) throws Exception {
+        final Node group = session.getNode(ADMIN_GROUP_PATH);
+        final List<Value> members = new ArrayList<Value>();
+        if (group.hasProperty(PROP_MEMBERS)) {
+            for (Value value : group.getProperty(PROP_MEMBERS).getValues()) {
+                if (!STRESS_USER.equals(value.getString())) {
+                    members.add(value);
+                }
+            }
+        }
+        if (includeStressUser) {
+            members.add(session.getValueFactory().createValue(STRESS_USER));
+        }
+        return members.toArray(new Value[members.size()]);
+    }
+
+    private void setAdminGroupMembers(final Value[] members) throws Exception {
+        session.getNode(ADMIN_GROUP_PATH).setProperty(PROP_MEMBERS, members);
+    }
+
+    private static class ClientRunner implements Runnable {
+
+        private final String username;
+        private final String password;
+        private final CountDownLatch start;
+        private final AtomicInteger completed;
+        private final List<String> failures;
+
+        private ClientRunner(final String username, final String password, final CountDownLatch start,
+                             final AtomicInteger completed, final List<String> failures) {
+            this.username = username;
+            this.password = password;
+            this.start = start;
+            this.completed = completed;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            final WebClient webClient = WebClient.create(HTTP_ENDPOINT_ADDRESS,
+                    Collections.singletonList(new JacksonJaxbJsonProvider()), username, password, null);
+            try {
+                start.await();
+                for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                    webClient.reset();
+                    webClient.path("users/me").accept(MediaType.APPLICATION_JSON);
+                    if (username.equals(password)) {
+                        final User user = webClient.get(User.class);
+                        if (!username.equals(user.getUsername())) {
+                            failures.add(username + " received the session of " + user.getUsername());
+                        }
+                    } else {
+                        final Response response = webClient.get();
+                        if (response.getStatus() != Response.Status.UNAUTHORIZED.getStatusCode()) {
+                            failures.add(username + " with a wrong password received status " + response.getStatus());
+                        }
+                    }
+                    completed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.add(username + " was interrupted");
+            } catch (WebApplicationException e) {
+                failures.add(username + " received status " + e.getResponse().getStatus());
+            }
+        }
+    }
+}
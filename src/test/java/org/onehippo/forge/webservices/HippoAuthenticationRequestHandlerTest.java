@@ -16,10 +16,33 @@
 
 package org.onehippo.forge.webservices;
 
+import java.util.Collections;
+
+import javax.jcr.Session;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.HttpHeaders;
+
 import org.apache.cxf.configuration.security.AuthorizationPolicy;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
 import org.junit.Test;
+import org.onehippo.forge.webservices.jaxrs.exception.TooManyRequestsException;
 import org.onehippo.forge.webservices.jaxrs.exception.UnauthorizedException;
+import org.onehippo.forge.webservices.security.CredentialCache;
+import org.onehippo.forge.webservices.session.LazySession;
+import org.onehippo.forge.webservices.session.SessionPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Tests for {@link org.onehippo.forge.webservices.HippoAuthenticationRequestHandler}
@@ -44,4 +67,172 @@ public class HippoAuthenticationRequestHandlerTest {
         hippoAuthenticationRequestHandler.handleRequest(message, null);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testSessionIsBoundToExchange() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        final SessionPool sessionPool = hippoAuthenticationRequestHandler.getReadSessionPool();
+        final Session session = mock(Session.class);
+        when(session.isLive()).thenReturn(true);
+        sessionPool.release("test", session);
+        final CredentialCache credentialCache = hippoAuthenticationRequestHandler.getCredentialCache();
+        credentialCache.put("test", "test", credentialCache.getGeneration());
+
+        final MessageImpl message = new MessageImpl();
+        final Exchange exchange = new ExchangeImpl();
+        message.setExchange(exchange);
+        message.put(Message.HTTP_REQUEST_METHOD, HttpMethod.GET);
+        final AuthorizationPolicy authorizationPolicy = new AuthorizationPolicy();
+        authorizationPolicy.setUserName("test");
+        authorizationPolicy.setPassword("test");
+        message.put(AuthorizationPolicy.class, authorizationPolicy);
+
+        assertNull(hippoAuthenticationRequestHandler.handleRequest(message, null));
+        final LazySession lazySession = (LazySession) exchange.get(AuthenticationConstants.HIPPO_SESSION);
+        assertFalse(lazySession.isAcquired());
+        assertEquals(1, sessionPool.getIdleCount());
+        assertSame(session, lazySession.getSession());
+        assertEquals(1, hippoAuthenticationRequestHandler.getActiveSessionCount());
+        assertEquals(0, sessionPool.getIdleCount());
+
+        hippoAuthenticationRequestHandler.handleResponse(message, null, null);
+        assertNull(exchange.get(AuthenticationConstants.HIPPO_SESSION));
+        assertEquals(0, hippoAuthenticationRequestHandler.getActiveSessionCount());
+        assertEquals(1, sessionPool.getIdleCount());
+
+        // a second response handling must not release the session twice
+        hippoAuthenticationRequestHandler.handleResponse(message, null, null);
+        assertEquals(0, hippoAuthenticationRequestHandler.getActiveSessionCount());
+        assertEquals(1, sessionPool.getIdleCount());
+        verify(session, never()).logout();
+    }
+
+    @Test
+    public void testBearerToken() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        hippoAuthenticationRequestHandler.setImpersonationUsername("admin");
+        hippoAuthenticationRequestHandler.setImpersonationPassword("admin");
+        final Session session = mock(Session.class);
+        when(session.isLive()).thenReturn(true);
+        hippoAuthenticationRequestHandler.getWriteSessionPool().release("test", session);
+        final String token = hippoAuthenticationRequestHandler.getTokenStore().issue("test");
+
+        final MessageImpl message = new MessageImpl();
+        final Exchange exchange = new ExchangeImpl();
+        message.setExchange(exchange);
+        message.put(Message.PROTOCOL_HEADERS, Collections.singletonMap(HttpHeaders.AUTHORIZATION,
+                Collections.singletonList("Bearer " + token)));
+
+        assertNull(hippoAuthenticationRequestHandler.handleRequest(message, null));
+        final LazySession lazySession = (LazySession) exchange.get(AuthenticationConstants.HIPPO_SESSION);
+        assertSame(session, lazySession.getSession());
+        hippoAuthenticationRequestHandler.handleResponse(message, null, null);
+        assertEquals(0, hippoAuthenticationRequestHandler.getActiveSessionCount());
+    }
+
+    @Test(expected = UnauthorizedException.class)
+    public void testBearerTokenNeedsImpersonation() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        final String token = hippoAuthenticationRequestHandler.getTokenStore().issue("test");
+
+        final MessageImpl message = new MessageImpl();
+        message.setExchange(new ExchangeImpl());
+        message.put(Message.PROTOCOL_HEADERS, Collections.singletonMap(HttpHeaders.AUTHORIZATION,
+                Collections.singletonList("Bearer " + token)));
+        hippoAuthenticationRequestHandler.handleRequest(message, null);
+    }
+
+    @Test(expected = UnauthorizedException.class)
+    public void testInvalidBearerToken() throws Exception {
+        final MessageImpl message = new MessageImpl();
+        message.put(Message.PROTOCOL_HEADERS, Collections.singletonMap(HttpHeaders.AUTHORIZATION,
+                Collections.singletonList("Bearer invalid")));
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        hippoAuthenticationRequestHandler.handleRequest(message, null);
+    }
+
+    @Test
+    public void testSessionIsNotAcquiredWhenUnused() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        final CredentialCache credentialCache = hippoAuthenticationRequestHandler.getCredentialCache();
+        credentialCache.put("test", "test", credentialCache.getGeneration());
+
+        final MessageImpl message = new MessageImpl();
+        final Exchange exchange = new ExchangeImpl();
+        message.setExchange(exchange);
+        final AuthorizationPolicy authorizationPolicy = new AuthorizationPolicy();
+        authorizationPolicy.setUserName("test");
+        authorizationPolicy.setPassword("test");
+        message.put(AuthorizationPolicy.class, authorizationPolicy);
+
+        assertNull(hippoAuthenticationRequestHandler.handleRequest(message, null));
+        final LazySession lazySession = (LazySession) exchange.get(AuthenticationConstants.HIPPO_SESSION);
+        hippoAuthenticationRequestHandler.handleResponse(message, null, null);
+
+        assertFalse(lazySession.isAcquired());
+        assertEquals(0, hippoAuthenticationRequestHandler.getActiveSessionCount());
+        assertEquals(0, hippoAuthenticationRequestHandler.getReadSessionPool().getMisses());
+        assertEquals(0, hippoAuthenticationRequestHandler.getWriteSessionPool().getMisses());
+    }
+
+    @Test
+    public void testSessionPoolIsRoutedByMethod() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        final Session readSession = mock(Session.class);
+        when(readSession.isLive()).thenReturn(true);
+        final Session writeSession = mock(Session.class);
+        when(writeSession.isLive()).thenReturn(true);
+        hippoAuthenticationRequestHandler.getReadSessionPool().release("test", readSession);
+        hippoAuthenticationRequestHandler.getWriteSessionPool().release("test", writeSession);
+        final CredentialCache credentialCache = hippoAuthenticationRequestHandler.getCredentialCache();
+        credentialCache.put("test", "test", credentialCache.getGeneration());
+
+        assertSame(readSession, acquireSession(hippoAuthenticationRequestHandler, HttpMethod.GET));
+        assertSame(writeSession, acquireSession(hippoAuthenticationRequestHandler, HttpMethod.POST));
+        assertEquals(1, hippoAuthenticationRequestHandler.getReadSessionPool().getIdleCount());
+        assertEquals(1, hippoAuthenticationRequestHandler.getWriteSessionPool().getIdleCount());
+        verify(readSession, never()).refresh(false);
+    }
+
+    @Test
+    public void testFailedLoginsAreThrottled() throws Exception {
+        final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        hippoAuthenticationRequestHandler.setMaxLoginFailures(1);
+        final MessageImpl message = new MessageImpl();
+        final AuthorizationPolicy authorizationPolicy = new AuthorizationPolicy();
+        authorizationPolicy.setUserName("test");
+        authorizationPolicy.setPassword("test");
+        message.put(AuthorizationPolicy.class, authorizationPolicy);
+
+        try {
+            hippoAuthenticationRequestHandler.handleRequest(message, null);
+            fail("Login should have failed");
+        } catch (UnauthorizedException e) {
+            assertEquals(1, hippoAuthenticationRequestHandler.getLoginThrottle().getFailures());
+        }
+        try {
+            hippoAuthenticationRequestHandler.handleRequest(message, null);
+            fail("Login should have been throttled");
+        } catch (TooManyRequestsException e) {
+            assertEquals(1, hippoAuthenticationRequestHandler.getLoginThrottle().getFailures());
+            assertEquals(1, hippoAuthenticationRequestHandler.getLoginThrottle().getThrottled());
+        }
+    }
+
+    private static Session acquireSession(final HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler,
+                                          final String method) throws Exception {
+        final MessageImpl message = new MessageImpl();
+        message.setExchange(new ExchangeImpl());
+        message.put(Message.HTTP_REQUEST_METHOD, method);
+        final AuthorizationPolicy authorizationPolicy = new AuthorizationPolicy();
+        authorizationPolicy.setUserName("test");
+        authorizationPolicy.setPassword("test");
+        message.put(AuthorizationPolicy.class, authorizationPolicy);
+
+        hippoAuthenticationRequestHandler.handleRequest(message, null);
+        final LazySession lazySession = (LazySession) message.getExchange().get(AuthenticationConstants.HIPPO_SESSION);
+        final Session session = lazySession.getSession();
+        hippoAuthenticationRequestHandler.handleResponse(message, null, null);
+        return session;
+    }
+
+}
@@ -32,10 +32,13 @@ import org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider;
 import org.hippoecm.repository.HippoRepositoryFactory;
 import org.junit.After;
 import org.junit.Before;
+import org.onehippo.forge.webservices.jaxrs.AuthenticationResource;
 import org.onehippo.forge.webservices.jaxrs.CustomJacksonConfig;
 import org.onehippo.forge.webservices.jaxrs.RootResource;
 import org.onehippo.forge.webservices.jaxrs.StatsResource;
 import org.onehippo.forge.webservices.jaxrs.exception.CustomWebApplicationExceptionMapper;
+import org.onehippo.forge.webservices.jaxrs.jcr.BinariesResource;
+import org.onehippo.forge.webservices.jaxrs.jcr.BulkResource;
 import org.onehippo.forge.webservices.jaxrs.jcr.NodesResource;
 import org.onehippo.forge.webservices.jaxrs.jcr.PropertiesResource;
 import org.onehippo.forge.webservices.jaxrs.jcr.QueryResource;
@@ -52,6 +55,7 @@ public abstract class WebservicesIntegrationTest extends RepositoryTestCase {
     protected static final String HTTP_ENDPOINT_ADDRESS = "http://localhost:8080/cms/rest/api";
     protected static Server cxfServer;
     protected static WebClient client;
+    protected static HippoAuthenticationRequestHandler hippoAuthenticationRequestHandler;
 
     @Before
     public void setUp() throws Exception {
@@ -65,7 +69,7 @@ public abstract class WebservicesIntegrationTest extends RepositoryTestCase {
         Object jacksonJaxbJsonProvider = new JacksonJaxbJsonProvider();
         Object crossOriginResourceSharingFilter = new CrossOriginResourceSharingFilter();
         Object customWebApplicationExceptionMapper = new CustomWebApplicationExceptionMapper();
-        Object hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
+        hippoAuthenticationRequestHandler = new HippoAuthenticationRequestHandler();
         Object apiDeclarationProvider = new ApiDeclarationProvider();
         Object resourceListingProvider = new ResourceListingProvider();
         Object customJacksonConfig = new CustomJacksonConfig();
@@ -85,10 +89,13 @@ public abstract class WebservicesIntegrationTest extends RepositoryTestCase {
         serviceClasses.add(SystemResource.class);
         serviceClasses.add(NodesResource.class);
         serviceClasses.add(PropertiesResource.class);
+        serviceClasses.add(BinariesResource.class);
         serviceClasses.add(QueryResource.class);
+        serviceClasses.add(BulkResource.class);
         serviceClasses.add(StatsResource.class);
         serviceClasses.add(UsersResource.class);
         serviceClasses.add(GroupsResource.class);
+        serviceClasses.add(AuthenticationResource.class);
 
         JAXRSServerFactoryBean sf = new JAXRSServerFactoryBean();
 
@@ -105,6 +112,13 @@ public abstract class WebservicesIntegrationTest extends RepositoryTestCase {
             cxfServer.stop();
             cxfServer.destroy();
         }
+        if (hippoAuthenticationRequestHandler != null) {
+            hippoAuthenticationRequestHandler.getReadSessionPool().clear();
+            hippoAuthenticationRequestHandler.getWriteSessionPool().clear();
+            hippoAuthenticationRequestHandler.getImpersonator().close();
+            hippoAuthenticationRequestHandler.getResponseCache().close();
+            hippoAuthenticationRequestHandler.getTokenStore().clear();
+        }
     }
 
 }
\ No newline at end of file
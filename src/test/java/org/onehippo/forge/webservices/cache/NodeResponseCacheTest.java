@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.jackrabbit.commons.iterator.EventIteratorAdapter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NodeResponseCacheTest {
+
+    private static final byte[] BODY = "{\"name\":\"test\"}".getBytes();
+
+    @Test
+    public void testCacheRenderedResponse() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        cache.cache("key", "/content", 0, null, output(BODY), cache.getGeneration()).write(response);
+
+        assertArrayEquals(BODY, response.toByteArray());
+        assertArrayEquals(BODY, cache.get("key").getBody());
+        assertNull(cache.get("other"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testSkipChangedWhileRendering() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        final long generation = cache.getGeneration();
+        cache.onEvent(events(event(Event.PROPERTY_CHANGED, "/other/title")));
+        cache.cache("key", "/content", 0, null, output(BODY), generation).write(new ByteArrayOutputStream());
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testSkipLargeResponse() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        cache.setMaxEntrySize(4);
+        cache.cache("key", "/content", 0, null, output(BODY), cache.getGeneration()).write(new ByteArrayOutputStream());
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        cache.setMaxSize(2);
+        put(cache, "first", "/a", 0);
+        put(cache, "second", "/b", 0);
+        cache.get("first");
+        put(cache, "third", "/c", 0);
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.get("first") != null);
+        assertNull(cache.get("second"));
+    }
+
+    @Test
+    public void testInvalidateWithinDepth() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        put(cache, "root", "/", 0);
+        put(cache, "folder", "/content", 0);
+        put(cache, "deepFolder", "/content", 1);
+        put(cache, "document", "/content/doc", 0);
+
+        cache.onEvent(events(event(Event.PROPERTY_CHANGED, "/content/doc/title")));
+
+        assertTrue(cache.get("root") != null);
+        assertTrue(cache.get("folder") != null);
+        assertNull(cache.get("deepFolder"));
+        assertNull(cache.get("document"));
+        assertEquals(2, cache.getInvalidations());
+    }
+
+    @Test
+    public void testInvalidateRemovedSubtree() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        put(cache, "root", "/", 0);
+        put(cache, "folder", "/content", 0);
+        put(cache, "document", "/content/doc", 0);
+        put(cache, "sibling", "/contents", 0);
+
+        cache.onEvent(events(event(Event.NODE_REMOVED, "/content")));
+
+        assertNull(cache.get("root"));
+        assertNull(cache.get("folder"));
+        assertNull(cache.get("document"));
+        assertTrue(cache.get("sibling") != null);
+    }
+
+    @Test
+    public void testClearOnConfigurationChange() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        put(cache, "folder", "/content", 0);
+        put(cache, "document", "/content/doc", 0);
+
+        final Runnable securityListener = mock(Runnable.class);
+        cache.setSecurityListener(securityListener);
+        cache.onEvent(events(event(Event.PROPERTY_CHANGED, "/hippo:configuration/hippo:users/editor/hipposys:lastlogin")));
+        assertEquals(2, cache.getSize());
+        verify(securityListener, never()).run();
+
+        cache.onEvent(events(event(Event.PROPERTY_CHANGED, "/hippo:configuration/hippo:groups/editor/hipposys:members")));
+
+        assertEquals(0, cache.getSize());
+        verify(securityListener).run();
+    }
+
+    @Test
+    public void testInvalidateChangedNode() throws Exception {
+        final NodeResponseCache cache = new NodeResponseCache();
+        put(cache, "root", "/", 0);
+        put(cache, "folder", "/content", 0);
+        put(cache, "document", "/content/doc", 0);
+        put(cache, "child", "/content/doc/child", 0);
+        put(cache, "sibling", "/content/other", 0);
+
+        final long generation = cache.getGeneration();
+        cache.invalidate("/content/doc");
+        cache.cache("rendering", "/content/other", 0, null, output(BODY), generation).write(new ByteArrayOutputStream());
+
+        assertTrue(cache.get("root") != null);
+        assertNull(cache.get("folder"));
+        assertNull(cache.get("document"));
+        assertNull(cache.get("child"));
+        assertTrue(cache.get("sibling") != null);
+        assertNull(cache.get("rendering"));
+    }
+
+    private static void put(final NodeResponseCache cache, final String key, final String path, final int depth) throws IOException {
+        cache.cache(key, path, depth, null, output(BODY), cache.getGeneration()).write(new ByteArrayOutputStream());
+    }
+
+    private static StreamingOutput output(final byte[] body) {
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                output.write(body);
+            }
+        };
+    }
+
+    private static Event event(final int type, final String path) throws Exception {
+        final Event event = mock(Event.class);
+        when(event.getType()).thenReturn(type);
+        when(event.getPath()).thenReturn(path);
+        return event;
+    }
+
+    private static EventIterator events(final Event... events) {
+        return new EventIteratorAdapter(Arrays.asList(events));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs;
+
+import java.util.Collections;
+import java.util.Map;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.codehaus.jackson.jaxrs.JacksonJaxbJsonProvider;
+import org.junit.Test;
+import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class AuthenticationIntegrationTest extends WebservicesIntegrationTest {
+
+    @Test
+    public void testCreateToken() throws Exception {
+        // tokens do not keep the password, so their sessions are impersonated
+        hippoAuthenticationRequestHandler.setImpersonationUsername("admin");
+        hippoAuthenticationRequestHandler.setImpersonationPassword("admin");
+        try {
+            final Map token = client
+                    .path("_auth/token")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .post(null, Map.class);
+            assertEquals("Bearer", token.get("token_type"));
+            assertNotNull(token.get("access_token"));
+
+            final Response response = createTokenClient((String) token.get("access_token"))
+                    .path("_system/versions")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        } finally {
+            hippoAuthenticationRequestHandler.setImpersonationUsername(null);
+            hippoAuthenticationRequestHandler.setImpersonationPassword(null);
+        }
+    }
+
+    @Test
+    public void testTokenWithEmptyPool() throws Exception {
+        hippoAuthenticationRequestHandler.setImpersonationUsername("admin");
+        hippoAuthenticationRequestHandler.setImpersonationPassword("admin");
+        try {
+            final Map token = client
+                    .path("_auth/token")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .post(null, Map.class);
+            hippoAuthenticationRequestHandler.getReadSessionPool().clear();
+            hippoAuthenticationRequestHandler.getWriteSessionPool().clear();
+            assertEquals(0, hippoAuthenticationRequestHandler.getReadSessionPool().getIdleCount());
+
+            final Response response = createTokenClient((String) token.get("access_token"))
+                    .path("nodes/")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        } finally {
+            hippoAuthenticationRequestHandler.setImpersonationUsername(null);
+            hippoAuthenticationRequestHandler.setImpersonationPassword(null);
+        }
+    }
+
+    @Test
+    public void testNoTokenWithoutImpersonation() throws Exception {
+        client.path("_auth/token").accept(MediaType.APPLICATION_JSON).post(null);
+        assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), client.getResponse().getStatus());
+    }
+
+    @Test
+    public void testInvalidToken() throws Exception {
+        final Response response = createTokenClient("invalid")
+                .path("_system/versions")
+                .accept(MediaType.APPLICATION_JSON)
+                .get();
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+    }
+
+    private static WebClient createTokenClient(final String token) {
+        return WebClient.create(HTTP_ENDPOINT_ADDRESS, Collections.singletonList(new JacksonJaxbJsonProvider()))
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    }
+}
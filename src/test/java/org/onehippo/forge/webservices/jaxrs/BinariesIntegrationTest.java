@@ -0,0 +1,171 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs;
+
+import java.io.ByteArrayInputStream;
+import java.util.Calendar;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinariesIntegrationTest extends WebservicesIntegrationTest {
+
+    private static final String CONTENT = "0123456789";
+
+    @Before
+    public void createBinary() throws Exception {
+        final Node resource = session.getRootNode().addNode("test", "nt:unstructured");
+        final Binary binary = session.getValueFactory().createBinary(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+        resource.setProperty("jcr:data", binary);
+        resource.setProperty("jcr:mimeType", "text/plain");
+        resource.setProperty("jcr:lastModified", Calendar.getInstance());
+        session.save();
+    }
+
+    @After
+    public void removeBinary() throws RepositoryException {
+        session.getRootNode().getNode("test").remove();
+        session.save();
+    }
+
+    @Test
+    public void testGetBinary() {
+        final String content = client.path("binaries/test/jcr:data").get(String.class);
+        final Response response = client.getResponse();
+        assertEquals(CONTENT, content);
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals("10", response.getMetadata().getFirst("Content-Length"));
+        assertEquals("bytes", response.getMetadata().getFirst("Accept-Ranges"));
+        assertTrue(response.getMetadata().getFirst("Content-Type").toString().startsWith("text/plain"));
+        assertTrue(response.getMetadata().getFirst("ETag") != null);
+
+        client.reset();
+        final String nodeContent = client.path("binaries/test").get(String.class);
+        assertEquals(CONTENT, nodeContent);
+    }
+
+    @Test
+    public void testGetBinaryRange() {
+        final String content = client.path("binaries/test/jcr:data").header("Range", "bytes=2-5").get(String.class);
+        final Response response = client.getResponse();
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", content);
+        assertEquals("bytes 2-5/10", response.getMetadata().getFirst("Content-Range"));
+
+        client.reset();
+        final Response unsatisfiable = client.path("binaries/test/jcr:data").header("Range", "bytes=20-").get();
+        assertEquals(416, unsatisfiable.getStatus());
+        assertEquals("bytes */10", unsatisfiable.getMetadata().getFirst("Content-Range"));
+    }
+
+    @Test
+    public void testGetBinaryNotModified() {
+        client.path("binaries/test/jcr:data").get(String.class);
+        final Object eTag = client.getResponse().getMetadata().getFirst("ETag");
+
+        client.reset();
+        final Response response = client.path("binaries/test/jcr:data").header("If-None-Match", eTag).get();
+        assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testNotFoundOnGetBinary() {
+        final Response response = client.path("binaries/test/jcr:mimeType").get();
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    public void testGetBinaryLinkFromProperty() {
+        final JcrProperty property = client.path("properties/test/jcr:data").get(JcrProperty.class);
+        assertTrue(property.getValues().isEmpty());
+        assertEquals(1, property.getBinaries().size());
+        assertEquals(10L, property.getBinaries().get(0).getSize());
+        assertEquals("text/plain", property.getBinaries().get(0).getMimeType());
+        assertEquals(HTTP_ENDPOINT_ADDRESS + "/binaries/test/jcr:data", property.getBinaries().get(0).getHref());
+    }
+
+    @Test
+    public void testUploadBinary() throws Exception {
+        final byte[] upload = "uploaded content".getBytes("UTF-8");
+        final Response response = client.path("binaries/test")
+                .type("image/png")
+                .header("Content-MD5", Base64.encodeBase64String(DigestUtils.md5(upload)))
+                .put(new ByteArrayInputStream(upload));
+        assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+
+        session.refresh(false);
+        final Node resource = session.getNode("/test");
+        assertEquals(upload.length, resource.getProperty("jcr:data").getLength());
+        assertEquals("image/png", resource.getProperty("jcr:mimeType").getString());
+
+        client.reset();
+        final Response created = client.path("binaries/test/thumbnail")
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .put(new ByteArrayInputStream(upload));
+        assertEquals(Response.Status.CREATED.getStatusCode(), created.getStatus());
+        assertEquals(HTTP_ENDPOINT_ADDRESS + "/binaries/test/thumbnail", created.getMetadata().getFirst("Location"));
+    }
+
+    @Test
+    public void testUploadBinaryWithInvalidContentMd5() throws Exception {
+        final Response response = client.path("binaries/test/jcr:data")
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .header("Content-MD5", Base64.encodeBase64String(DigestUtils.md5("other content")))
+                .put(new ByteArrayInputStream("uploaded content".getBytes("UTF-8")));
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+        session.refresh(false);
+        assertEquals(CONTENT.length(), session.getNode("/test").getProperty("jcr:data").getLength());
+    }
+
+    @Test
+    public void testUploadBinaryTooLarge() throws Exception {
+        final long maxUploadSize = hippoAuthenticationRequestHandler.getMaxUploadSize();
+        hippoAuthenticationRequestHandler.setMaxUploadSize(4);
+        try {
+            final Response response = client.path("binaries/test/jcr:data")
+                    .type(MediaType.APPLICATION_OCTET_STREAM)
+                    .put(new ByteArrayInputStream("uploaded content".getBytes("UTF-8")));
+            assertEquals(413, response.getStatus());
+        } finally {
+            hippoAuthenticationRequestHandler.setMaxUploadSize(maxUploadSize);
+        }
+    }
+
+    @Test
+    public void testNotFoundOnUploadBinary() throws Exception {
+        final Response response = client.path("binaries/nonexisting/jcr:data")
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .put(new ByteArrayInputStream("uploaded content".getBytes("UTF-8")));
+        assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+
+import org.junit.Test;
+import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkIntegrationTest extends WebservicesIntegrationTest {
+
+    @Test
+    public void testApplyOperations() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.addNode("obsolete", "nt:unstructured");
+        session.save();
+        try {
+            final String results = client
+                    .path("_bulk")
+                    .query("saveInterval", "2")
+                    .type("application/x-ndjson")
+                    .accept("application/x-ndjson")
+                    .post("{\"op\": \"create\", \"path\": \"/test\", \"node\": {\"name\": \"child\", \"primaryType\": \"nt:unstructured\"}}\n" +
+                            "{\"op\": \"setProperty\", \"path\": \"/test/child\", \"property\": {\"name\": \"title\", \"type\": \"String\", \"values\": [\"title\"]}}\n" +
+                            "{\"op\": \"delete\", \"path\": \"/test/obsolete\"}\n" +
+                            "{\"op\": \"delete\", \"path\": \"/test/missing\"}\n", String.class);
+            final String[] lines = results.split("\n");
+            assertEquals(4, lines.length);
+            assertTrue(lines[0].contains("\"status\":201"));
+            assertTrue(lines[1].contains("\"status\":204"));
+            assertTrue(lines[2].contains("\"status\":204"));
+            assertTrue(lines[3].contains("\"status\":404"));
+
+            session.refresh(false);
+            assertEquals("title", test.getNode("child").getProperty("title").getString());
+            assertFalse(test.hasNode("obsolete"));
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+}
@@ -17,17 +17,28 @@
 package org.onehippo.forge.webservices.jaxrs;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import org.junit.Test;
 import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+import org.onehippo.forge.webservices.cache.NodeResponseCache;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetRequest;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetResult;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNodeReference;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrReadBudget;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class NodesIntegrationTest extends WebservicesIntegrationTest {
@@ -254,6 +265,575 @@ public class NodesIntegrationTest extends WebservicesIntegrationTest {
         session.save();
     }
 
+    @Test
+    public void testReconcileJcrNode() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("title", "test");
+        test.setProperty("stale", "stale");
+        final Node first = test.addNode("first", "nt:unstructured");
+        first.addMixin("mix:referenceable");
+        test.addNode("second", "nt:unstructured");
+        session.save();
+        final String firstIdentifier = first.getIdentifier();
+        try {
+            final JcrNode jcrNode = client
+                    .path("nodes/test")
+                    .query("depth", "1")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+
+            final List<JcrProperty> properties = new ArrayList<JcrProperty>();
+            for (JcrProperty property : jcrNode.getProperties()) {
+                if ("title".equals(property.getName())) {
+                    property.setValues(Collections.singletonList("updated"));
+                }
+                if (!"stale".equals(property.getName())) {
+                    properties.add(property);
+                }
+            }
+            jcrNode.setProperties(properties);
+            Collections.reverse(jcrNode.getNodes());
+
+            client.reset();
+            final Response response = client
+                    .path("nodes/test")
+                    .query("mode", "reconcile")
+                    .type(MediaType.APPLICATION_JSON)
+                    .put(jcrNode);
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), response.getStatus());
+
+            session.refresh(false);
+            assertEquals("updated", test.getProperty("title").getString());
+            assertFalse(test.hasProperty("stale"));
+            final NodeIterator children = test.getNodes();
+            assertEquals("second", children.nextNode().getName());
+            final Node reconciled = children.nextNode();
+            assertEquals("first", reconciled.getName());
+            assertEquals(firstIdentifier, reconciled.getIdentifier());
+
+            client.reset();
+            final Response invalid = client
+                    .path("nodes/test")
+                    .query("mode", "merge")
+                    .type(MediaType.APPLICATION_JSON)
+                    .put(jcrNode);
+            assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), invalid.getStatus());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testPatchJcrNode() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("title", "test");
+        test.setProperty("obsolete", "obsolete");
+        session.save();
+        try {
+            // HttpURLConnection does not support PATCH, so the method is overridden
+            final Response mergeResponse = client
+                    .path("nodes/test")
+                    .header("X-HTTP-Method-Override", "PATCH")
+                    .type("application/merge-patch+json")
+                    .post("{\"properties\": {\"title\": \"merged\", \"count\": 2, \"obsolete\": null}}");
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), mergeResponse.getStatus());
+            session.refresh(false);
+            assertEquals("merged", test.getProperty("title").getString());
+            assertEquals(2L, test.getProperty("count").getLong());
+            assertFalse(test.hasProperty("obsolete"));
+
+            client.reset();
+            final Response patchResponse = client
+                    .path("nodes/test")
+                    .header("X-HTTP-Method-Override", "PATCH")
+                    .type("application/json-patch+json")
+                    .post("[{\"op\": \"test\", \"path\": \"/properties/title\", \"value\": \"merged\"}," +
+                            "{\"op\": \"replace\", \"path\": \"/properties/title\", \"value\": \"patched\"}]");
+            assertEquals(Response.Status.NO_CONTENT.getStatusCode(), patchResponse.getStatus());
+            session.refresh(false);
+            assertEquals("patched", test.getProperty("title").getString());
+
+            client.reset();
+            final Response conflictResponse = client
+                    .path("nodes/test")
+                    .header("X-HTTP-Method-Override", "PATCH")
+                    .type("application/json-patch+json")
+                    .post("[{\"op\": \"replace\", \"path\": \"/properties/title\", \"value\": \"lost\"}," +
+                            "{\"op\": \"remove\", \"path\": \"/properties/missing\"}]");
+            assertEquals(Response.Status.CONFLICT.getStatusCode(), conflictResponse.getStatus());
+            session.refresh(false);
+            assertEquals("patched", test.getProperty("title").getString());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testImportNodes() throws RepositoryException {
+        final JcrNode node = new JcrNode("imported", "nt:unstructured");
+        final JcrNode child = new JcrNode("child", "nt:unstructured");
+        child.addNode(new JcrNode("grandchild", "nt:unstructured"));
+        node.addNode(child);
+        node.addNode(new JcrNode("sibling", "nt:unstructured"));
+        try {
+            final Response response = client
+                    .path("nodes/_import/")
+                    .query("saveInterval", "2")
+                    .type(MediaType.APPLICATION_JSON)
+                    .post(node);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            assertEquals(HTTP_ENDPOINT_ADDRESS + "/nodes/imported", response.getMetadata().getFirst("Location"));
+
+            session.refresh(false);
+            assertTrue(session.nodeExists("/imported/child/grandchild"));
+            assertTrue(session.nodeExists("/imported/sibling"));
+
+            client.reset();
+            final Response invalid = client
+                    .path("nodes/_import/")
+                    .type(MediaType.APPLICATION_JSON)
+                    .post("{\"nodes\": [], \"name\": \"invalid\", \"primaryType\": \"nt:unstructured\"}");
+            assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), invalid.getStatus());
+            session.refresh(false);
+            assertFalse(session.nodeExists("/invalid"));
+        } finally {
+            if (session.nodeExists("/imported")) {
+                session.getNode("/imported").remove();
+                session.save();
+            }
+        }
+    }
+
+    @Test
+    public void testGetJcrNodeWithProjection() throws RepositoryException {
+        final javax.jcr.Node node = session.getRootNode().addNode("projection", "nt:unstructured");
+        node.setProperty("hippostd:state", "published");
+        node.setProperty("hippostd:holder", "admin");
+        node.setProperty("title", "Projection");
+        node.addNode("child", "nt:unstructured").setProperty("title", "Child");
+        session.save();
+
+        final JcrNode response = client
+                .path("nodes/projection")
+                .query("depth", "1")
+                .query("fields", "hippostd:*,title")
+                .query("exclude", "hippostd:holder")
+                .accept(MediaType.APPLICATION_JSON)
+                .get(JcrNode.class);
+        assertEquals(2, response.getProperties().size());
+        assertEquals("hippostd:state", response.getProperties().get(0).getName());
+        assertEquals("title", response.getProperties().get(1).getName());
+        assertEquals(1, response.getNodes().get(0).getProperties().size());
+
+        client.reset();
+        final JcrNode names = client
+                .path("nodes/projection")
+                .query("childrenOnly", "names")
+                .accept(MediaType.APPLICATION_JSON)
+                .get(JcrNode.class);
+        assertEquals(1, names.getNodes().size());
+        assertEquals("child", names.getNodes().get(0).getName());
+        assertNull(names.getNodes().get(0).getPrimaryType());
+
+        client.reset();
+        final Response invalid = client
+                .path("nodes/projection")
+                .query("childrenOnly", "types")
+                .accept(MediaType.APPLICATION_JSON)
+                .get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), invalid.getStatus());
+
+        // cleanup
+        session.getRootNode().getNode("projection").remove();
+        session.save();
+    }
+
+    @Test
+    public void testGetJcrNodeChildPages() throws RepositoryException {
+        final javax.jcr.Node folder = session.getRootNode().addNode("paging", "nt:unstructured");
+        for (int i = 0; i < 5; i++) {
+            folder.addNode("child" + i, "nt:unstructured");
+        }
+        session.save();
+
+        final List<String> names = new ArrayList<String>();
+        JcrNode page = client
+                .path("nodes/paging")
+                .query("childrenOnly", "names")
+                .query("childLimit", "2")
+                .accept(MediaType.APPLICATION_JSON)
+                .get(JcrNode.class);
+        int pages = 1;
+        while (true) {
+            for (JcrNode child : page.getNodes()) {
+                names.add(child.getName());
+            }
+            if (page.getLinks() == null) {
+                break;
+            }
+            assertEquals("next", page.getLinks().get(0).getRel());
+            client.reset();
+            page = client
+                    .to(page.getLinks().get(0).getHref(), false)
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+            pages++;
+        }
+        assertEquals(3, pages);
+        assertEquals(5, names.size());
+        assertEquals("child0", names.get(0));
+        assertEquals("child4", names.get(4));
+
+        client.reset();
+        final Response invalid = client
+                .path("nodes/paging")
+                .query("childCursor", "invalid")
+                .accept(MediaType.APPLICATION_JSON)
+                .get();
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), invalid.getStatus());
+
+        // cleanup
+        session.getRootNode().getNode("paging").remove();
+        session.save();
+    }
+
+    @Test
+    public void testGetJcrNodeNotModified() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("title", "first");
+        session.save();
+        try {
+            final Response response = client.path("nodes/test").accept(MediaType.APPLICATION_JSON).get();
+            assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+            final Object eTag = response.getMetadata().getFirst("ETag");
+            assertTrue(eTag != null);
+
+            client.reset();
+            final Response notModified = client.path("nodes/test").accept(MediaType.APPLICATION_JSON)
+                    .header("If-None-Match", eTag).get();
+            assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), notModified.getStatus());
+
+            test.setProperty("title", "second");
+            session.save();
+
+            client.reset();
+            final Response modified = client.path("nodes/test").accept(MediaType.APPLICATION_JSON)
+                    .header("If-None-Match", eTag).get();
+            assertEquals(Response.Status.OK.getStatusCode(), modified.getStatus());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testGetCachedJcrNode() throws Exception {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("title", "first");
+        session.save();
+        hippoAuthenticationRequestHandler.setImpersonationUsername("admin");
+        hippoAuthenticationRequestHandler.setImpersonationPassword("admin");
+        try {
+            final NodeResponseCache cache = hippoAuthenticationRequestHandler.getResponseCache();
+            final JcrNode first = client.path("nodes/test").accept(MediaType.APPLICATION_JSON).get(JcrNode.class);
+            client.reset();
+            final JcrNode cached = client.path("nodes/test").accept(MediaType.APPLICATION_JSON).get(JcrNode.class);
+            assertEquals(first.getIdentifier(), cached.getIdentifier());
+            assertEquals(1, cache.getHits());
+
+            test.setProperty("title", "second");
+            session.save();
+            // observation events are delivered asynchronously
+            for (int i = 0; i < 50 && cache.getInvalidations() == 0; i++) {
+                Thread.sleep(100);
+            }
+
+            client.reset();
+            final JcrNode changed = client.path("nodes/test").accept(MediaType.APPLICATION_JSON).get(JcrNode.class);
+            for (JcrProperty property : changed.getProperties()) {
+                if (property.getName().equals("title")) {
+                    assertEquals("second", property.getValues().get(0));
+                }
+            }
+        } finally {
+            hippoAuthenticationRequestHandler.setImpersonationUsername(null);
+            hippoAuthenticationRequestHandler.setImpersonationPassword(null);
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testGetJcrNodeWithinReadBudget() throws RepositoryException {
+        final javax.jcr.Node folder = session.getRootNode().addNode("budget", "nt:unstructured");
+        for (int i = 0; i < 2; i++) {
+            final javax.jcr.Node child = folder.addNode("child" + i, "nt:unstructured");
+            for (int j = 0; j < 3; j++) {
+                child.addNode("grandchild" + j, "nt:unstructured");
+            }
+        }
+        session.save();
+        hippoAuthenticationRequestHandler.setMaxNodesPerRequest(4);
+        try {
+            final JcrNode truncated = client
+                    .path("nodes/budget")
+                    .query("depth", "2")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+            assertTrue(truncated.getTruncated());
+            assertEquals(1, truncated.getNodes().size());
+            assertTrue(truncated.getNodes().get(0).getTruncated());
+
+            hippoAuthenticationRequestHandler.setMaxNodesPerRequest(2);
+            client.reset();
+            final Response tooLarge = client
+                    .path("nodes/budget")
+                    .query("depth", "1")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            assertEquals(413, tooLarge.getStatus());
+
+            client.reset();
+            final JcrNode page = client
+                    .path("nodes/budget")
+                    .query("depth", "1")
+                    .query("childLimit", "1")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+            assertNull(page.getTruncated());
+            assertEquals(1, page.getNodes().size());
+            assertEquals("next", page.getLinks().get(0).getRel());
+        } finally {
+            hippoAuthenticationRequestHandler.setMaxNodesPerRequest(JcrReadBudget.DEFAULT_MAX_NODES);
+            session.getRootNode().getNode("budget").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testGetJcrNodeByIdentifier() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("title", "test");
+        test.addNode("child", "nt:unstructured");
+        session.save();
+        try {
+            final JcrNode response = client
+                    .path("nodes/_id/" + test.getIdentifier())
+                    .query("depth", "1")
+                    .query("fields", "title")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+            assertEquals("/test", response.getPath());
+            assertEquals(test.getIdentifier(), response.getIdentifier());
+            assertEquals(1, response.getProperties().size());
+            assertEquals(1, response.getNodes().size());
+
+            client.reset();
+            final Response missing = client
+                    .path("nodes/_id/deadbeef-cafe-babe-cafe-babecafebabe")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            assertEquals(Response.Status.NOT_FOUND.getStatusCode(), missing.getStatus());
+
+            client.reset();
+            final Response invalid = client
+                    .path("nodes/_id/invalid")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get();
+            assertEquals(Response.Status.NOT_FOUND.getStatusCode(), invalid.getStatus());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testExportNodes() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.addNode("child1", "nt:unstructured").addNode("grandchild", "nt:unstructured");
+        test.addNode("child2", "nt:unstructured");
+        session.save();
+        try {
+            final String export = client
+                    .path("nodes/_export/test")
+                    .query("limit", "3")
+                    .accept("application/x-ndjson")
+                    .get(String.class);
+            final String[] lines = export.split("\n");
+            assertEquals(3, lines.length);
+            assertTrue(lines[0].contains("\"path\":\"/test\""));
+            assertTrue(lines[2].contains("\"path\":\"/test/child1/grandchild\""));
+
+            client.reset();
+            final String resumed = client
+                    .path("nodes/_export/test")
+                    .query("after", "/test/child1/grandchild")
+                    .accept("application/x-ndjson")
+                    .get(String.class);
+            assertEquals(1, resumed.split("\n").length);
+            assertTrue(resumed.contains("\"path\":\"/test/child2\""));
+
+            client.reset();
+            final Response gone = client
+                    .path("nodes/_export/test")
+                    .query("after", "/test/nonexistingnode")
+                    .accept("application/x-ndjson")
+                    .get();
+            assertEquals(Response.Status.CONFLICT.getStatusCode(), gone.getStatus());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testGetTypedJcrNode() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.setProperty("count", 42L);
+        test.setProperty("enabled", true);
+        session.save();
+        try {
+            final String typed = client
+                    .path("nodes/test")
+                    .query("typed", "true")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(String.class);
+            assertTrue(typed.contains("\"values\":[42]"));
+            assertTrue(typed.contains("\"values\":[true]"));
+
+            client.reset();
+            final JcrNode untyped = client
+                    .path("nodes/test")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(JcrNode.class);
+            for (JcrProperty property : untyped.getProperties()) {
+                if (property.getName().equals("count")) {
+                    assertEquals("42", property.getValues().get(0));
+                }
+            }
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testGetMultipleNodes() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        test.addMixin("mix:referenceable");
+        test.setProperty("title", "test");
+        test.addNode("child", "nt:unstructured");
+        session.save();
+        try {
+            final JcrMultiGetRequest multiGetRequest = new JcrMultiGetRequest();
+            final JcrNodeReference byPath = new JcrNodeReference();
+            byPath.setPath("test");
+            byPath.setDepth(1);
+            multiGetRequest.getNodes().add(byPath);
+            final JcrNodeReference missing = new JcrNodeReference();
+            missing.setPath("/nonexistingnode");
+            multiGetRequest.getNodes().add(missing);
+            final JcrNodeReference byIdentifier = new JcrNodeReference();
+            byIdentifier.setIdentifier(test.getIdentifier());
+            byIdentifier.setFields("title");
+            multiGetRequest.getNodes().add(byIdentifier);
+
+            final JcrMultiGetResult result = client
+                    .path("nodes/_mget")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .type(MediaType.APPLICATION_JSON)
+                    .post(multiGetRequest, JcrMultiGetResult.class);
+            assertEquals(3, result.getResults().size());
+            assertEquals(200, result.getResults().get(0).getStatus());
+            assertEquals("/test", result.getResults().get(0).getNode().getPath());
+            assertEquals(1, result.getResults().get(0).getNode().getNodes().size());
+            assertEquals(404, result.getResults().get(1).getStatus());
+            assertEquals("/nonexistingnode", result.getResults().get(1).getPath());
+            assertEquals(200, result.getResults().get(2).getStatus());
+            assertEquals(test.getIdentifier(), result.getResults().get(2).getNode().getIdentifier());
+            assertEquals(1, result.getResults().get(2).getNode().getProperties().size());
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
+    @Test
+    public void testMoveAndCopyJcrNode() throws RepositoryException {
+        final Node test = session.getRootNode().addNode("test", "nt:unstructured");
+        final Node source = test.addNode("source", "nt:unstructured");
+        source.addMixin("mix:referenceable");
+        source.addNode("child", "nt:unstructured");
+        test.addNode("existing", "nt:unstructured");
+        session.save();
+        final String identifier = source.getIdentifier();
+        try {
+            Response response = client
+                    .path("nodes/test/source/_move")
+                    .query("destination", "/test/moved")
+                    .post(null);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            assertEquals(HTTP_ENDPOINT_ADDRESS + "/nodes/test/moved", response.getMetadata().getFirst("Location"));
+
+            session.refresh(false);
+            assertFalse(test.hasNode("source"));
+            assertEquals(identifier, test.getNode("moved").getIdentifier());
+            assertTrue(test.hasNode("moved/child"));
+
+            client.reset();
+            response = client
+                    .path("nodes/test/moved/_copy")
+                    .query("destination", "/test/copied")
+                    .post(null);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+
+            session.refresh(false);
+            assertTrue(test.hasNode("moved"));
+            assertTrue(test.hasNode("copied/child"));
+            assertFalse(identifier.equals(test.getNode("copied").getIdentifier()));
+
+            client.reset();
+            response = client
+                    .path("nodes/test/copied/_copy")
+                    .query("destination", "/test/existing")
+                    .post(null);
+            assertEquals(Response.Status.CREATED.getStatusCode(), response.getStatus());
+            final String location = response.getMetadata().getFirst("Location").toString();
+            assertTrue(location.startsWith(HTTP_ENDPOINT_ADDRESS + "/nodes/test/existing"));
+            assertFalse(location.endsWith("/nodes/test/existing"));
+
+            session.refresh(false);
+            assertTrue(test.hasNode("existing[2]/child"));
+
+            client.reset();
+            response = client
+                    .path("nodes/test/moved/_move")
+                    .query("destination", "/test/nonexistingnode/moved")
+                    .post(null);
+            assertEquals(Response.Status.CONFLICT.getStatusCode(), response.getStatus());
+
+            client.reset();
+            response = client
+                    .path("nodes/test/moved/_copy")
+                    .query("destination", "/test/moved/child/copy")
+                    .post(null);
+            assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+
+            client.reset();
+            response = client
+                    .path("nodes/test/nonexistingnode/_move")
+                    .query("destination", "/test/other")
+                    .post(null);
+            assertEquals(Response.Status.NOT_FOUND.getStatusCode(), response.getStatus());
+        } finally {
+            session.refresh(false);
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
     @Test
     public void testPostToNonExistingNode() {
         JcrNode node = new JcrNode();
@@ -43,6 +43,44 @@ public class PropertiesIntegrationTest extends WebservicesIntegrationTest {
         assertTrue(response.getValues().get(0).equals("rep:root"));
     }
 
+    @Test
+    public void testGetPropertyNotModified() {
+        final Response response = client.path("properties/jcr:primaryType")
+                .accept(MediaType.APPLICATION_JSON)
+                .get();
+        final Object eTag = response.getMetadata().getFirst("ETag");
+        assertTrue(eTag != null);
+
+        client.reset();
+        final Response notModified = client.path("properties/jcr:primaryType")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("If-None-Match", eTag)
+                .get();
+        assertTrue(notModified.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode());
+    }
+
+    @Test
+    public void testGetTypedProperty() throws RepositoryException {
+        session.getRootNode().addNode("test", "nt:unstructured").setProperty("count", 42L);
+        session.save();
+        try {
+            final String typed = client.path("properties/test/count")
+                    .query("typed", "true")
+                    .accept(MediaType.APPLICATION_JSON)
+                    .get(String.class);
+            assertTrue(typed.contains("\"values\":[42]"));
+
+            client.reset();
+            final String typedByMediaType = client.path("properties/test/count")
+                    .accept("application/json; typed=true")
+                    .get(String.class);
+            assertTrue(typedByMediaType.contains("\"values\":[42]"));
+        } finally {
+            session.getRootNode().getNode("test").remove();
+            session.save();
+        }
+    }
+
     @Test
     public void testNotFoundOnGetProperty() {
         final Response response = client.path("properties/jcr:someProperty")
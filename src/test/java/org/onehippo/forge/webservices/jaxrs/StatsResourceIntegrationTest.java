@@ -16,6 +16,8 @@
 
 package org.onehippo.forge.webservices.jaxrs;
 
+import java.util.Map;
+
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -66,4 +68,34 @@ public class StatsResourceIntegrationTest extends WebservicesIntegrationTest {
         assertTrue(statistics.getStatus() == Response.Status.OK.getStatusCode());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetSessionPoolStatistics() throws Exception {
+        client.path("_system/jvm").accept(MediaType.APPLICATION_JSON).get();
+        client.reset();
+        client.path("users/me").accept(MediaType.APPLICATION_JSON).get();
+        client.reset();
+        final Map statistics = client
+                .path("_stats/sessions")
+                .accept(MediaType.APPLICATION_JSON)
+                .type(MediaType.APPLICATION_JSON)
+                .get(Map.class);
+        assertTrue(client.getResponse().getStatus() == Response.Status.OK.getStatusCode());
+        assertTrue(((Number) statistics.get("hits")).longValue() >= 1);
+        assertTrue(statistics.containsKey("misses"));
+        assertTrue(((Number) ((Map) statistics.get("read")).get("hits")).longValue() >= 1);
+        assertTrue(statistics.containsKey("write"));
+    }
+
+    @Test
+    public void testGetResponseCacheStatistics() throws Exception {
+        final Map statistics = client
+                .path("_stats/cache")
+                .accept(MediaType.APPLICATION_JSON)
+                .get(Map.class);
+        assertTrue(statistics.containsKey("hits"));
+        assertTrue(statistics.containsKey("misses"));
+        assertTrue(statistics.containsKey("evictions"));
+        assertTrue(statistics.containsKey("invalidations"));
+    }
+
+}
@@ -29,7 +29,9 @@ import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.cxf.rs.security.cors.CorsHeaderConstants;
 import org.junit.Test;
 import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+import org.onehippo.forge.webservices.session.SessionPool;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class SystemIntegrationTest extends WebservicesIntegrationTest {
@@ -45,6 +47,18 @@ public class SystemIntegrationTest extends WebservicesIntegrationTest {
         assertTrue(response.get("Java vendor").equals(System.getProperty("java.vendor")));
     }
 
+    @Test
+    public void testGetSystemInfoDoesNotAcquireSession() {
+        client.path("_system/jvm").accept(MediaType.APPLICATION_JSON).get();
+        client.reset();
+        final SessionPool sessionPool = hippoAuthenticationRequestHandler.getReadSessionPool();
+        final long requests = sessionPool.getHits() + sessionPool.getMisses();
+
+        final Response response = client.path("_system/jvm").accept(MediaType.APPLICATION_JSON).get();
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(requests, sessionPool.getHits() + sessionPool.getMisses());
+    }
+
     @Test
     public void testGetProperties() {
         final LinkedHashMap response = client
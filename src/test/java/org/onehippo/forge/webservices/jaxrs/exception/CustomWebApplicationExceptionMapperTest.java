@@ -16,6 +16,7 @@
 
 package org.onehippo.forge.webservices.jaxrs.exception;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 
 import org.junit.Test;
@@ -34,4 +35,21 @@ public class CustomWebApplicationExceptionMapperTest {
         assertEquals(entity.getMessage(),Response.Status.fromStatusCode(401).getReasonPhrase());
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWrappedResponse() throws Exception {
+        final CustomWebApplicationExceptionMapper customWebApplicationExceptionMapper = new CustomWebApplicationExceptionMapper();
+        final Response response = customWebApplicationExceptionMapper.toResponse(new WebApplicationException(new UnauthorizedException()));
+        assertEquals(response.getStatus(), 401);
+    }
+
+    @Test
+    public void testTooManyRequestsResponse() throws Exception {
+        final CustomWebApplicationExceptionMapper customWebApplicationExceptionMapper = new CustomWebApplicationExceptionMapper();
+        final Response response = customWebApplicationExceptionMapper.toResponse(new TooManyRequestsException(1500));
+        assertEquals(response.getStatus(), 429);
+        assertEquals(response.getMetadata().getFirst("Retry-After"), "2");
+        final ResponseExceptionRepresentation entity = (ResponseExceptionRepresentation) response.getEntity();
+        assertEquals(entity.getMessage(), "Too many failed login attempts.");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr;
+
+import java.io.ByteArrayInputStream;
+import java.util.Calendar;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import javax.ws.rs.core.EntityTag;
+
+import org.apache.jackrabbit.JcrConstants;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BinariesResourceTest {
+
+    @Test
+    public void testParseRange() {
+        assertArrayEquals(new long[]{0, 99}, BinariesResource.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, BinariesResource.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, BinariesResource.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, BinariesResource.parseRange("bytes=-2000", 1000));
+        assertArrayEquals(new long[]{900, 999}, BinariesResource.parseRange("bytes=900-5000", 1000));
+    }
+
+    @Test
+    public void testParseIgnoredRange() {
+        assertNull(BinariesResource.parseRange(null, 1000));
+        assertNull(BinariesResource.parseRange("items=0-99", 1000));
+        assertNull(BinariesResource.parseRange("bytes=0-9,20-29", 1000));
+        assertNull(BinariesResource.parseRange("bytes=99-0", 1000));
+        assertNull(BinariesResource.parseRange("bytes=a-b", 1000));
+    }
+
+    @Test
+    public void testParseUnsatisfiableRange() {
+        assertEquals(0, BinariesResource.parseRange("bytes=1000-", 1000).length);
+        assertEquals(0, BinariesResource.parseRange("bytes=-0", 1000).length);
+        assertEquals(0, BinariesResource.parseRange("bytes=0-", 0).length);
+    }
+
+    @Test
+    public void testEntityTagOfSmallBinaryChangesWithContent() throws RepositoryException {
+        final Property property = mockProperty();
+        final EntityTag first = BinariesResource.getEntityTag(property, 0, mockValue("first"), 5);
+        final EntityTag second = BinariesResource.getEntityTag(property, 0, mockValue("other"), 5);
+        assertFalse(first.isWeak());
+        assertFalse(first.equals(second));
+    }
+
+    @Test
+    public void testEntityTagOfLargeBinaryIsWeak() throws RepositoryException {
+        final EntityTag eTag = BinariesResource.getEntityTag(mockProperty(), 0, mock(Value.class), 1024 * 1024);
+        assertTrue(eTag.isWeak());
+    }
+
+    @Test
+    public void testEntityTagOfLargeBinaryWithModificationDateIsWeak() throws RepositoryException {
+        final Property property = mockProperty();
+        final Property lastModified = mock(Property.class);
+        when(lastModified.getDate()).thenReturn(Calendar.getInstance());
+        when(property.getParent().hasProperty(JcrConstants.JCR_LASTMODIFIED)).thenReturn(true);
+        when(property.getParent().getProperty(JcrConstants.JCR_LASTMODIFIED)).thenReturn(lastModified);
+
+        final EntityTag eTag = BinariesResource.getEntityTag(property, 0, mock(Value.class), 1024 * 1024);
+        assertTrue(eTag.isWeak());
+    }
+
+    private static Property mockProperty() throws RepositoryException {
+        final Node parent = mock(Node.class);
+        when(parent.getIdentifier()).thenReturn("cafebabe");
+        final Property property = mock(Property.class);
+        when(property.getPath()).thenReturn("/test/jcr:data");
+        when(property.getParent()).thenReturn(parent);
+        return property;
+    }
+
+    private static Value mockValue(final String content) throws RepositoryException {
+        final Binary binary = mock(Binary.class);
+        when(binary.getStream()).thenReturn(new ByteArrayInputStream(content.getBytes()));
+        final Value value = mock(Value.class);
+        when(value.getBinary()).thenReturn(binary);
+        return value;
+    }
+}
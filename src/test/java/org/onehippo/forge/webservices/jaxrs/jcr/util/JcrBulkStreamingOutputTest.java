@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.nodetype.ConstraintViolationException;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrBulkResult;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JcrBulkStreamingOutputTest {
+
+    private Session session;
+    private Node test;
+    private Node child;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = mock(Session.class);
+        when(session.getValueFactory()).thenReturn(ValueFactoryImpl.getInstance());
+        test = mock(Node.class);
+        when(test.getSession()).thenReturn(session);
+        when(test.getDepth()).thenReturn(1);
+        when(session.nodeExists("/test")).thenReturn(true);
+        when(session.getNode("/test")).thenReturn(test);
+        child = mock(Node.class);
+        when(child.getSession()).thenReturn(session);
+        when(test.addNode("child", "nt:unstructured")).thenReturn(child);
+    }
+
+    @Test
+    public void testApplyOperationsInBatches() throws Exception {
+        final List<JcrBulkResult> results = apply(3,
+                "{\"op\": \"create\", \"path\": \"/test\", \"node\": {\"name\": \"child\", \"primaryType\": \"nt:unstructured\"}}",
+                "{\"op\": \"setProperty\", \"path\": \"test\", \"property\": {\"name\": \"title\", \"type\": \"String\", \"values\": [\"title\"]}}",
+                "{\"op\": \"delete\", \"path\": \"/missing\"}",
+                "{\"op\": \"rename\", \"path\": \"/test\"}",
+                "{\"op\": \"setProperty\", \"path\": \"/test\", \"property\": {\"name\": \"jcr:primaryType\", \"values\": [\"nt:base\"]}}");
+
+        assertEquals(5, results.size());
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(204, results.get(1).getStatus());
+        assertEquals(404, results.get(2).getStatus());
+        assertEquals(400, results.get(3).getStatus());
+        assertNotNull(results.get(3).getError());
+        assertEquals(400, results.get(4).getStatus());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+        }
+        verify(test).setProperty(eq("title"), any(Value.class));
+        verify(session, times(2)).save();
+        verify(session, never()).refresh(false);
+    }
+
+    @Test
+    public void testFailedOperationDiscardsBatch() throws Exception {
+        doThrow(new ConstraintViolationException("constraint")).when(test).remove();
+        final List<JcrBulkResult> results = apply(10,
+                "{\"op\": \"create\", \"path\": \"/test\", \"node\": {\"name\": \"child\", \"primaryType\": \"nt:unstructured\"}}",
+                "{\"op\": \"delete\", \"path\": \"/test\"}",
+                "{\"op\": \"create\", \"path\": \"/test\", \"node\": {\"name\": \"child\", \"primaryType\": \"nt:unstructured\"}}");
+
+        assertEquals(409, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+        assertEquals(201, results.get(2).getStatus());
+        verify(session).refresh(false);
+        verify(session).save();
+    }
+
+    @Test
+    public void testFailedSaveFailsBatch() throws Exception {
+        doThrow(new ConstraintViolationException("constraint")).when(session).save();
+        final List<JcrBulkResult> results = apply(10,
+                "{\"op\": \"delete\", \"path\": \"/test\"}",
+                "{\"op\": \"delete\", \"path\": \"/missing\"}");
+
+        assertEquals(400, results.get(0).getStatus());
+        assertEquals("Not saved: constraint", results.get(0).getError());
+        assertEquals(404, results.get(1).getStatus());
+        verify(session).refresh(false);
+    }
+
+    @Test
+    public void testMalformedOperationStopsRequest() throws Exception {
+        final List<JcrBulkResult> results = apply(10,
+                "{\"op\": \"delete\", \"path\": \"/test\"}",
+                "{\"op\": ",
+                "{\"op\": \"delete\", \"path\": \"/test\"}");
+
+        assertEquals(2, results.size());
+        assertEquals(204, results.get(0).getStatus());
+        assertEquals(400, results.get(1).getStatus());
+        assertEquals(1, results.get(1).getIndex());
+        verify(test, times(1)).remove();
+        verify(session).save();
+    }
+
+    @Test
+    public void testResultsAreWrittenAfterRequestIsRead() throws Exception {
+        final StringBuilder operations = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            operations.append("{\"op\": \"delete\", \"path\": \"/missing\"}\n");
+        }
+        final boolean[] requestRead = new boolean[1];
+        final ByteArrayInputStream input = new ByteArrayInputStream(operations.toString().getBytes("UTF-8")) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                final int read = super.read(b, off, len);
+                requestRead[0] = read < 0;
+                return read;
+            }
+        };
+        final ByteArrayOutputStream output = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(final byte[] b, final int off, final int len) {
+                assertTrue("Results written before the request was read", requestRead[0]);
+                super.write(b, off, len);
+            }
+        };
+        new JcrBulkStreamingOutput(session, input, 1).write(output);
+
+        assertEquals(10, output.toString("UTF-8").split("\n").length);
+    }
+
+    private List<JcrBulkResult> apply(final int saveInterval, final String... operations) throws IOException {
+        final StringBuilder input = new StringBuilder();
+        for (String operation : operations) {
+            input.append(operation).append('\n');
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JcrBulkStreamingOutput(session, new ByteArrayInputStream(input.toString().getBytes("UTF-8")), saveInterval)
+                .write(output);
+
+        final ObjectMapper objectMapper = new ObjectMapper();
+        final List<JcrBulkResult> results = new ArrayList<JcrBulkResult>();
+        final BufferedReader reader = new BufferedReader(new StringReader(output.toString("UTF-8")));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            results.add(objectMapper.readValue(line, JcrBulkResult.class));
+        }
+        return results;
+    }
+}
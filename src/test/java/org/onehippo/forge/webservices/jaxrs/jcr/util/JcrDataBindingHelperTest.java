@@ -17,24 +17,55 @@
 package org.onehippo.forge.webservices.jaxrs.jcr.util;
 
 import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 
 import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.Value;
 import javax.jcr.ValueFactory;
+import javax.jcr.nodetype.NodeDefinition;
 import javax.jcr.nodetype.NodeType;
+import javax.jcr.nodetype.PropertyDefinition;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriBuilder;
 
+import org.apache.jackrabbit.commons.iterator.NodeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.PropertyIteratorAdapter;
+import org.apache.jackrabbit.util.ISO8601;
+import org.apache.jackrabbit.value.ValueFactoryImpl;
 import org.apache.sling.commons.testing.jcr.MockValue;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.onehippo.forge.webservices.jaxrs.CustomJacksonConfig;
+import org.onehippo.forge.webservices.jaxrs.hateoas.Link;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
 import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrProperty;
 import org.onehippo.forge.webservices.testing.jcr.MockNode;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -61,6 +92,168 @@ public class JcrDataBindingHelperTest {
 
     }
 
+    @Test
+    public void testWriteNodeRepresentation() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippo:handle");
+        testNode.setProperty("hippostdpubwf:createdBy", "admin");
+        testNode.setProperty(HIPPO_PATHS_PROPERTY, new String[]{"test", "test2"});
+        testNode.addNode("/test/test1", "hippo:document").setProperty("hippostd:state", "published");
+        testNode.addNode("/test/test2", "hippo:document");
+
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final StringWriter writer = new StringWriter();
+        final JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+        JcrDataBindingHelper.writeNodeRepresentation(generator, mockRootNode.getNode("test"), 1);
+        generator.close();
+
+        final JcrNode streamed = objectMapper.readValue(writer.toString(), JcrNode.class);
+        final JcrNode expected = JcrDataBindingHelper.getNodeRepresentation(mockRootNode.getNode("test"), 1);
+        assertEquals(expected.getName(), streamed.getName());
+        assertEquals(expected.getPrimaryType(), streamed.getPrimaryType());
+        assertEquals(expected.getPath(), streamed.getPath());
+        assertEquals(1, streamed.getProperties().size());
+        assertEquals("admin", streamed.getProperties().get(0).getValues().get(0));
+        assertEquals(2, streamed.getNodes().size());
+        assertEquals("published", streamed.getNodes().get(0).getProperties().get(0).getValues().get(0));
+        assertNull(streamed.getNodes().get(0).getNodes());
+    }
+
+    @Test
+    public void testGetNodeRepresentationWithProjection() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippo:handle");
+        testNode.setProperty("hippostd:state", "published");
+        testNode.setProperty("hippostd:holder", "admin");
+        testNode.setProperty("hippostdpubwf:createdBy", "admin");
+        testNode.addNode("/test/test1", "hippo:document").setProperty("hippostd:state", "draft");
+
+        final JcrNodeProjection projection = JcrNodeProjection.valueOf("hippostd:*", "hippostd:holder", null);
+        final JcrNode nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(testNode, 1, projection);
+        assertEquals(1, nodeRepresentation.getProperties().size());
+        assertEquals("hippostd:state", nodeRepresentation.getProperties().get(0).getName());
+        assertEquals("draft", nodeRepresentation.getNodes().get(0).getProperties().get(0).getValues().get(0));
+
+        final JcrNode namesRepresentation = JcrDataBindingHelper.getNodeRepresentation(testNode, 0,
+                JcrNodeProjection.valueOf(null, null, JcrNodeProjection.CHILDREN_ONLY_NAMES));
+        assertEquals(3, namesRepresentation.getProperties().size());
+        assertEquals(1, namesRepresentation.getNodes().size());
+        assertEquals("test1", namesRepresentation.getNodes().get(0).getName());
+        assertNull(namesRepresentation.getNodes().get(0).getProperties());
+    }
+
+    @Test
+    public void testWriteNodeRepresentationWithProjection() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippo:handle");
+        testNode.setProperty("hippostd:state", "published");
+        testNode.setProperty("hippostdpubwf:createdBy", "admin");
+        testNode.addNode("/test/test1", "hippo:document").setProperty("hippostd:state", "draft");
+
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final JcrNodeProjection projection = JcrNodeProjection.valueOf(null, "hippostdpubwf:*",
+                JcrNodeProjection.CHILDREN_ONLY_NAMES);
+        final StringWriter writer = new StringWriter();
+        final JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+        JcrDataBindingHelper.writeNodeRepresentation(generator, testNode, 0, projection);
+        generator.close();
+
+        assertEquals(objectMapper.writeValueAsString(JcrDataBindingHelper.getNodeRepresentation(testNode, 0, projection)),
+                writer.toString().replace("\"identifier\":null,", ""));
+    }
+
+    @Test
+    public void testGetNodeRepresentationWithChildPages() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippostd:folder");
+        for (int i = 0; i < 5; i++) {
+            testNode.addNode("/test/doc" + i, "hippo:handle");
+        }
+
+        JcrChildPage page = JcrChildPage.valueOf(1, 2, null);
+        page.setLinkBuilder(UriBuilder.fromUri("http://localhost/nodes/test?depth=1&childOffset=1&childLimit=2"));
+        JcrNode nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(testNode, 1, JcrNodeProjection.ALL, page, null);
+        assertEquals(2, nodeRepresentation.getNodes().size());
+        assertEquals("doc1", nodeRepresentation.getNodes().get(0).getName());
+        assertEquals("doc2", nodeRepresentation.getNodes().get(1).getName());
+        assertEquals(1, nodeRepresentation.getLinks().size());
+        assertEquals("next", nodeRepresentation.getLinks().get(0).getRel());
+        final String nextHref = nodeRepresentation.getLinks().get(0).getHref();
+        assertFalse(nextHref.contains("childOffset"));
+        assertTrue(nextHref.contains("childCursor=" + page.getNextCursor()));
+
+        page = JcrChildPage.valueOf(0, 2, page.getNextCursor());
+        nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(testNode, 1, JcrNodeProjection.ALL, page, null);
+        assertEquals(2, nodeRepresentation.getNodes().size());
+        assertEquals("doc3", nodeRepresentation.getNodes().get(0).getName());
+        assertEquals("doc4", nodeRepresentation.getNodes().get(1).getName());
+        assertNull(page.getNextCursor());
+        assertNull(nodeRepresentation.getLinks());
+    }
+
+    @Test
+    public void testGetNodeRepresentationWithinReadBudget() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippostd:folder");
+        for (int i = 0; i < 3; i++) {
+            final Node folder = testNode.addNode("/test/folder" + i, "hippostd:folder");
+            for (int j = 0; j < 3; j++) {
+                folder.addNode("/test/folder" + i + "/doc" + j, "hippo:handle");
+            }
+        }
+
+        final JcrReadBudget budget = new JcrReadBudget(6, 0);
+        final JcrNode nodeRepresentation = JcrDataBindingHelper.getNodeRepresentation(testNode, 2,
+                JcrNodeProjection.ALL, null, budget);
+        assertTrue(budget.isExhausted());
+        assertEquals(6, budget.getNodes());
+        assertTrue(nodeRepresentation.getTruncated());
+        assertEquals(2, nodeRepresentation.getNodes().size());
+        assertNull(nodeRepresentation.getNodes().get(0).getTruncated());
+        assertEquals(3, nodeRepresentation.getNodes().get(0).getNodes().size());
+        assertTrue(nodeRepresentation.getNodes().get(1).getTruncated());
+        assertEquals(0, nodeRepresentation.getNodes().get(1).getNodes().size());
+    }
+
+    @Test
+    public void testWriteNodeRepresentationWithinReadBudget() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippostd:folder");
+        testNode.setProperty("title", "test");
+        testNode.addNode("/test/doc", "hippo:handle");
+
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final StringWriter writer = new StringWriter();
+        final JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+        JcrDataBindingHelper.writeNodeRepresentation(generator, testNode, 1, JcrNodeProjection.ALL, null,
+                new JcrReadBudget(0, 1));
+        generator.close();
+
+        final JcrNode streamed = objectMapper.readValue(writer.toString(), JcrNode.class);
+        assertTrue(streamed.getTruncated());
+        assertEquals(0, streamed.getProperties().size());
+        assertEquals(0, streamed.getNodes().size());
+    }
+
+    @Test
+    public void testReadBudgetEstimate() {
+        assertTrue(new JcrReadBudget(10, 0).exceeds(11));
+        assertFalse(new JcrReadBudget(10, 0).exceeds(10));
+        assertFalse(new JcrReadBudget(0, 0).exceeds(Long.MAX_VALUE));
+        assertEquals(2, JcrChildPage.valueOf(3, 0, null).estimateSize(5));
+        assertEquals(2, JcrChildPage.valueOf(0, 2, null).estimateSize(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChildCursor() {
+        JcrChildPage.valueOf(0, 10, "invalid");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChildrenOnlyProjection() {
+        JcrNodeProjection.valueOf(null, null, "types");
+    }
+
     @Test
     public void testGetPropertyRepresentation() throws Exception {
         MockNode mockRootNode = new MockNode("/", "jcr:root");
@@ -73,6 +266,123 @@ public class JcrDataBindingHelperTest {
         assertTrue(pathsPropertyRepresentation.isMultiple());
     }
 
+    @Test
+    public void testWriteTypedPropertyRepresentation() throws Exception {
+        final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+        final StringWriter writer = new StringWriter();
+        final JsonGenerator generator = new CustomJacksonConfig().getContext(JcrNode.class).getJsonFactory().createJsonGenerator(writer);
+
+        final Property count = mock(Property.class);
+        when(count.getName()).thenReturn("count");
+        when(count.getType()).thenReturn(PropertyType.LONG);
+        when(count.isMultiple()).thenReturn(false);
+        when(count.getValue()).thenReturn(valueFactory.createValue(42L));
+        JcrDataBindingHelper.writeTypedPropertyRepresentation(generator, count, null);
+        generator.flush();
+        assertEquals("{\"name\":\"count\",\"type\":\"Long\",\"multiple\":false,\"values\":[42]}", writer.toString());
+
+        writer.getBuffer().setLength(0);
+        final Property flags = mock(Property.class);
+        when(flags.getName()).thenReturn("flags");
+        when(flags.getType()).thenReturn(PropertyType.BOOLEAN);
+        when(flags.isMultiple()).thenReturn(true);
+        when(flags.getValues()).thenReturn(new Value[]{valueFactory.createValue(true), valueFactory.createValue(false)});
+        JcrDataBindingHelper.writeTypedPropertyRepresentation(generator, flags, null);
+        generator.flush();
+        assertEquals(" {\"name\":\"flags\",\"type\":\"Boolean\",\"multiple\":true,\"values\":[true,false]}", writer.toString());
+
+        writer.getBuffer().setLength(0);
+        final Calendar calendar = ISO8601.parse("2014-06-01T12:00:00.000Z");
+        final Property date = mock(Property.class);
+        when(date.getName()).thenReturn("date");
+        when(date.getType()).thenReturn(PropertyType.DATE);
+        when(date.isMultiple()).thenReturn(false);
+        when(date.getValue()).thenReturn(valueFactory.createValue(calendar));
+        JcrDataBindingHelper.writeTypedPropertyRepresentation(generator, date, null);
+        generator.close();
+        assertEquals(" {\"name\":\"date\",\"type\":\"Date\",\"multiple\":false,\"values\":[\"2014-06-01T12:00:00.000Z\"]}", writer.toString());
+
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrProperty.class);
+        final JcrProperty parsed = objectMapper.readValue(writer.toString(), JcrProperty.class);
+        assertEquals("2014-06-01T12:00:00.000Z", parsed.getValues().get(0));
+    }
+
+    @Test
+    public void testWriteTypedNodeRepresentation() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        final Node testNode = mockRootNode.addNode("/test", "hippo:document");
+        testNode.setProperty("hippostd:state", "published");
+
+        final JcrNodeProjection projection = JcrNodeProjection.ALL.withTypedValues(true);
+        assertTrue(projection.isTypedValues());
+        final StringWriter writer = new StringWriter();
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final JsonGenerator generator = objectMapper.getJsonFactory().createJsonGenerator(writer);
+        final JcrReadBudget budget = new JcrReadBudget(0, 0);
+        JcrDataBindingHelper.writeNodeRepresentation(generator, testNode, 0, projection, null, budget);
+        generator.close();
+
+        final JcrNode streamed = objectMapper.readValue(writer.toString(), JcrNode.class);
+        assertEquals("published", streamed.getProperties().get(0).getValues().get(0));
+        assertTrue(budget.getBytes() > 0);
+    }
+
+    @Test
+    public void testAcceptsTypedValues() {
+        final HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getAcceptableMediaTypes()).thenReturn(Collections.singletonList(MediaType.APPLICATION_JSON_TYPE));
+        assertFalse(JcrNodeProjection.acceptsTypedValues(headers));
+
+        final MediaType typed = new MediaType("application", "json", Collections.singletonMap("typed", "true"));
+        when(headers.getAcceptableMediaTypes()).thenReturn(Collections.singletonList(typed));
+        assertTrue(JcrNodeProjection.acceptsTypedValues(headers));
+        assertFalse(JcrNodeProjection.acceptsTypedValues(null));
+    }
+
+    @Test
+    public void testGetBinaryPropertyRepresentation() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        MockNode resourceNode = (MockNode) mockRootNode.addNode("/resource", "hippo:resource");
+        resourceNode.setProperty("jcr:mimeType", "image/png");
+        Property data = mock(Property.class);
+        when(data.getName()).thenReturn("jcr:data");
+        when(data.getPath()).thenReturn("/resource/jcr:data");
+        when(data.getType()).thenReturn(PropertyType.BINARY);
+        when(data.isMultiple()).thenReturn(false);
+        when(data.getLength()).thenReturn(1024L);
+        when(data.getParent()).thenReturn(resourceNode);
+
+        JcrProperty representation = JcrDataBindingHelper.getPropertyRepresentation(data, URI.create("http://localhost/api/"));
+        assertEquals("Binary", representation.getType());
+        assertTrue(representation.getValues().isEmpty());
+        assertEquals(1, representation.getBinaries().size());
+        assertEquals("http://localhost/api/binaries/resource/jcr:data", representation.getBinaries().get(0).getHref());
+        assertEquals(1024L, representation.getBinaries().get(0).getSize());
+        assertEquals("image/png", representation.getBinaries().get(0).getMimeType());
+
+        when(data.isMultiple()).thenReturn(true);
+        when(data.getLengths()).thenReturn(new long[]{10L, 20L});
+        representation = JcrDataBindingHelper.getPropertyRepresentation(data, URI.create("http://localhost/api/"));
+        assertEquals(2, representation.getBinaries().size());
+        assertEquals("http://localhost/api/binaries/resource/jcr:data?index=1", representation.getBinaries().get(1).getHref());
+        assertEquals(20L, representation.getBinaries().get(1).getSize());
+
+        representation = JcrDataBindingHelper.getPropertyRepresentation(data);
+        assertNull(representation.getBinaries().get(0).getHref());
+    }
+
+    @Test
+    public void testAddBinaryReferenceToNode() throws Exception {
+        MockNode mockRootNode = new MockNode("/", "jcr:root");
+        JcrProperty jcrProperty = new JcrProperty();
+        jcrProperty.setName("jcr:data");
+        jcrProperty.setType("Binary");
+        jcrProperty.setMultiple(false);
+        jcrProperty.setValues(new ArrayList<String>());
+        JcrDataBindingHelper.addPropertyToNode(mockRootNode, jcrProperty);
+        assertFalse(mockRootNode.hasProperty("jcr:data"));
+    }
+
     @Test
     public void testAddMixinToNode() throws Exception {
         List<String> mixins = new ArrayList<String>();
@@ -137,4 +447,169 @@ public class JcrDataBindingHelperTest {
         JcrDataBindingHelper.addChildNodesFromRepresentation(testMock, nodes);
         assertEquals(2, testMock.getNodes().getSize());
     }
+
+    @Test
+    public void testReconcileNodeWithRepresentation() throws Exception {
+        final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+        final Node node = mock(Node.class);
+        final Session session = mock(Session.class);
+        when(node.getSession()).thenReturn(session);
+        when(session.getValueFactory()).thenReturn(valueFactory);
+        final NodeType nodeType = mock(NodeType.class);
+        when(nodeType.getName()).thenReturn("hippo:document");
+        when(nodeType.hasOrderableChildNodes()).thenReturn(true);
+        when(node.getPrimaryNodeType()).thenReturn(nodeType);
+        when(node.getMixinNodeTypes()).thenReturn(new NodeType[0]);
+
+        final Property state = mockStringProperty(node, "hippostd:state", "published", valueFactory);
+        final Property title = mockStringProperty(node, "title", "old", valueFactory);
+        final Property stale = mockStringProperty(node, "stale", "value", valueFactory);
+        when(node.getProperties()).thenReturn(new PropertyIteratorAdapter(Arrays.asList(state, title, stale)));
+
+        final Node first = mockChildNode("first");
+        final Node second = mockChildNode("second");
+        when(node.getNodes()).thenAnswer(new Answer<NodeIterator>() {
+            @Override
+            public NodeIterator answer(final InvocationOnMock invocation) {
+                return new NodeIteratorAdapter(Arrays.asList(first, second));
+            }
+        });
+
+        final JcrNode jcrNode = new JcrNode();
+        jcrNode.setName("test");
+        jcrNode.setPrimaryType("hippo:document");
+        jcrNode.setProperties(Arrays.asList(createStringProperty("hippostd:state", "published"),
+                createStringProperty("title", "new")));
+        final JcrNode secondChild = new JcrNode();
+        secondChild.setName("second");
+        jcrNode.addNode(secondChild);
+        final JcrNode firstChild = new JcrNode();
+        firstChild.setName("first");
+        jcrNode.addNode(firstChild);
+
+        assertEquals(3, JcrDataBindingHelper.reconcileNodeWithRepresentation(node, jcrNode));
+        verify(node, never()).setPrimaryType(anyString());
+        verify(node, never()).setProperty(eq("hippostd:state"), any(Value.class));
+        verify(node).setProperty(eq("title"), any(Value.class));
+        verify(stale).remove();
+        verify(state, never()).remove();
+        verify(first, never()).remove();
+        verify(second, never()).remove();
+        verify(node).orderBefore("second[1]", "first[1]");
+    }
+
+    @Test
+    public void testReconcileKeepsWhatIsLeftOut() throws Exception {
+        final Node node = mock(Node.class);
+        final NodeType nodeType = mock(NodeType.class);
+        when(nodeType.getName()).thenReturn("nt:unstructured");
+        when(node.getPrimaryNodeType()).thenReturn(nodeType);
+        final NodeType referenceable = mock(NodeType.class);
+        when(referenceable.getName()).thenReturn("mix:referenceable");
+        final NodeType versionable = mock(NodeType.class);
+        when(versionable.getName()).thenReturn(MIX_VERSIONABLE);
+        when(node.getMixinNodeTypes()).thenReturn(new NodeType[]{referenceable, versionable});
+
+        final JcrNode jcrNode = new JcrNode();
+        jcrNode.setName("test");
+        jcrNode.setPrimaryType("nt:unstructured");
+        assertEquals(0, JcrDataBindingHelper.reconcileNodeWithRepresentation(node, jcrNode));
+        verify(node, never()).getProperties();
+        verify(node, never()).getNodes();
+
+        jcrNode.setMixinTypes(new ArrayList<String>());
+        assertEquals(1, JcrDataBindingHelper.reconcileNodeWithRepresentation(node, jcrNode));
+        verify(node).removeMixin(MIX_VERSIONABLE);
+        verify(node, never()).removeMixin("mix:referenceable");
+    }
+
+    @Test
+    public void testIsCompleteRepresentation() {
+        final JcrNode jcrNode = new JcrNode("test", "nt:unstructured");
+        final JcrNode child = new JcrNode("child", "nt:unstructured");
+        jcrNode.addNode(child);
+        assertTrue(JcrDataBindingHelper.isCompleteRepresentation(jcrNode));
+
+        child.setTruncated(true);
+        assertFalse(JcrDataBindingHelper.isCompleteRepresentation(jcrNode));
+
+        child.setTruncated(null);
+        jcrNode.addLink(new Link("next", "http://localhost/nodes/test?childCursor=MS9jaGlsZA"));
+        assertFalse(JcrDataBindingHelper.isCompleteRepresentation(jcrNode));
+    }
+
+    @Test
+    public void testReplaceNodeKeepsReferencedBinaries() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getValueFactory()).thenReturn(ValueFactoryImpl.getInstance());
+        final Value data = ValueFactoryImpl.getInstance().createValue("data", PropertyType.BINARY);
+        final Property binary = mock(Property.class);
+        when(binary.getType()).thenReturn(PropertyType.BINARY);
+        when(binary.getValue()).thenReturn(data);
+        final Node resource = mock(Node.class);
+        when(resource.hasProperty("jcr:data")).thenReturn(true);
+        when(resource.getProperty("jcr:data")).thenReturn(binary);
+        final Node node = mock(Node.class);
+        when(node.hasNode("resource[1]")).thenReturn(true);
+        when(node.getNode("resource[1]")).thenReturn(resource);
+        final Node parent = mock(Node.class);
+        when(node.getParent()).thenReturn(parent);
+
+        final Node newResource = mock(Node.class);
+        when(newResource.getSession()).thenReturn(session);
+        final Node newNode = mock(Node.class);
+        when(newNode.getSession()).thenReturn(session);
+        when(newNode.addNode("resource", "nt:resource")).thenReturn(newResource);
+        when(newNode.hasNode("resource[1]")).thenReturn(true);
+        when(newNode.getNode("resource[1]")).thenReturn(newResource);
+        when(parent.addNode("test", "nt:unstructured")).thenReturn(newNode);
+
+        final JcrProperty binaryReference = new JcrProperty();
+        binaryReference.setName("jcr:data");
+        binaryReference.setType(PropertyType.TYPENAME_BINARY);
+        final JcrNode resourceNode = new JcrNode();
+        resourceNode.setName("resource");
+        resourceNode.setPrimaryType("nt:resource");
+        resourceNode.setProperties(Arrays.asList(binaryReference, createStringProperty("jcr:mimeType", "text/plain")));
+        final JcrNode jcrNode = new JcrNode();
+        jcrNode.setName("test");
+        jcrNode.setPrimaryType("nt:unstructured");
+        jcrNode.addNode(resourceNode);
+
+        assertEquals(newNode, JcrDataBindingHelper.replaceNodeWithRepresentation(node, jcrNode));
+        verify(node).remove();
+        verify(newResource).setProperty("jcr:data", data);
+        verify(newResource).setProperty(eq("jcr:mimeType"), any(Value.class));
+    }
+
+    private static Property mockStringProperty(final Node node, final String name, final String value,
+                                               final ValueFactory valueFactory) throws RepositoryException {
+        final Property property = mock(Property.class);
+        when(property.getName()).thenReturn(name);
+        when(property.getType()).thenReturn(PropertyType.STRING);
+        when(property.isMultiple()).thenReturn(false);
+        when(property.getValue()).thenReturn(valueFactory.createValue(value));
+        when(property.getDefinition()).thenReturn(mock(PropertyDefinition.class));
+        when(node.hasProperty(name)).thenReturn(true);
+        when(node.getProperty(name)).thenReturn(property);
+        return property;
+    }
+
+    private static Node mockChildNode(final String name) throws RepositoryException {
+        final Node child = mock(Node.class);
+        when(child.getName()).thenReturn(name);
+        when(child.getIndex()).thenReturn(1);
+        when(child.isSame(child)).thenReturn(true);
+        when(child.getDefinition()).thenReturn(mock(NodeDefinition.class));
+        return child;
+    }
+
+    private static JcrProperty createStringProperty(final String name, final String value) {
+        final JcrProperty property = new JcrProperty();
+        property.setName(name);
+        property.setType(PropertyType.TYPENAME_STRING);
+        property.setMultiple(false);
+        property.setValues(Collections.singletonList(value));
+        return property;
+    }
 }
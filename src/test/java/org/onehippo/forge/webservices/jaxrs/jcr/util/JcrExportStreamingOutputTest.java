@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.onehippo.forge.webservices.jaxrs.CustomJacksonConfig;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNode;
+import org.onehippo.forge.webservices.testing.jcr.MockNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JcrExportStreamingOutputTest {
+
+    @Test
+    public void testExportDepthFirst() throws Exception {
+        final MockNode root = createTree();
+        assertEquals("[/root, /root/b, /root/b/b1, /root/b/b2, /root/c]", export(root, null, 0, null).toString());
+    }
+
+    @Test
+    public void testResumeExport() throws Exception {
+        final MockNode root = createTree();
+        final MockNode b = (MockNode) root.getNode("b");
+        assertEquals("[/root/b/b2, /root/c]", export(root, b.getNode("b1"), 0, null).toString());
+        assertEquals("[/root/b/b1, /root/b/b2, /root/c]", export(root, b, 0, null).toString());
+        assertEquals("[/root/b, /root/b/b1, /root/b/b2, /root/c]", export(root, root, 0, null).toString());
+        assertEquals("[]", export(root, root.getNode("c"), 0, null).toString());
+    }
+
+    @Test
+    public void testExportLimits() throws Exception {
+        final MockNode root = createTree();
+        assertEquals("[/root, /root/b]", export(root, null, 2, null).toString());
+        assertEquals("[/root, /root/b, /root/b/b1]", export(root, null, 0, new JcrReadBudget(3, 0)).toString());
+        assertEquals("[/root, /root/b]", export(root, null, 5, new JcrReadBudget(2, 0)).toString());
+    }
+
+    @Test
+    public void testThrottleExport() throws Exception {
+        final MockNode root = createTree();
+        final long start = System.currentTimeMillis();
+        new JcrExportStreamingOutput(root, null, JcrNodeProjection.ALL, 0, null, 20).write(new ByteArrayOutputStream());
+        // the fifth node is written no sooner than 4 / 20 seconds after the start
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    public void testExportProjection() throws Exception {
+        final MockNode root = createTree();
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JcrExportStreamingOutput(root, null, JcrNodeProjection.valueOf("title", null, null), 1, null, 0)
+                .write(output);
+        final String[] lines = new String(output.toByteArray(), "UTF-8").split("\n");
+        assertEquals(1, lines.length);
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final JcrNode node = objectMapper.readValue(lines[0], JcrNode.class);
+        assertEquals(1, node.getProperties().size());
+        assertEquals("title", node.getProperties().get(0).getName());
+        assertNull(node.getNodes());
+    }
+
+    private static MockNode createTree() throws Exception {
+        final MockNode root = new MockNode("/root", "nt:unstructured");
+        root.setProperty("title", "root");
+        root.setProperty("description", "the root");
+        final MockNode b = (MockNode) root.addNode("/root/b", "nt:unstructured");
+        b.addNode("/root/b/b1", "nt:unstructured");
+        b.addNode("/root/b/b2", "nt:unstructured");
+        root.addNode("/root/c", "nt:unstructured");
+        return root;
+    }
+
+    private static List<String> export(final MockNode root, final javax.jcr.Node after, final long limit,
+                                       final JcrReadBudget budget) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JcrExportStreamingOutput(root, after, JcrNodeProjection.ALL, limit, budget, 0).write(output);
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrNode.class);
+        final List<String> paths = new ArrayList<String>();
+        final String ndjson = new String(output.toByteArray(), "UTF-8");
+        for (String line : ndjson.split("\n")) {
+            if (line.length() > 0) {
+                paths.add(objectMapper.readValue(line, JcrNode.class).getPath());
+            }
+        }
+        if (!paths.isEmpty()) {
+            assertEquals('\n', ndjson.charAt(ndjson.length() - 1));
+        }
+        return paths;
+    }
+}
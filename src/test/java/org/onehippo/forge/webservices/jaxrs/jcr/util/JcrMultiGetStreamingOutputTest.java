@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.onehippo.forge.webservices.jaxrs.CustomJacksonConfig;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrMultiGetResult;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNodeReference;
+import org.onehippo.forge.webservices.jaxrs.jcr.model.JcrNodeResult;
+import org.onehippo.forge.webservices.testing.jcr.MockNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JcrMultiGetStreamingOutputTest {
+
+    @Test
+    public void testWriteResultsInOrder() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        final Node testNode = rootNode.addNode("/test", "hippo:handle");
+        testNode.setProperty("hippostd:state", "published");
+        testNode.setProperty("hippostd:holder", "admin");
+        testNode.addNode("/test/test1", "hippo:document");
+
+        final Session session = mock(Session.class);
+        when(session.nodeExists("/test")).thenReturn(true);
+        when(session.getNode("/test")).thenReturn(testNode);
+        when(session.getNodeByIdentifier("cafebabe-cafe-babe-cafe-babecafebabe")).thenReturn(testNode);
+        when(session.getNodeByIdentifier("deadbeef-cafe-babe-cafe-babecafebabe")).thenThrow(new ItemNotFoundException());
+
+        final List<JcrNodeReference> references = new ArrayList<JcrNodeReference>();
+        references.add(reference("test", null, 1, null));
+        references.add(reference(null, "deadbeef-cafe-babe-cafe-babecafebabe", 0, null));
+        references.add(reference("/missing", null, 0, null));
+        references.add(reference(null, "cafebabe-cafe-babe-cafe-babecafebabe", 0, "hippostd:state"));
+        references.add(reference(null, null, 0, null));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JcrMultiGetStreamingOutput(session, references, null, false, null).write(output);
+
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrMultiGetResult.class);
+        final List<JcrNodeResult> results = objectMapper.readValue(output.toByteArray(), JcrMultiGetResult.class).getResults();
+        assertEquals(5, results.size());
+
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals("/test", results.get(0).getNode().getPath());
+        assertEquals(2, results.get(0).getNode().getProperties().size());
+        assertEquals(1, results.get(0).getNode().getNodes().size());
+
+        assertEquals(404, results.get(1).getStatus());
+        assertEquals("deadbeef-cafe-babe-cafe-babecafebabe", results.get(1).getIdentifier());
+        assertNull(results.get(1).getNode());
+
+        assertEquals(404, results.get(2).getStatus());
+        assertEquals("/missing", results.get(2).getPath());
+
+        assertEquals(200, results.get(3).getStatus());
+        assertEquals(1, results.get(3).getNode().getProperties().size());
+        assertNull(results.get(3).getNode().getNodes());
+
+        assertEquals(400, results.get(4).getStatus());
+    }
+
+    @Test
+    public void testSharedReadBudget() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        final Node testNode = rootNode.addNode("/test", "hippo:handle");
+
+        final Session session = mock(Session.class);
+        when(session.nodeExists("/test")).thenReturn(true);
+        when(session.getNode("/test")).thenReturn(testNode);
+
+        final List<JcrNodeReference> references = new ArrayList<JcrNodeReference>();
+        references.add(reference("/test", null, 0, null));
+        references.add(reference("/test", null, 0, null));
+
+        final JcrReadBudget budget = new JcrReadBudget(1, 0);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new JcrMultiGetStreamingOutput(session, references, null, false, budget).write(output);
+
+        assertEquals(1, budget.getNodes());
+        final ObjectMapper objectMapper = new CustomJacksonConfig().getContext(JcrMultiGetResult.class);
+        final List<JcrNodeResult> results = objectMapper.readValue(output.toByteArray(), JcrMultiGetResult.class).getResults();
+        assertEquals(2, results.size());
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals(413, results.get(1).getStatus());
+        assertEquals("/test", results.get(1).getPath());
+        assertNull(results.get(1).getNode());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetNodeWithInvalidIdentifier() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getNodeByIdentifier("invalid")).thenThrow(new RepositoryException("invalid identifier", new IllegalArgumentException()));
+        JcrMultiGetStreamingOutput.getNode(session, reference(null, "invalid", 0, null));
+    }
+
+    private static JcrNodeReference reference(final String path, final String identifier, final int depth,
+                                              final String fields) {
+        final JcrNodeReference reference = new JcrNodeReference();
+        reference.setPath(path);
+        reference.setIdentifier(identifier);
+        reference.setDepth(depth);
+        reference.setFields(fields);
+        return reference;
+    }
+}
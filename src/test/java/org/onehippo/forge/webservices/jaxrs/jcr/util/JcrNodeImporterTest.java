@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JcrNodeImporterTest {
+
+    private Session session;
+    private Node parent;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        session = mock(Session.class);
+        when(session.getValueFactory()).thenReturn(ValueFactoryImpl.getInstance());
+        parent = mockNode();
+    }
+
+    @Test
+    public void testImportNodeTree() throws Exception {
+        final Node test = mockNode();
+        final Node child = mockNode();
+        final Node grandchild = mockNode();
+        when(parent.addNode("test", "nt:unstructured")).thenReturn(test);
+        when(test.addNode("child", "nt:unstructured")).thenReturn(child);
+        when(child.addNode("grandchild", "nt:unstructured")).thenReturn(grandchild);
+        when(test.canAddMixin("mix:referenceable")).thenReturn(true);
+
+        final JcrNodeImporter importer = new JcrNodeImporter(session, 2);
+        final Node imported = importer.importNode(parent, input("{\"name\": \"test\", \"path\": \"/test\", " +
+                "\"primaryType\": \"nt:unstructured\", " +
+                "\"properties\": [{\"name\": \"title\", \"type\": \"String\", \"multiple\": false, \"values\": [\"test\"]}], " +
+                "\"nodes\": [{\"name\": \"child\", \"primaryType\": \"nt:unstructured\", " +
+                "\"nodes\": [{\"name\": \"grandchild\", \"primaryType\": \"nt:unstructured\"}]}], " +
+                "\"mixinTypes\": [\"mix:referenceable\"], \"links\": [{\"rel\": \"self\", \"href\": \"/test\"}]}"));
+
+        assertSame(test, imported);
+        assertEquals(3, importer.getImportedCount());
+        assertEquals(3, importer.getSavedCount());
+        verify(test).setProperty(eq("title"), any(Value.class));
+        verify(test).addMixin("mix:referenceable");
+        verify(grandchild, never()).addNode(anyString(), anyString());
+        verify(session, times(2)).save();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImportChildNodesBeforeName() throws Exception {
+        new JcrNodeImporter(session, 0).importNode(parent, input("{\"primaryType\": \"nt:unstructured\", " +
+                "\"nodes\": [{\"name\": \"child\", \"primaryType\": \"nt:unstructured\"}], \"name\": \"test\"}"));
+    }
+
+    @Test
+    public void testImportMalformedNode() throws Exception {
+        final Node test = mockNode();
+        when(parent.addNode("test", "nt:unstructured")).thenReturn(test);
+        try {
+            new JcrNodeImporter(session, 0).importNode(parent, input("{\"name\": \"test\", " +
+                    "\"primaryType\": \"nt:unstructured\", \"nodes\": [{\"name\": "));
+        } catch (IllegalArgumentException expected) {
+            verify(session, never()).save();
+            return;
+        }
+        throw new AssertionError("Expected an IllegalArgumentException");
+    }
+
+    private Node mockNode() throws RepositoryException {
+        final Node node = mock(Node.class);
+        when(node.getSession()).thenReturn(session);
+        return node;
+    }
+
+    private static ByteArrayInputStream input(final String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+
+import org.apache.jackrabbit.value.ValueFactoryImpl;
+import org.codehaus.jackson.JsonNode;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JcrNodePatchTest {
+
+    private final ValueFactory valueFactory = ValueFactoryImpl.getInstance();
+    private Node node;
+    private Property title;
+    private Property state;
+
+    @Before
+    public void setUp() throws RepositoryException {
+        node = mock(Node.class);
+        final Session session = mock(Session.class);
+        when(node.getSession()).thenReturn(session);
+        when(session.getValueFactory()).thenReturn(valueFactory);
+        title = mockStringProperty("title", "old");
+        state = mockStringProperty("state", "published");
+    }
+
+    @Test
+    public void testApplyMergePatch() throws Exception {
+        JcrNodePatch.applyMergePatch(node,
+                read("{\"properties\": {\"title\": \"new\", \"state\": \"published\", \"count\": 3, \"missing\": null}}"));
+
+        verify(node).setProperty(eq("title"), any(Value.class));
+        verify(node, never()).setProperty(eq("state"), any(Value.class));
+        final ArgumentCaptor<Value> count = ArgumentCaptor.forClass(Value.class);
+        verify(node).setProperty(eq("count"), count.capture());
+        assertEquals(PropertyType.LONG, count.getValue().getType());
+
+        JcrNodePatch.applyMergePatch(node, read("{\"properties\": {\"title\": null}}"));
+        verify(title).remove();
+    }
+
+    @Test
+    public void testApplyJsonPatch() throws Exception {
+        JcrNodePatch.applyJsonPatch(node, read("[" +
+                "{\"op\": \"test\", \"path\": \"/properties/title\", \"value\": \"old\"}," +
+                "{\"op\": \"replace\", \"path\": \"/properties/title\", \"value\": {\"type\": \"String\", \"multiple\": true, \"values\": [\"a\", \"b\"]}}," +
+                "{\"op\": \"move\", \"path\": \"/properties/status\", \"from\": \"/properties/state\"}" +
+                "]"));
+
+        verify(title).remove();
+        verify(node).setProperty(eq("title"), any(Value[].class));
+        verify(node).setProperty("status", state.getValue());
+        verify(state).remove();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testApplyJsonPatchToMissingProperty() throws Exception {
+        JcrNodePatch.applyJsonPatch(node, read("[{\"op\": \"remove\", \"path\": \"/properties/missing\"}]"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testApplyJsonPatchWithFailingTest() throws Exception {
+        JcrNodePatch.applyJsonPatch(node, read("[{\"op\": \"test\", \"path\": \"/properties/title\", \"value\": \"new\"}]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyJsonPatchToUnsupportedPath() throws Exception {
+        JcrNodePatch.applyJsonPatch(node, read("[{\"op\": \"remove\", \"path\": \"/nodes/child\"}]"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyMergePatchToProtectedProperty() throws Exception {
+        JcrNodePatch.applyMergePatch(node, read("{\"properties\": {\"jcr:primaryType\": \"nt:unstructured\"}}"));
+    }
+
+    private Property mockStringProperty(final String name, final String value) throws RepositoryException {
+        final Property property = mock(Property.class);
+        when(property.getName()).thenReturn(name);
+        when(property.getType()).thenReturn(PropertyType.STRING);
+        when(property.isMultiple()).thenReturn(false);
+        when(property.getValue()).thenReturn(valueFactory.createValue(value));
+        when(node.hasProperty(name)).thenReturn(true);
+        when(node.getProperty(name)).thenReturn(property);
+        return property;
+    }
+
+    private static JsonNode read(final String json) throws IOException {
+        return JcrNodePatch.read(new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JcrSessionUtilTest {
+
+    @Test
+    public void testGetNodeByIdentifier() throws Exception {
+        final Session session = mock(Session.class);
+        final Node node = mock(Node.class);
+        when(session.getNodeByIdentifier("cafebabe-cafe-babe-cafe-babecafebabe")).thenReturn(node);
+        when(session.getNodeByIdentifier("deadbeef-cafe-babe-cafe-babecafebabe")).thenThrow(new ItemNotFoundException());
+
+        assertSame(node, JcrSessionUtil.getNodeByIdentifier(session, "cafebabe-cafe-babe-cafe-babecafebabe"));
+        assertNull(JcrSessionUtil.getNodeByIdentifier(session, "deadbeef-cafe-babe-cafe-babecafebabe"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetNodeByInvalidIdentifier() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getNodeByIdentifier("invalid"))
+                .thenThrow(new RepositoryException("Invalid identifier", new IllegalArgumentException()));
+        JcrSessionUtil.getNodeByIdentifier(session, "invalid");
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void testGetNodeByIdentifierFails() throws Exception {
+        final Session session = mock(Session.class);
+        when(session.getNodeByIdentifier("cafebabe-cafe-babe-cafe-babecafebabe")).thenThrow(new RepositoryException());
+        JcrSessionUtil.getNodeByIdentifier(session, "cafebabe-cafe-babe-cafe-babecafebabe");
+    }
+}
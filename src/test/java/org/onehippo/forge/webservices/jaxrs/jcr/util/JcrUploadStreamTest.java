@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JcrUploadStreamTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes();
+
+    @Test
+    public void testContentMd5() throws IOException {
+        final JcrUploadStream upload = new JcrUploadStream(new ByteArrayInputStream(CONTENT), 0);
+        drain(upload);
+        assertEquals(CONTENT.length, upload.getSize());
+        assertTrue(upload.matches(Base64.encodeBase64String(DigestUtils.md5(CONTENT))));
+    }
+
+    @Test
+    public void testContentMd5Mismatch() throws IOException {
+        final JcrUploadStream upload = new JcrUploadStream(new ByteArrayInputStream(CONTENT), 0);
+        drain(upload);
+        assertFalse(upload.matches(Base64.encodeBase64String(DigestUtils.md5("9876543210"))));
+    }
+
+    @Test
+    public void testMaxSize() {
+        final JcrUploadStream upload = new JcrUploadStream(new ByteArrayInputStream(CONTENT), 5);
+        try {
+            drain(upload);
+            fail("Upload should have been stopped");
+        } catch (IOException e) {
+            assertTrue(upload.isLimitExceeded());
+        }
+    }
+
+    @Test
+    public void testWithinMaxSize() throws IOException {
+        final JcrUploadStream upload = new JcrUploadStream(new ByteArrayInputStream(CONTENT), CONTENT.length);
+        drain(upload);
+        assertFalse(upload.isLimitExceeded());
+    }
+
+    private static void drain(final JcrUploadStream upload) throws IOException {
+        final byte[] buffer = new byte[3];
+        while (upload.read(buffer, 0, buffer.length) >= 0) {
+            // keep reading
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.jaxrs.jcr.util;
+
+import java.util.Calendar;
+
+import org.junit.Test;
+import org.onehippo.forge.webservices.testing.jcr.MockNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JcrValidatorTest {
+
+    @Test
+    public void testNodeEntityTag() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        MockNode testNode = (MockNode) rootNode.addNode("/test", "hippo:document");
+        testNode.setProperty("hippostd:state", "unpublished");
+
+        final JcrValidator validator = JcrValidator.forNode(testNode, 0, JcrNodeProjection.ALL, "variant", 0);
+        assertTrue(validator.getEntityTag().isWeak());
+        assertEquals(validator.getEntityTag(), JcrValidator.forNode(testNode, 0, JcrNodeProjection.ALL, "variant", 0).getEntityTag());
+        assertFalse(validator.getEntityTag().equals(JcrValidator.forNode(testNode, 0, JcrNodeProjection.ALL, "other", 0).getEntityTag()));
+        assertNull(validator.getLastModified());
+
+        testNode.setProperty("hippostd:state", "published");
+        assertFalse(validator.getEntityTag().equals(JcrValidator.forNode(testNode, 0, JcrNodeProjection.ALL, "variant", 0).getEntityTag()));
+    }
+
+    @Test
+    public void testNodeEntityTagOfChildren() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        MockNode folder = (MockNode) rootNode.addNode("/folder", "hippostd:folder");
+        MockNode document = (MockNode) folder.addNode("/folder/doc1", "hippo:handle");
+
+        final JcrValidator shallow = JcrValidator.forNode(folder, 0, JcrNodeProjection.ALL, "variant", 0);
+        final JcrValidator deep = JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL, "variant", 0);
+        document.setProperty("hippo:name", "Document 1");
+
+        assertEquals(shallow.getEntityTag(), JcrValidator.forNode(folder, 0, JcrNodeProjection.ALL, "variant", 0).getEntityTag());
+        assertFalse(deep.getEntityTag().equals(JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL, "variant", 0).getEntityTag()));
+    }
+
+    @Test
+    public void testNodeEntityTagWithinMaxNodes() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        MockNode folder = (MockNode) rootNode.addNode("/folder", "hippostd:folder");
+        folder.addNode("/folder/doc1", "hippo:handle");
+        folder.addNode("/folder/doc2", "hippo:handle");
+
+        assertNull(JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL, "variant", 2));
+        assertTrue(JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL, "variant", 3) != null);
+    }
+
+    @Test
+    public void testNodeEntityTagWithModificationDate() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        MockNode document = (MockNode) rootNode.addNode("/doc", "hippo:document");
+        Calendar modified = Calendar.getInstance();
+        modified.setTimeInMillis(1000L);
+        document.setProperty("hippostdpubwf:lastModificationDate", modified);
+        document.setProperty("hippo:name", "Document 1");
+
+        final JcrValidator validator = JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0);
+        assertEquals(1000L, validator.getLastModified().getTime());
+
+        // a write that does not update the modification date still changes the tag
+        document.setProperty("hippo:name", "Document 2");
+        assertFalse(validator.getEntityTag().equals(JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0).getEntityTag()));
+        assertEquals(1000L, JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0).getLastModified().getTime());
+
+        final JcrValidator withoutChild = JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0);
+        document.addNode("/doc/child", "nt:unstructured");
+        assertFalse(withoutChild.getEntityTag().equals(JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0).getEntityTag()));
+
+        modified = Calendar.getInstance();
+        modified.setTimeInMillis(2000L);
+        document.setProperty("hippostdpubwf:lastModificationDate", modified);
+        assertEquals(2000L, JcrValidator.forNode(document, 0, JcrNodeProjection.ALL, "variant", 0).getLastModified().getTime());
+    }
+
+    @Test
+    public void testNodeEntityTagOfPage() throws Exception {
+        MockNode rootNode = new MockNode("/", "jcr:root");
+        MockNode folder = (MockNode) rootNode.addNode("/folder", "hippostd:folder");
+        folder.addNode("/folder/doc1", "hippo:handle");
+        MockNode document = (MockNode) folder.addNode("/folder/doc2", "hippo:handle");
+
+        final JcrValidator firstPage = JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL,
+                JcrChildPage.valueOf(0, 1, null), "variant", 0);
+        final JcrValidator secondPage = JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL,
+                JcrChildPage.valueOf(1, 1, null), "variant", 0);
+        document.setProperty("hippo:name", "Document 2");
+
+        assertEquals(firstPage.getEntityTag(), JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL,
+                JcrChildPage.valueOf(0, 1, null), "variant", 0).getEntityTag());
+        assertFalse(secondPage.getEntityTag().equals(JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL,
+                JcrChildPage.valueOf(1, 1, null), "variant", 0).getEntityTag()));
+
+        // nodes outside the page do not count against the maximum
+        assertTrue(JcrValidator.forNode(folder, 1, JcrNodeProjection.ALL, JcrChildPage.valueOf(0, 1, null), "variant", 2) != null);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link org.onehippo.forge.webservices.security.CredentialCache}
+ */
+public class CredentialCacheTest {
+
+    @Test
+    public void testVerifyCachedCredentials() {
+        final CredentialCache cache = new CredentialCache();
+        assertFalse(cache.verify("admin", "admin"));
+
+        cache.put("admin", "admin", cache.getGeneration());
+        assertTrue(cache.verify("admin", "admin"));
+        assertFalse(cache.verify("admin", "wrong"));
+        assertFalse(cache.verify("editor", "admin"));
+        assertFalse(cache.verify(null, null));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiredCredentialsAreNotVerified() {
+        final CredentialCache cache = new CredentialCache();
+        cache.setTimeToLive(1);
+        cache.put("admin", "admin", cache.getGeneration());
+        cache.setTimeToLive(-1);
+        cache.put("editor", "editor", cache.getGeneration());
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        assertFalse(cache.verify("admin", "admin"));
+        assertFalse(cache.verify("editor", "editor"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testInvalidate() {
+        final CredentialCache cache = new CredentialCache();
+        cache.put("admin", "admin", cache.getGeneration());
+        cache.put("editor", "editor", cache.getGeneration());
+
+        cache.invalidate("admin");
+        assertFalse(cache.verify("admin", "admin"));
+        assertTrue(cache.verify("editor", "editor"));
+    }
+
+    @Test
+    public void testCredentialsVerifiedBeforeInvalidationAreNotCached() {
+        final CredentialCache cache = new CredentialCache();
+        final long generation = cache.getGeneration();
+        cache.invalidate("admin");
+        cache.put("admin", "admin", generation);
+        assertFalse(cache.verify("admin", "admin"));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        final CredentialCache cache = new CredentialCache();
+        cache.setMaxSize(2);
+        cache.put("admin", "admin", cache.getGeneration());
+        cache.put("editor", "editor", cache.getGeneration());
+        cache.put("author", "author", cache.getGeneration());
+
+        assertEquals(2, cache.getSize());
+        assertTrue(cache.verify("author", "author"));
+    }
+}
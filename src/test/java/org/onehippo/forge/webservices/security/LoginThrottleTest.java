@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link org.onehippo.forge.webservices.security.LoginThrottle}
+ */
+public class LoginThrottleTest {
+
+    @Test
+    public void testBackoffAfterMaxFailures() {
+        final LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailures(2);
+        throttle.setBackoff(10000);
+        throttle.setMaxBackoff(25000);
+
+        throttle.loginFailed("admin", "127.0.0.1");
+        assertEquals(0, throttle.getRetryDelay("admin", "127.0.0.1"));
+
+        throttle.loginFailed("admin", "127.0.0.1");
+        final long firstDelay = throttle.getRetryDelay("admin", null);
+        assertTrue(firstDelay > 0 && firstDelay <= 10000);
+
+        throttle.loginFailed("admin", "127.0.0.1");
+        final long secondDelay = throttle.getRetryDelay("admin", null);
+        assertTrue(secondDelay > 10000 && secondDelay <= 20000);
+
+        throttle.loginFailed("admin", "127.0.0.1");
+        assertTrue(throttle.getRetryDelay("admin", null) <= 25000);
+
+        assertEquals(4, throttle.getFailures());
+        assertEquals(3, throttle.getThrottled());
+    }
+
+    @Test
+    public void testFailuresAreTrackedPerUserAndAddress() {
+        final LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailures(1);
+
+        throttle.loginFailed("admin", "10.0.0.1");
+        assertTrue(throttle.getRetryDelay("admin", "10.0.0.2") > 0);
+        assertTrue(throttle.getRetryDelay("editor", "10.0.0.1") > 0);
+        assertEquals(0, throttle.getRetryDelay("editor", "10.0.0.2"));
+    }
+
+    @Test
+    public void testSuccessfulLoginResetsUser() {
+        final LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxFailures(1);
+
+        throttle.loginFailed("admin", "10.0.0.1");
+        throttle.loginSucceeded("admin");
+        assertEquals(0, throttle.getRetryDelay("admin", "10.0.0.2"));
+        assertTrue(throttle.getRetryDelay("admin", "10.0.0.1") > 0);
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        final LoginThrottle throttle = new LoginThrottle();
+        throttle.setMaxSize(32);
+        for (int i = 0; i < 1000; i++) {
+            throttle.loginFailed(null, "10.0." + (i / 256) + "." + (i % 256));
+        }
+        assertTrue(throttle.getSize() <= 32);
+    }
+}
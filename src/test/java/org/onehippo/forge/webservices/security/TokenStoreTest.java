@@ -0,0 +1,114 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.security;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link org.onehippo.forge.webservices.security.TokenStore}
+ */
+public class TokenStoreTest {
+
+    @Test
+    public void testValidateStoredToken() {
+        final TokenStore store = new TokenStore();
+        final String token = store.issue("admin");
+
+        final TokenStore.Token accessToken = store.validate(token);
+        assertNotNull(accessToken);
+        assertEquals("admin", accessToken.getUsername());
+        assertNull(store.validate(token + "x"));
+        assertNull(store.validate(null));
+
+        assertEquals(1, store.getSize());
+        assertEquals(1, store.getHits());
+        assertEquals(2, store.getMisses());
+    }
+
+    @Test
+    public void testValidateSignedToken() {
+        final TokenStore store = new TokenStore();
+        store.setSecret("secret");
+        assertTrue(store.isSigned());
+        final String token = store.issue("admin");
+
+        final TokenStore.Token accessToken = store.validate(token);
+        assertNotNull(accessToken);
+        assertEquals("admin", accessToken.getUsername());
+        assertEquals(0, store.getSize());
+
+        final TokenStore otherStore = new TokenStore();
+        otherStore.setSecret("other");
+        assertNull(otherStore.validate(token));
+        assertNull(store.validate(token.substring(0, token.lastIndexOf('.') + 1) + "AAAA"));
+    }
+
+    @Test
+    public void testExpiredTokensAreNotValid() {
+        final TokenStore store = new TokenStore();
+        store.setTimeToLive(-1);
+        final String storedToken = store.issue("admin");
+        store.setSecret("secret");
+        final String signedToken = store.issue("admin");
+
+        assertNull(store.validate(signedToken));
+        store.setSecret(null);
+        assertNull(store.validate(storedToken));
+    }
+
+    @Test
+    public void testInvalidate() {
+        final TokenStore store = new TokenStore();
+        final String adminToken = store.issue("admin");
+        final String editorToken = store.issue("editor");
+
+        store.invalidate("admin");
+        assertNull(store.validate(adminToken));
+        assertNotNull(store.validate(editorToken));
+    }
+
+    @Test
+    public void testInvalidateSignedTokens() throws Exception {
+        final TokenStore store = new TokenStore();
+        store.setSecret("secret");
+        final String token = store.issue("admin");
+
+        store.invalidate("admin");
+        assertNull(store.validate(token));
+
+        // tokens issued after the invalidation are valid
+        Thread.sleep(5);
+        assertNotNull(store.validate(store.issue("admin")));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        final TokenStore store = new TokenStore();
+        store.setMaxSize(2);
+        store.issue("admin");
+        store.issue("editor");
+        final String token = store.issue("author");
+
+        assertEquals(2, store.getSize());
+        assertNotNull(store.validate(token));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link org.onehippo.forge.webservices.session.Impersonator}
+ */
+public class ImpersonatorTest {
+
+    @Test
+    public void testDisabledWithoutCredentials() {
+        final Impersonator impersonator = new Impersonator();
+        assertFalse(impersonator.isEnabled());
+        assertNull(impersonator.impersonate("admin"));
+        assertEquals(0, impersonator.getFailures());
+
+        impersonator.setUsername("admin");
+        assertFalse(impersonator.isEnabled());
+        impersonator.setPassword("admin");
+        assertTrue(impersonator.isEnabled());
+    }
+
+    @Test
+    public void testFailedLoginIsCounted() {
+        final Impersonator impersonator = new Impersonator();
+        impersonator.setUsername("admin");
+        impersonator.setPassword("admin");
+        // no repository is available in a unit test, so logging in as the privileged user fails
+        assertNull(impersonator.impersonate("editor"));
+        assertEquals(0, impersonator.getImpersonations());
+        assertEquals(1, impersonator.getFailures());
+    }
+}
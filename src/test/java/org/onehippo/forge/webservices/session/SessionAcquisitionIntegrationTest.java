@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import javax.jcr.Session;
+
+import org.junit.Test;
+import org.onehippo.forge.webservices.WebservicesIntegrationTest;
+import org.onehippo.forge.webservices.jaxrs.jcr.util.JcrSessionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Compares the time it takes to acquire a session by logging in with the time it takes to acquire a session by
+ * impersonation.
+ */
+public class SessionAcquisitionIntegrationTest extends WebservicesIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionAcquisitionIntegrationTest.class);
+
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void testLoginVersusImpersonation() throws Exception {
+        final Impersonator impersonator = new Impersonator();
+        impersonator.setUsername("admin");
+        impersonator.setPassword("admin");
+        try {
+            // warm up both code paths
+            logout(JcrSessionUtil.createSession("admin", "admin"));
+            logout(impersonator.impersonate("admin"));
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                logout(JcrSessionUtil.createSession("admin", "admin"));
+            }
+            final long loginTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                logout(impersonator.impersonate("admin"));
+            }
+            final long impersonationTime = System.nanoTime() - start;
+
+            log.info("Acquired {} sessions by login in {} ms and by impersonation in {} ms",
+                    new Object[]{ITERATIONS, loginTime / 1000000, impersonationTime / 1000000});
+            assertEquals(ITERATIONS + 1, impersonator.getImpersonations());
+            assertEquals(0, impersonator.getFailures());
+        } finally {
+            impersonator.close();
+        }
+    }
+
+    private static void logout(final Session session) {
+        assertNotNull(session);
+        assertEquals("admin", session.getUserID());
+        session.logout();
+    }
+}
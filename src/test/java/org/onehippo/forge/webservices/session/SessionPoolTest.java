@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Hippo B.V. (http://www.onehippo.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.onehippo.forge.webservices.session;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link org.onehippo.forge.webservices.session.SessionPool}
+ */
+public class SessionPoolTest {
+
+    @Test
+    public void testBorrowReturnsReleasedSession() throws Exception {
+        final SessionPool pool = new SessionPool();
+        final String key = "admin";
+        final Session session = createLiveSession();
+
+        assertNull(pool.borrow(key));
+        pool.release(key, session);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(session, pool.borrow(key));
+        assertNull(pool.borrow("editor"));
+
+        assertEquals(1, pool.getHits());
+        assertEquals(2, pool.getMisses());
+        verify(session, times(2)).refresh(false);
+        verify(session, never()).logout();
+    }
+
+    @Test
+    public void testReleaseLogsOutWhenPoolIsFull() throws Exception {
+        final SessionPool pool = new SessionPool();
+        pool.setMaxIdlePerKey(1);
+        final String key = "admin";
+        final Session first = createLiveSession();
+        final Session second = createLiveSession();
+
+        pool.release(key, first);
+        pool.release(key, second);
+
+        assertEquals(1, pool.getIdleCount());
+        verify(first, never()).logout();
+        verify(second).logout();
+    }
+
+    @Test
+    public void testExpiredSessionsAreEvicted() throws Exception {
+        final SessionPool pool = new SessionPool();
+        pool.setMaxIdleTime(-1);
+        final String key = "admin";
+        final Session session = createLiveSession();
+
+        pool.release(key, session);
+        assertNull(pool.borrow(key));
+        assertEquals(1, pool.getEvictions());
+        assertEquals(0, pool.getIdleCount());
+        verify(session).logout();
+    }
+
+    @Test
+    public void testSessionsOlderThanMaxAgeAreNotReused() throws Exception {
+        final SessionPool pool = new SessionPool();
+        final String key = "admin";
+        final Session session = createLiveSession();
+
+        pool.release(key, session);
+        assertSame(session, pool.borrow(key));
+        // the age counts from the creation of the session, not from its last use
+        Thread.sleep(5);
+        pool.setMaxAge(1);
+        pool.release(key, session);
+        assertEquals(0, pool.getIdleCount());
+        verify(session).logout();
+    }
+
+    @Test
+    public void testReleaseAfterInvalidationLogsOut() throws Exception {
+        final SessionPool pool = new SessionPool();
+        final String key = "admin";
+        final Session session = createLiveSession();
+        pool.release(key, session);
+
+        final long generation = pool.getGeneration();
+        assertSame(session, pool.borrow(key));
+        pool.invalidate(key);
+        pool.release(key, session, generation);
+
+        assertEquals(0, pool.getIdleCount());
+        verify(session).logout();
+    }
+
+    @Test
+    public void testSessionThatFailsToRefreshIsNotPooled() throws Exception {
+        final SessionPool pool = new SessionPool();
+        final String key = "admin";
+        final Session session = createLiveSession();
+        doThrow(new RepositoryException()).when(session).refresh(false);
+
+        pool.release(key, session);
+        assertEquals(0, pool.getIdleCount());
+        verify(session).logout();
+    }
+
+    @Test
+    public void testInvalidateLogsOutAllSessionsOfUser() throws Exception {
+        final SessionPool pool = new SessionPool();
+        final Session adminSession = createLiveSession();
+        final Session editorSession = createLiveSession();
+        pool.release("admin", adminSession);
+        pool.release("editor", editorSession);
+
+        pool.invalidate("admin");
+
+        assertEquals(1, pool.getIdleCount());
+        verify(adminSession).logout();
+        verify(editorSession, never()).logout();
+    }
+
+    @Test
+    public void testReadOnlyPoolDoesNotKeepSessionsWithPendingChanges() throws Exception {
+        final SessionPool pool = new SessionPool();
+        pool.setReadOnly(true);
+        final Session session = createLiveSession();
+        final Session modifiedSession = createLiveSession();
+        when(modifiedSession.hasPendingChanges()).thenReturn(true);
+
+        pool.release("admin", session);
+        pool.release("admin", modifiedSession);
+
+        assertEquals(1, pool.getIdleCount());
+        assertSame(session, pool.borrow("admin"));
+        verify(session, never()).refresh(false);
+        verify(modifiedSession).logout();
+    }
+
+    private static Session createLiveSession() {
+        final Session session = mock(Session.class);
+        when(session.isLive()).thenReturn(true);
+        return session;
+    }
+}
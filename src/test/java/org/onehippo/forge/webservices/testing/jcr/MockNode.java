@@ -17,13 +17,15 @@
 package org.onehippo.forge.webservices.testing.jcr;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.ValueFormatException;
 import javax.jcr.lock.LockException;
@@ -31,15 +33,17 @@ import javax.jcr.nodetype.ConstraintViolationException;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.version.VersionException;
 
+import org.apache.jackrabbit.util.ChildrenCollectorFilter;
 import org.apache.sling.commons.testing.jcr.MockNodeIterator;
 import org.apache.sling.commons.testing.jcr.MockNodeType;
+import org.apache.sling.commons.testing.jcr.MockPropertyIterator;
 
 /**
  * Simple implementation supporthing child nodes. Created by jreijn on 14/04/14.
  */
 public class MockNode extends org.apache.sling.commons.testing.jcr.MockNode {
 
-    private final Map<String, Property> properties = new HashMap<String, Property>();
+    private final Map<String, Property> properties = new LinkedHashMap<String, Property>();
     private final List<MockNode> childNodes = new ArrayList<MockNode>();
     private final List<MockNodeType> mixins = new ArrayList<MockNodeType>();
 
@@ -110,6 +114,27 @@ public class MockNode extends org.apache.sling.commons.testing.jcr.MockNode {
         return properties.get(relPath);
     }
 
+    @Override
+    public boolean hasProperty(final String relPath) {
+        return properties.containsKey(relPath) || super.hasProperty(relPath);
+    }
+
+    @Override
+    public PropertyIterator getProperties() {
+        return new MockPropertyIterator(properties.values().iterator());
+    }
+
+    @Override
+    public PropertyIterator getProperties(final String[] nameGlobs) {
+        final List<Property> matching = new ArrayList<Property>();
+        for (Map.Entry<String, Property> entry : properties.entrySet()) {
+            if (ChildrenCollectorFilter.matches(entry.getKey(), nameGlobs)) {
+                matching.add(entry.getValue());
+            }
+        }
+        return new MockPropertyIterator(matching.iterator());
+    }
+
     @Override
     public Property setProperty(final String name, final String[] values) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
         MockProperty p = new MockProperty(name);
@@ -125,4 +150,12 @@ public class MockNode extends org.apache.sling.commons.testing.jcr.MockNode {
         properties.put(name, p);
         return p;
     }
+
+    @Override
+    public Property setProperty(final String name, final Calendar value) throws ValueFormatException, VersionException, LockException, ConstraintViolationException, RepositoryException {
+        MockProperty p = new MockProperty(name);
+        p.setValue(value);
+        properties.put(name, p);
+        return p;
+    }
 }